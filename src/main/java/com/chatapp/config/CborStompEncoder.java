@@ -0,0 +1,38 @@
+package com.chatapp.config;
+
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.LinkedMultiValueMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoder STOMP ghi header "content-type: application/cbor" cho các frame mang payload CBOR.
+ * StompContentNegotiationInterceptor đặt content-type application/octet-stream để
+ * StompSubProtocolHandler gửi thẳng mảng byte trong frame WebSocket nhị phân;
+ * encoder này chỉ sửa lại header content-type ghi ra frame cho client.
+ */
+public class CborStompEncoder extends StompEncoder {
+
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (!Boolean.TRUE.equals(headers.get(StompContentNegotiationInterceptor.CBOR_PAYLOAD_HEADER))) {
+            return super.encode(headers, payload);
+        }
+
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(
+                NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        LinkedMultiValueMap<String, String> cborHeaders = nativeHeaders != null
+                ? new LinkedMultiValueMap<>(nativeHeaders) : new LinkedMultiValueMap<>();
+        cborHeaders.set(CONTENT_TYPE_HEADER, StompContentNegotiationInterceptor.CBOR.toString());
+
+        Map<String, Object> frameHeaders = new HashMap<>(headers);
+        frameHeaders.put(NativeMessageHeaderAccessor.NATIVE_HEADERS, cborHeaders);
+        return super.encode(frameHeaders, payload);
+    }
+}
@@ -0,0 +1,82 @@
+package com.chatapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Các thread pool riêng cho tác vụ chạy nền, tách khỏi luồng servlet và luồng STOMP
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Bean(name = "aiReplyExecutor")
+    public ThreadPoolTaskExecutor aiReplyExecutor(
+            @Value("${ai.reply.core-pool-size:4}") int corePoolSize,
+            @Value("${ai.reply.max-pool-size:8}") int maxPoolSize,
+            @Value("${ai.reply.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-reply-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    @Bean(name = "aiStreamExecutor")
+    public ThreadPoolTaskExecutor aiStreamExecutor(
+            @Value("${ai.stream.core-pool-size:8}") int corePoolSize,
+            @Value("${ai.stream.max-pool-size:32}") int maxPoolSize,
+            @Value("${ai.stream.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-stream-");
+        return executor;
+    }
+
+    @Bean(name = "genAiExecutor")
+    public ThreadPoolTaskExecutor genAiExecutor(
+            @Value("${ai.gateway.core-pool-size:8}") int corePoolSize,
+            @Value("${ai.gateway.max-pool-size:32}") int maxPoolSize,
+            @Value("${ai.gateway.queue-capacity:0}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        // Hàng đợi chính nằm ở bộ giới hạn đồng thời, executor chỉ cần đủ luồng cho số lời gọi được phép
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("genai-");
+        return executor;
+    }
+
+    @Bean(name = "storageIoExecutor")
+    public ThreadPoolTaskExecutor storageIoExecutor(
+            @Value("${storage.io.core-pool-size:8}") int corePoolSize,
+            @Value("${storage.io.max-pool-size:16}") int maxPoolSize,
+            @Value("${storage.io.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("storage-io-");
+        return executor;
+    }
+
+    @Bean(name = "previewExecutor")
+    public ThreadPoolTaskExecutor previewExecutor(
+            @Value("${preview.core-pool-size:2}") int corePoolSize,
+            @Value("${preview.max-pool-size:4}") int maxPoolSize,
+            @Value("${preview.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        // Giải mã ảnh tốn nhiều heap nên giữ ít luồng, phần dư chờ trong hàng đợi
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("preview-");
+        return executor;
+    }
+}
@@ -1,14 +1,23 @@
 package com.chatapp.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
 
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
 public class S3Config {
 
     @Value("${aws.s3.access-key}")
@@ -29,4 +38,47 @@ public class S3Config {
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
                 .build();
     }
+
+    /**
+     * Client bất đồng bộ chạy trên event loop Netty riêng.
+     * maxConcurrency chặn số kết nối đồng thời tới S3, các request vượt quá sẽ chờ
+     * trong hàng đợi giới hạn bởi maxPendingConnectionAcquires.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "storage.s3.async.enabled", havingValue = "true")
+    public S3AsyncClient s3AsyncClient(
+            @Value("${storage.s3.async.max-concurrency:64}") int maxConcurrency,
+            @Value("${storage.s3.async.max-pending-acquires:1000}") int maxPendingAcquires,
+            @Value("${storage.s3.async.event-loop-threads:2}") int eventLoopThreads,
+            @Value("${storage.s3.async.connection-timeout-ms:5000}") long connectionTimeoutMs,
+            @Value("${storage.s3.async.read-timeout-ms:30000}") long readTimeoutMs,
+            @Value("${storage.s3.async.write-timeout-ms:30000}") long writeTimeoutMs,
+            @Value("${storage.s3.async.api-call-timeout-ms:120000}") long apiCallTimeoutMs) {
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secretKey);
+
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .eventLoopGroupBuilder(SdkEventLoopGroup.builder().numberOfThreads(eventLoopThreads))
+                        .maxConcurrency(maxConcurrency)
+                        .maxPendingConnectionAcquires(maxPendingAcquires)
+                        .connectionTimeout(Duration.ofMillis(connectionTimeoutMs))
+                        .readTimeout(Duration.ofMillis(readTimeoutMs))
+                        .writeTimeout(Duration.ofMillis(writeTimeoutMs)))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    public S3Presigner s3Presigner() {
+        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secretKey);
+
+        return S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                .build();
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import com.chatapp.security.JwtAuthenticationFilter;
 import com.chatapp.security.JwtTokenProvider;
 import com.chatapp.service.TokenBlacklistService;
 import com.chatapp.service.DeviceSessionService;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -37,13 +38,17 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // Lượt dispatch ASYNC (SseEmitter của /generate-stream gửi xong hoặc lỗi, CompletableFuture
+                        // của upload hoàn tất) không mang JWT; request gốc đã được xác thực nên cho qua
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/otp/**").permitAll()
                         .requestMatchers("/api/qr-login/generate").permitAll()
                         .requestMatchers("/api/qr-login/status/**").permitAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                         .requestMatchers("/chat-test", "/css/**", "/js/**").permitAll()
-                        .requestMatchers("/ws/**").permitAll()
+                        .requestMatchers("/ws/**", "/ws-native/**").permitAll()
+                        .requestMatchers("/api/files/**").permitAll()
                         .requestMatchers("*").permitAll()
                         .anyRequest().authenticated())
                 .addFilterBefore(
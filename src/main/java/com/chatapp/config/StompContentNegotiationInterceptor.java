@@ -0,0 +1,152 @@
+package com.chatapp.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chọn định dạng payload STOMP theo từng phiên.
+ * Client kết nối qua endpoint WebSocket thuần ("/ws-native") có thể gửi header
+ * "content-type: application/cbor" trong frame CONNECT để nhận payload dạng CBOR;
+ * mặc định vẫn là JSON. SockJS chỉ hỗ trợ frame text nên luôn dùng JSON.
+ * Payload CBOR được gửi trong frame WebSocket nhị phân dựng thẳng từ byte, xem CborStompEncoder.
+ */
+@Component
+public class StompContentNegotiationInterceptor implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompContentNegotiationInterceptor.class);
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+
+    /**
+     * Thuộc tính session đánh dấu kết nối WebSocket thuần (không qua SockJS)
+     */
+    public static final String NATIVE_TRANSPORT_ATTRIBUTE = "nativeTransport";
+
+    /**
+     * Header nội bộ (không ghi ra frame) đánh dấu payload đã chuyển sang CBOR
+     */
+    static final String CBOR_PAYLOAD_HEADER = "chatappCborPayload";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    private final ChannelInterceptor outboundInterceptor = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return encodeForSession(message);
+        }
+    };
+
+    /**
+     * Ghi nhận định dạng payload mà client chọn trong frame CONNECT (clientInboundChannel)
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        if (StompCommand.CONNECT.equals(accessor.getCommand()) && isNativeTransport(accessor)
+                && CBOR.equalsTypeAndSubtype(accessor.getContentType())) {
+            cborSessions.add(accessor.getSessionId());
+            logger.debug("Session {} sử dụng payload CBOR", accessor.getSessionId());
+        } else if (StompCommand.DISCONNECT.equals(accessor.getCommand())) {
+            cborSessions.remove(accessor.getSessionId());
+        }
+        return message;
+    }
+
+    /**
+     * Interceptor cho clientOutboundChannel, chuyển payload JSON sang CBOR cho các phiên đã chọn
+     */
+    public ChannelInterceptor outbound() {
+        return outboundInterceptor;
+    }
+
+    /**
+     * Kiểm tra phiên đã chọn payload CBOR hay chưa
+     */
+    public boolean isCborSession(String sessionId) {
+        return sessionId != null && cborSessions.contains(sessionId);
+    }
+
+    /**
+     * Gỡ phiên khi kết nối WebSocket đóng (kể cả khi client không gửi DISCONNECT)
+     */
+    public void removeSession(String sessionId) {
+        cborSessions.remove(sessionId);
+    }
+
+    private Message<?> encodeForSession(Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (!isCborSession(sessionId) || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+
+        MimeType contentType = MimeTypeUtils.parseMimeType(String.valueOf(
+                message.getHeaders().getOrDefault(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)));
+        if (!MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType)) {
+            return message;
+        }
+
+        try {
+            MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+            // StompSubProtocolHandler chỉ gửi frame nhị phân khi content-type tương thích application/octet-stream,
+            // các loại khác bị đổi sang String UTF-8 làm hỏng byte CBOR. CborStompEncoder ghi lại
+            // content-type application/cbor vào frame dựa trên header đánh dấu.
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setHeader(CBOR_PAYLOAD_HEADER, true);
+            return MessageBuilder.createMessage(toCbor(json), accessor.getMessageHeaders());
+        } catch (IOException e) {
+            logger.warn("Không thể chuyển payload sang CBOR cho session {}: {}", sessionId, e.getMessage());
+            return message;
+        }
+    }
+
+    /**
+     * Chuyển JSON sang CBOR theo từng token, không cần dựng lại object
+     */
+    static byte[] toCbor(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+                JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isNativeTransport(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTRIBUTE));
+    }
+}
@@ -7,16 +7,21 @@ import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 @Component
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
+    // Đích cá nhân đã được phân giải ("/queue/x-user{sessionId}") hoặc kiểu cũ "/queue/user/{id}/..."
+    private static final Pattern PRIVATE_DESTINATION_PATTERN = Pattern.compile("^/queue/(user/.*|.*-user[^/]+)$");
+
     private final JwtTokenProvider tokenProvider;
 
     public WebSocketAuthInterceptor(JwtTokenProvider tokenProvider) {
@@ -44,6 +49,14 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
             }
         }
 
+        // Đích cá nhân chỉ được đăng ký qua "/user/queue/...", không cho đăng ký trực tiếp theo id
+        if (accessor != null && StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            String destination = accessor.getDestination();
+            if (destination != null && PRIVATE_DESTINATION_PATTERN.matcher(destination).matches()) {
+                throw new AccessDeniedException("Không được phép đăng ký đích: " + destination);
+            }
+        }
+
         return message;
     }
 }
\ No newline at end of file
@@ -1,25 +1,232 @@
 package com.chatapp.config;
 
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer, SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    private final MeterRegistry meterRegistry;
+    private final StompContentNegotiationInterceptor contentNegotiationInterceptor;
+    private final ApplicationContext applicationContext;
+
+    @Value("${websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${websocket.outbound.max-pool-size:16}")
+    private int outboundMaxPoolSize;
+
+    @Value("${websocket.outbound.queue-capacity:2000}")
+    private int outboundQueueCapacity;
+
+    @Value("${websocket.channel.keep-alive-seconds:60}")
+    private int keepAliveSeconds;
+
+    @Value("${websocket.heartbeat-interval-ms:10000}")
+    private long heartbeatInterval;
+
+    @Value("${websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+
+    @Value("${websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    public WebSocketConfig(MeterRegistry meterRegistry,
+            StompContentNegotiationInterceptor contentNegotiationInterceptor, ApplicationContext applicationContext) {
+        this.meterRegistry = meterRegistry;
+        this.contentNegotiationInterceptor = contentNegotiationInterceptor;
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * Gắn CborStompEncoder cho handler STOMP trước khi broker bắt đầu nhận kết nối
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        SubProtocolWebSocketHandler webSocketHandler = applicationContext.getBean("subProtocolWebSocketHandler",
+                SubProtocolWebSocketHandler.class);
+        for (SubProtocolHandler protocolHandler : webSocketHandler.getProtocolHandlers()) {
+            if (protocolHandler instanceof StompSubProtocolHandler stompHandler) {
+                stompHandler.setEncoder(new CborStompEncoder());
+            }
+        }
+    }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Endpoint WebSocket thuần cho client di động, hỗ trợ frame nhị phân (payload CBOR)
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                            WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(StompContentNegotiationInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, true);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                            WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/queue");
+        // Heartbeat giúp phát hiện kết nối chết để trạng thái online luôn chính xác
+        ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(1);
+        heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+        heartbeatScheduler.initialize();
+
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[] { heartbeatInterval, heartbeatInterval })
+                .setTaskScheduler(heartbeatScheduler);
         registry.setApplicationDestinationPrefixes("/app");
+        // clientOutboundChannel chạy trên nhiều luồng; giữ thứ tự gửi theo từng session
+        // để tin nhắn liên tiếp trong một cuộc trò chuyện không tới client sai thứ tự
+        registry.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(createChannelExecutor("inbound",
+                inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity));
+        registration.interceptors(contentNegotiationInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(createChannelExecutor("outbound",
+                outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity));
+        registration.interceptors(contentNegotiationInterceptor.outbound());
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Chỉ dùng khi frame có content-type application/cbor, còn lại vẫn đi qua converter JSON mặc định
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(
+                StompContentNegotiationInterceptor.CBOR);
+        cborConverter.setObjectMapper(new CBORMapper().findAndRegisterModules());
+        cborConverter.setStrictContentTypeMatch(true);
+        messageConverters.add(0, cborConverter);
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Client gửi chậm vượt quá giới hạn thời gian/bộ đệm sẽ bị đóng với mã SESSION_NOT_RELIABLE (4500)
+        registration.setSendTimeLimit(sendTimeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit);
+
+        Counter evictions = Counter.builder("chatapp.websocket.slow_consumer.evictions")
+                .description("Số session bị ngắt do client nhận tin quá chậm")
+                .register(meterRegistry);
+
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (CloseStatus.SESSION_NOT_RELIABLE.equalsCode(closeStatus)) {
+                    evictions.increment();
+                    logger.warn("Ngắt session {} do client nhận tin quá chậm: {}", session.getId(), closeStatus);
+                }
+                contentNegotiationInterceptor.removeSession(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        });
+    }
+
+    /**
+     * Tạo executor có giới hạn cho channel, kèm metric độ sâu hàng đợi và số tác vụ bị từ chối
+     */
+    private ThreadPoolTaskExecutor createChannelExecutor(String channel, int corePoolSize,
+            int maxPoolSize, int queueCapacity) {
+        Counter rejected = Counter.builder("chatapp.websocket.channel.rejected")
+                .description("Số message bị từ chối do hàng đợi channel đã đầy")
+                .tag("channel", channel)
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            new ThreadPoolExecutor.AbortPolicy().rejectedExecution(task, pool);
+        });
+
+        Gauge.builder("chatapp.websocket.channel.queue.depth", executor, WebSocketConfig::queueDepth)
+                .description("Số message đang chờ trong hàng đợi channel")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("chatapp.websocket.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Số luồng đang xử lý message của channel")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        return executor;
+    }
+
+    private static double queueDepth(ThreadPoolTaskExecutor executor) {
+        try {
+            return executor.getThreadPoolExecutor().getQueue().size();
+        } catch (IllegalStateException e) {
+            // Executor chưa được khởi tạo
+            return 0;
+        }
     }
-}
\ No newline at end of file
+}
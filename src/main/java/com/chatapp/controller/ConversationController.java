@@ -3,11 +3,15 @@ package com.chatapp.controller;
 import com.chatapp.dto.request.ConversationDto;
 import com.chatapp.dto.request.MessageDto;
 import com.chatapp.enums.MessageType;
+import com.chatapp.enums.SearchSortOrder;
+import com.chatapp.util.AppConstants;
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
 import com.chatapp.service.ConversationService;
 import com.chatapp.service.UserService;
 import com.chatapp.service.AiConversationService;
+import com.chatapp.service.AiReplyDispatcher;
+import com.chatapp.service.TypingIndicatorService;
 import com.chatapp.dto.response.ApiResponse;
 import com.chatapp.dto.response.PageResponse;
 import io.swagger.v3.oas.annotations.Operation;
@@ -17,6 +21,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +29,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import com.chatapp.repository.UserRepository;
 import com.chatapp.repository.ConversationRepository;
 import com.chatapp.repository.MessageRepository;
@@ -37,6 +43,8 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.security.Principal;
 import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.chatapp.dto.request.UserDto;
 import com.chatapp.model.DeletedMessage;
@@ -44,14 +52,20 @@ import com.chatapp.repository.DeletedMessageRepository;
 import com.chatapp.service.MessageService;
 import com.chatapp.model.Attachments;
 import com.chatapp.service.AttachmentsService;
-import java.util.ArrayList;
+import com.chatapp.service.AttachmentPreviewService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import com.chatapp.dto.response.BlockedUserResponse;
 import com.chatapp.dto.request.ForwardMessagesRequest;
 import com.chatapp.dto.request.DeleteMultipleMessagesRequest;
+import com.chatapp.dto.request.TypingEventRequest;
 import com.chatapp.exception.ResourceNotFoundException;
+import com.chatapp.exception.BadRequestException;
+import com.chatapp.dto.request.PresignUploadRequest;
+import com.chatapp.dto.request.CommitUploadsRequest;
+import com.chatapp.dto.response.PresignedUploadResponse;
+import com.chatapp.service.DirectUploadService;
 
 @RestController
 @RequestMapping("/api/conversations")
@@ -68,6 +82,9 @@ public class ConversationController {
         @Autowired
         private AiConversationService aiConversationService;
 
+        @Autowired
+        private AiReplyDispatcher aiReplyDispatcher;
+
         @Autowired
         private UserRepository userRepository;
 
@@ -89,6 +106,20 @@ public class ConversationController {
         @Autowired
         private AttachmentsService attachmentsService;
 
+        @Autowired
+        private AttachmentPreviewService attachmentPreviewService;
+
+        @Autowired
+        private TypingIndicatorService typingIndicatorService;
+
+        // Chỉ có khi lưu trữ trên S3
+        @Autowired(required = false)
+        private DirectUploadService directUploadService;
+
+        @Autowired
+        @Qualifier("storageIoExecutor")
+        private ThreadPoolTaskExecutor storageIoExecutor;
+
         @Operation(summary = "Lấy danh sách cuộc trò chuyện", description = "Lấy tất cả các cuộc trò chuyện của người dùng hiện tại")
         @ApiResponses(value = {
                         @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy danh sách cuộc trò chuyện thành công")
@@ -250,11 +281,9 @@ public class ConversationController {
 
                         // Kiểm tra và xử lý AI auto reply nếu đây là AI conversation
                         if (aiConversationService.isAiConversation(conversationId)) {
-                                // Gọi AI auto reply bất đồng bộ để không làm chậm response
-                                new Thread(() -> {
-                                        aiConversationService.handleAutoReply(conversationId, messageDto.getContent(),
-                                                        senderId);
-                                }).start();
+                                // Đưa vào hàng đợi AI, phản hồi sẽ được gửi qua WebSocket khi sẵn sàng
+                                aiReplyDispatcher.submit(conversationId, messageDto.getContent(), senderId,
+                                                userDetails.getUsername());
                         }
 
                         String successMessage = sentMessages.size() == 1
@@ -311,11 +340,9 @@ public class ConversationController {
 
                         // Kiểm tra và xử lý AI auto reply nếu đây là AI conversation
                         if (aiConversationService.isAiConversation(conversationId)) {
-                                // Gọi AI auto reply bất đồng bộ để không làm chậm response
-                                new Thread(() -> {
-                                        aiConversationService.handleAutoReply(conversationId, messageDto.getContent(),
-                                                        senderId);
-                                }).start();
+                                // Đưa vào hàng đợi AI, phản hồi sẽ được gửi qua WebSocket khi sẵn sàng
+                                aiReplyDispatcher.submit(conversationId, messageDto.getContent(), senderId,
+                                                principal.getName());
                         }
 
                         return sentMessages;
@@ -329,6 +356,15 @@ public class ConversationController {
                 }
         }
 
+        @Operation(summary = "Trạng thái đang soạn tin", description = "Gửi trạng thái đang soạn tin tới các thành viên khác, không lưu vào lịch sử")
+        @MessageMapping("/conversation/{conversationId}/typing")
+        public void handleTyping(
+                        @Parameter(description = "Conversation ID", required = true) @DestinationVariable Long conversationId,
+                        @Parameter(description = "Typing state", required = true) TypingEventRequest request,
+                        @Parameter(hidden = true) Principal principal) {
+                typingIndicatorService.handleTyping(conversationId, principal.getName(), request.isTyping());
+        }
+
         @Operation(summary = "Thu hồi tin nhắn", description = "Thu hồi tin nhắn trong vòng 1 ngày, chỉ người gửi mới được thu hồi")
         @ApiResponses(value = {
                         @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Thu hồi tin nhắn thành công"),
@@ -367,7 +403,7 @@ public class ConversationController {
                                                         .build());
                 }
 
-                message.setContent("Tin nhắn đã thu hồi");
+                message.setContent(AppConstants.RECALLED_MESSAGE_CONTENT);
                 Message savedMessage = messageRepository.save(message);
                 MessageDto savedMessageDto = conversationService.mapToMessageDto(savedMessage);
 
@@ -526,8 +562,11 @@ public class ConversationController {
                 newMessage.setContent(originalMessage.getContent());
                 newMessage.setType(originalMessage.getType());
                 newMessage.setCreatedAt(LocalDateTime.now());
+                conversationService.copyAttachments(originalMessage, newMessage);
 
                 Message savedMessage = messageRepository.save(newMessage);
+                // Bản sao của file đang chờ sinh ảnh xem trước cần được xếp hàng riêng
+                attachmentPreviewService.scheduleAfterCommit(List.of(savedMessage));
                 MessageDto savedMessageDto = conversationService.mapToMessageDto(savedMessage);
                 messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, savedMessageDto);
 
@@ -545,74 +584,63 @@ public class ConversationController {
                         @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Không tìm thấy cuộc trò chuyện")
         })
         @PostMapping(value = "/{conversationId}/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-        public ResponseEntity<ApiResponse<List<MessageDto>>> uploadFile(
+        public CompletableFuture<ResponseEntity<ApiResponse<List<MessageDto>>>> uploadFile(
                         @Parameter(description = "Conversation ID", required = true) @PathVariable Long conversationId,
                         @Parameter(description = "Các file cần upload", required = true, content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE)) @RequestPart("files") MultipartFile[] files,
                         @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
-                try {
-                        UserDto userDto = userService.getUserByPhone(userDetails.getUsername());
-                        Long senderId = userDto.getUserId();
-
-                        if (!conversationService.isUserInConversation(conversationId, senderId)) {
-                                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                                                .body(ApiResponse.<List<MessageDto>>builder()
-                                                                .success(false)
-                                                                .message("Bạn không có quyền gửi file trong cuộc trò chuyện này")
-                                                                .build());
-                        }
-
-                        // Kiểm tra nếu cuộc trò chuyện đã bị chặn
-                        if (conversationService.isConversationBlocked(conversationId)) {
-                                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                                                .body(ApiResponse.<List<MessageDto>>builder()
-                                                                .success(false)
-                                                                .message("Tin nhắn đã bị chặn trong cuộc trò chuyện này")
-                                                                .build());
-                        }
-
-                        List<MessageDto> savedMessages = new ArrayList<>();
-
-                        for (MultipartFile file : files) {
-                                // Upload file và lưu thông tin attachment
-                                Attachments attachment = attachmentsService.uploadFile(file);
-
-                                // Xác định loại tin nhắn dựa trên loại file
-                                MessageType messageType = determineMessageType(file.getContentType());
-
-                                // Tạo tin nhắn mới với file đính kèm
-                                Message message = new Message();
-                                message.setSender(userRepository.findById(senderId).orElseThrow());
-                                message.setConversation(conversationRepository.findById(conversationId).orElseThrow());
-                                message.setContent(attachment.getName());
-                                message.setType(messageType);
-                                message.setCreatedAt(LocalDateTime.now());
-
-                                // Thiết lập mối quan hệ hai chiều
-                                message.getAttachments().add(attachment);
-                                attachment.setMessage(message);
-
-                                Message savedMessage = messageRepository.save(message);
-                                MessageDto savedMessageDto = conversationService.mapToMessageDto(savedMessage);
-                                savedMessages.add(savedMessageDto);
-
-                                // Gửi thông báo realtime qua WebSocket
-                                messagingTemplate.convertAndSend("/queue/conversation/" + conversationId,
-                                                savedMessageDto);
-                        }
+                UserDto userDto = userService.getUserByPhone(userDetails.getUsername());
+                Long senderId = userDto.getUserId();
 
-                        return ResponseEntity.ok(ApiResponse.<List<MessageDto>>builder()
-                                        .success(true)
-                                        .message("Upload " + files.length + " file thành công")
-                                        .payload(savedMessages)
-                                        .build());
+                if (!conversationService.isUserInConversation(conversationId, senderId)) {
+                        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(ApiResponse.<List<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message("Bạn không có quyền gửi file trong cuộc trò chuyện này")
+                                                        .build()));
+                }
 
-                } catch (IOException e) {
-                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                // Kiểm tra nếu cuộc trò chuyện đã bị chặn
+                if (conversationService.isConversationBlocked(conversationId)) {
+                        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN)
                                         .body(ApiResponse.<List<MessageDto>>builder()
                                                         .success(false)
-                                                        .message("Lỗi khi upload file: " + e.getMessage())
-                                                        .build());
+                                                        .message("Tin nhắn đã bị chặn trong cuộc trò chuyện này")
+                                                        .build()));
                 }
+
+                // Upload song song và trả luồng request về cho Tomcat trong lúc chờ,
+                // response được hoàn tất khi file chậm nhất upload xong.
+                // Lưu tin nhắn và broadcast chạy trên storageIoExecutor, không chiếm luồng event loop của S3 SDK
+                return attachmentsService.uploadFilesAsync(files)
+                                .thenApplyAsync(attachments -> {
+                                        List<MessageDto> savedMessages = saveAttachmentMessages(senderId,
+                                                        conversationId, attachments);
+
+                                        // Gửi một sự kiện realtime duy nhất cho cả lô
+                                        messagingTemplate.convertAndSend("/queue/conversation/" + conversationId,
+                                                        savedMessages);
+
+                                        return ResponseEntity.ok(ApiResponse.<List<MessageDto>>builder()
+                                                        .success(true)
+                                                        .message("Upload " + files.length + " file thành công")
+                                                        .payload(savedMessages)
+                                                        .build());
+                                }, storageIoExecutor)
+                                .exceptionally(error -> {
+                                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                                        ? error.getCause()
+                                                        : error;
+                                        if (!(cause instanceof IOException)) {
+                                                throw error instanceof CompletionException completionException
+                                                                ? completionException
+                                                                : new CompletionException(cause);
+                                        }
+                                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                                        .body(ApiResponse.<List<MessageDto>>builder()
+                                                                        .success(false)
+                                                                        .message("Lỗi khi upload file: " + cause.getMessage())
+                                                                        .build());
+                                });
         }
 
         // WebSocket upload file realtime
@@ -634,45 +662,156 @@ public class ConversationController {
                         throw new AccessDeniedException("Tin nhắn đã bị chặn trong cuộc trò chuyện này");
                 }
 
-                List<MessageDto> messages = new ArrayList<>();
+                List<Attachments> attachments = attachmentsService.uploadFiles(files);
+                return saveAttachmentMessages(senderId, conversationId, attachments);
+        }
 
-                for (MultipartFile file : files) {
-                        Attachments attachment = attachmentsService.uploadFile(file);
+        /**
+         * Lưu tin nhắn cho các file vừa upload rồi trả các object đã giữ khi upload;
+         * nếu lưu lỗi thì bỏ các file đó để không để lại object mồ côi
+         */
+        private List<MessageDto> saveAttachmentMessages(Long senderId, Long conversationId,
+                        List<Attachments> attachments) {
+                List<MessageDto> messages;
+                try {
+                        messages = conversationService.saveAttachmentMessages(senderId, conversationId, attachments);
+                } catch (RuntimeException e) {
+                        attachmentsService.discard(attachments);
+                        throw e;
+                }
+                attachmentsService.releaseClaims(attachments);
+                return messages;
+        }
 
-                        // Xác định loại tin nhắn dựa trên loại file
-                        MessageType messageType = determineMessageType(file.getContentType());
+        @Operation(summary = "Xin URL upload trực tiếp", description = "Cấp URL đã ký để client upload file thẳng lên S3, sau đó gọi API xác nhận để gửi tin nhắn")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Cấp URL upload thành công"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Loại file hoặc kích thước không hợp lệ"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Không có quyền gửi file trong cuộc trò chuyện này")
+        })
+        @PostMapping("/{conversationId}/uploads/presign")
+        public ResponseEntity<ApiResponse<PresignedUploadResponse>> presignUpload(
+                        @Parameter(description = "Conversation ID", required = true) @PathVariable Long conversationId,
+                        @RequestBody PresignUploadRequest request,
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
+                if (directUploadService == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                                        .body(ApiResponse.<PresignedUploadResponse>builder()
+                                                        .success(false)
+                                                        .message("Nơi lưu trữ hiện tại không hỗ trợ URL ký sẵn")
+                                                        .build());
+                }
+                try {
+                        Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
+                        PresignedUploadResponse response = directUploadService.createUpload(userId, conversationId,
+                                        request);
 
-                        Message message = new Message();
-                        message.setSender(userRepository.findById(senderId).orElseThrow());
-                        message.setConversation(conversationRepository.findById(conversationId).orElseThrow());
-                        message.setContent(attachment.getName());
-                        message.setType(messageType);
-                        message.setCreatedAt(LocalDateTime.now());
+                        return ResponseEntity.ok(ApiResponse.<PresignedUploadResponse>builder()
+                                        .success(true)
+                                        .message("Cấp URL upload thành công")
+                                        .payload(response)
+                                        .build());
 
-                        // Thiết lập mối quan hệ hai chiều
-                        message.getAttachments().add(attachment);
-                        attachment.setMessage(message);
+                } catch (AccessDeniedException e) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(ApiResponse.<PresignedUploadResponse>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
+                } catch (BadRequestException e) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                        .body(ApiResponse.<PresignedUploadResponse>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
+                }
+        }
 
-                        Message savedMessage = messageRepository.save(message);
-                        messages.add(conversationService.mapToMessageDto(savedMessage));
+        @Operation(summary = "Xác nhận upload trực tiếp", description = "Kiểm tra các file đã upload lên S3 và gửi chúng như tin nhắn trong cuộc trò chuyện")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Gửi file thành công"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Upload không tồn tại, đã hết hạn hoặc không khớp"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Không có quyền gửi file trong cuộc trò chuyện này")
+        })
+        @PostMapping("/{conversationId}/uploads/commit")
+        public ResponseEntity<ApiResponse<List<MessageDto>>> commitUploads(
+                        @Parameter(description = "Conversation ID", required = true) @PathVariable Long conversationId,
+                        @RequestBody CommitUploadsRequest request,
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
+                if (directUploadService == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                                        .body(ApiResponse.<List<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message("Nơi lưu trữ hiện tại không hỗ trợ URL ký sẵn")
+                                                        .build());
                 }
+                try {
+                        Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
+                        List<MessageDto> savedMessages = directUploadService.commitUploads(userId, conversationId,
+                                        request.getUploadIds());
 
-                return messages;
+                        messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, savedMessages);
+
+                        return ResponseEntity.ok(ApiResponse.<List<MessageDto>>builder()
+                                        .success(true)
+                                        .message("Gửi " + savedMessages.size() + " file thành công")
+                                        .payload(savedMessages)
+                                        .build());
+
+                } catch (AccessDeniedException e) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(ApiResponse.<List<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
+                } catch (BadRequestException e) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                        .body(ApiResponse.<List<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
+                }
         }
 
-        private MessageType determineMessageType(String contentType) {
-                if (contentType == null) {
-                        return MessageType.DOCUMENT;
+        @Operation(summary = "Lấy URL tải file đính kèm", description = "Trả về URL đã ký có hạn ngắn để tải file đính kèm trực tiếp từ S3")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy URL tải thành công"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Không có quyền tải file này"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Không tìm thấy file đính kèm")
+        })
+        @GetMapping("/attachments/{attachmentId}/download-url")
+        public ResponseEntity<ApiResponse<String>> getAttachmentDownloadUrl(
+                        @Parameter(description = "ID file đính kèm", required = true) @PathVariable Long attachmentId,
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
+                if (directUploadService == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                                        .body(ApiResponse.<String>builder()
+                                                        .success(false)
+                                                        .message("Nơi lưu trữ hiện tại không hỗ trợ URL ký sẵn")
+                                                        .build());
                 }
+                try {
+                        Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
+                        String url = directUploadService.getDownloadUrl(userId, attachmentId);
 
-                if (contentType.startsWith("image/")) {
-                        return MessageType.IMAGE;
-                } else if (contentType.startsWith("video/")) {
-                        return MessageType.VIDEO;
-                } else if (contentType.startsWith("audio/")) {
-                        return MessageType.AUDIO;
-                } else {
-                        return MessageType.DOCUMENT;
+                        return ResponseEntity.ok(ApiResponse.<String>builder()
+                                        .success(true)
+                                        .message("Lấy URL tải thành công")
+                                        .payload(url)
+                                        .build());
+
+                } catch (AccessDeniedException e) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(ApiResponse.<String>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
+                } catch (ResourceNotFoundException e) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(ApiResponse.<String>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
                 }
         }
 
@@ -728,6 +867,8 @@ public class ConversationController {
                         @Parameter(description = "Ngày kết thúc (format: yyyy-MM-ddTHH:mm:ss)", required = false) @RequestParam(required = false) String endDate,
                         @Parameter(description = "Số trang (bắt đầu từ 0)", required = false) @RequestParam(defaultValue = "0") int page,
                         @Parameter(description = "Kích thước trang", required = false) @RequestParam(defaultValue = "20") int size,
+                        @Parameter(description = "nextCursor của trang trước, dùng thay cho page", required = false) @RequestParam(required = false) String cursor,
+                        @Parameter(description = "Thứ tự: RELEVANCE hoặc NEWEST", required = false) @RequestParam(defaultValue = "RELEVANCE") SearchSortOrder sort,
                         @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
 
                 try {
@@ -750,7 +891,7 @@ public class ConversationController {
 
                         // Thực hiện tìm kiếm
                         PageResponse<MessageDto> messages = conversationService.searchMessages(conversationId, userId,
-                                        searchTerm, senderId, startDateTime, endDateTime, pageable);
+                                        searchTerm, senderId, startDateTime, endDateTime, sort, cursor, pageable);
 
                         return ResponseEntity.ok(ApiResponse.<PageResponse<MessageDto>>builder()
                                         .success(true)
@@ -764,6 +905,12 @@ public class ConversationController {
                                                         .success(false)
                                                         .message("Định dạng ngày tháng không hợp lệ. Vui lòng sử dụng format: yyyy-MM-ddTHH:mm:ss")
                                                         .build());
+                } catch (BadRequestException e) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                        .body(ApiResponse.<PageResponse<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
                 } catch (Exception e) {
                         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                                         .body(ApiResponse.<PageResponse<MessageDto>>builder()
@@ -786,6 +933,8 @@ public class ConversationController {
                         @Parameter(description = "Ngày kết thúc (format: yyyy-MM-ddTHH:mm:ss)", required = false) @RequestParam(required = false) String endDate,
                         @Parameter(description = "Số trang (bắt đầu từ 0)", required = false) @RequestParam(defaultValue = "0") int page,
                         @Parameter(description = "Kích thước trang", required = false) @RequestParam(defaultValue = "20") int size,
+                        @Parameter(description = "nextCursor của trang trước, dùng thay cho page", required = false) @RequestParam(required = false) String cursor,
+                        @Parameter(description = "Thứ tự: RELEVANCE hoặc NEWEST", required = false) @RequestParam(defaultValue = "RELEVANCE") SearchSortOrder sort,
                         @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
 
                 try {
@@ -808,7 +957,7 @@ public class ConversationController {
 
                         // Thực hiện tìm kiếm
                         PageResponse<MessageDto> messages = conversationService.searchMessagesGlobal(userId,
-                                        searchTerm, senderId, startDateTime, endDateTime, pageable);
+                                        searchTerm, senderId, startDateTime, endDateTime, sort, cursor, pageable);
 
                         return ResponseEntity.ok(ApiResponse.<PageResponse<MessageDto>>builder()
                                         .success(true)
@@ -822,6 +971,12 @@ public class ConversationController {
                                                         .success(false)
                                                         .message("Định dạng ngày tháng không hợp lệ. Vui lòng sử dụng format: yyyy-MM-ddTHH:mm:ss")
                                                         .build());
+                } catch (BadRequestException e) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                        .body(ApiResponse.<PageResponse<MessageDto>>builder()
+                                                        .success(false)
+                                                        .message(e.getMessage())
+                                                        .build());
                 } catch (Exception e) {
                         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                                         .body(ApiResponse.<PageResponse<MessageDto>>builder()
@@ -996,6 +1151,36 @@ public class ConversationController {
                 }
         }
 
+        @Operation(summary = "Lấy danh sách cuộc trò chuyện AI có phân trang", description = "Lấy các cuộc trò chuyện AI của người dùng hiện tại có phân trang, mới nhất trước")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy danh sách cuộc trò chuyện AI thành công")
+        })
+        @GetMapping("/ai/paged")
+        public ResponseEntity<ApiResponse<PageResponse<ConversationDto>>> getPagedAiConversations(
+                        @Parameter(description = "Số trang (bắt đầu từ 0)", required = false) @RequestParam(defaultValue = "0") int page,
+                        @Parameter(description = "Kích thước trang", required = false) @RequestParam(defaultValue = "20") int size,
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
+                try {
+                        Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
+                        PageResponse<ConversationDto> conversations = aiConversationService
+                                        .getPagedAiConversations(userId, PageRequest.of(page, size));
+
+                        return ResponseEntity.ok(ApiResponse.<PageResponse<ConversationDto>>builder()
+                                        .success(true)
+                                        .message("Lấy danh sách cuộc trò chuyện AI thành công")
+                                        .payload(conversations)
+                                        .build());
+
+                } catch (Exception e) {
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .body(ApiResponse.<PageResponse<ConversationDto>>builder()
+                                                        .success(false)
+                                                        .message("Lỗi khi lấy danh sách cuộc trò chuyện AI: "
+                                                                        + e.getMessage())
+                                                        .build());
+                }
+        }
+
         public static class ConversationRequest {
                 private List<Long> participantIds;
 
@@ -4,6 +4,7 @@ import com.chatapp.dto.request.FriendDto;
 import com.chatapp.dto.response.ApiResponse;
 import com.chatapp.dto.response.FriendAcceptanceResponse;
 import com.chatapp.service.FriendService;
+import com.chatapp.service.UserMessagingService;
 import com.chatapp.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -11,7 +12,6 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
@@ -26,13 +26,13 @@ public class FriendController {
 
         private final FriendService friendService;
         private final UserService userService;
-        private final SimpMessagingTemplate messagingTemplate;
+        private final UserMessagingService userMessagingService;
 
         public FriendController(FriendService friendService, UserService userService,
-                        SimpMessagingTemplate messagingTemplate) {
+                        UserMessagingService userMessagingService) {
                 this.friendService = friendService;
                 this.userService = userService;
-                this.messagingTemplate = messagingTemplate;
+                this.userMessagingService = userMessagingService;
         }
 
         @Operation(summary = "Gửi lời mời kết bạn", description = "Gửi lời mời kết bạn tới người dùng khác")
@@ -50,7 +50,7 @@ public class FriendController {
                 FriendDto result = friendService.sendFriendRequest(senderId, userId);
 
                 // Gửi thông báo realtime đến người nhận lời mời kết bạn
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/friend-requests", result);
+                userMessagingService.sendToUser(userId, "/queue/friend-requests", result);
 
                 ApiResponse<FriendDto> response = ApiResponse.<FriendDto>builder()
                                 .success(true)
@@ -76,8 +76,8 @@ public class FriendController {
                                 userId);
 
                 // Gửi thông báo realtime đến người gửi lời mời kết bạn
-                messagingTemplate.convertAndSend(
-                                "/queue/user/" + result.getFriendship().getSenderId() + "/friend-updates",
+                userMessagingService.sendToUser(
+                                result.getFriendship().getSenderId(), "/queue/friend-updates",
                                 result.getFriendship());
 
                 ApiResponse<FriendAcceptanceResponse> response = ApiResponse.<FriendAcceptanceResponse>builder()
@@ -103,7 +103,7 @@ public class FriendController {
                 FriendDto result = friendService.rejectFriendRequest(friendshipId, userId);
 
                 // Gửi thông báo realtime đến người gửi lời mời kết bạn
-                messagingTemplate.convertAndSend("/queue/user/" + result.getSenderId() + "/friend-updates", result);
+                userMessagingService.sendToUser(result.getSenderId(), "/queue/friend-updates", result);
 
                 ApiResponse<FriendDto> response = ApiResponse.<FriendDto>builder()
                                 .success(true)
@@ -127,7 +127,7 @@ public class FriendController {
                 FriendDto result = friendService.blockFriend(currentUserId, userId);
 
                 // Gửi thông báo realtime đến người bị chặn
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/friend-updates", result);
+                userMessagingService.sendToUser(userId, "/queue/friend-updates", result);
 
                 ApiResponse<FriendDto> response = ApiResponse.<FriendDto>builder()
                                 .success(true)
@@ -151,7 +151,7 @@ public class FriendController {
                 FriendDto result = friendService.unblockFriend(currentUserId, userId);
 
                 // Gửi thông báo realtime đến người được bỏ chặn
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/friend-updates", result);
+                userMessagingService.sendToUser(userId, "/queue/friend-updates", result);
 
                 ApiResponse<FriendDto> response = ApiResponse.<FriendDto>builder()
                                 .success(true)
@@ -243,7 +243,7 @@ public class FriendController {
                 FriendDto result = friendService.withdrawFriendRequest(friendshipId, userId);
 
                 // Gửi thông báo realtime đến người nhận lời mời kết bạn
-                messagingTemplate.convertAndSend("/queue/user/" + result.getReceiverId() + "/friend-updates", result);
+                userMessagingService.sendToUser(result.getReceiverId(), "/queue/friend-updates", result);
 
                 ApiResponse<FriendDto> response = ApiResponse.<FriendDto>builder()
                                 .success(true)
@@ -286,10 +286,10 @@ public class FriendController {
 
                 // Gửi thông báo realtime đến người bạn bị xóa
                 if (result.getSenderId().equals(userId)) {
-                        messagingTemplate.convertAndSend("/queue/user/" + result.getReceiverId() + "/friend-updates",
+                        userMessagingService.sendToUser(result.getReceiverId(), "/queue/friend-updates",
                                         result);
                 } else {
-                        messagingTemplate.convertAndSend("/queue/user/" + result.getSenderId() + "/friend-updates",
+                        userMessagingService.sendToUser(result.getSenderId(), "/queue/friend-updates",
                                         result);
                 }
 
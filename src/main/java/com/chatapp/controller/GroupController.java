@@ -3,7 +3,7 @@ package com.chatapp.controller;
 import com.chatapp.dto.request.GroupCreateDto;
 import com.chatapp.dto.request.GroupDto;
 import com.chatapp.dto.response.ApiResponse;
-import com.chatapp.service.FileStorageService;
+import com.chatapp.service.AvatarService;
 import com.chatapp.service.GroupService;
 import com.chatapp.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -17,8 +17,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/groups")
@@ -28,13 +28,13 @@ public class GroupController {
 
         private final GroupService groupService;
         private final UserService userService;
-        private final FileStorageService fileStorageService;
+        private final AvatarService avatarService;
 
         public GroupController(GroupService groupService, UserService userService,
-                        FileStorageService fileStorageService) {
+                        AvatarService avatarService) {
                 this.groupService = groupService;
                 this.userService = userService;
-                this.fileStorageService = fileStorageService;
+                this.avatarService = avatarService;
         }
 
         @Operation(summary = "Tạo nhóm", description = "Tạo một nhóm chat mới với bạn bè làm thành viên và tự động tạo cuộc trò chuyện nhóm tương ứng")
@@ -65,19 +65,11 @@ public class GroupController {
                         @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Dữ liệu nhóm không hợp lệ hoặc lỗi khi tải ảnh")
         })
         @PostMapping(value = "/with-avatar", consumes = { "multipart/form-data" })
-        public ResponseEntity<ApiResponse<GroupDto>> createGroupWithAvatar(
+        public CompletableFuture<ResponseEntity<ApiResponse<GroupDto>>> createGroupWithAvatar(
                         @Parameter(description = "Tên nhóm", required = true) @RequestParam("name") String name,
                         @Parameter(description = "Danh sách ID thành viên, cách nhau bởi dấu phẩy", required = true) @RequestParam("memberIds") String memberIdsStr,
                         @Parameter(description = "Tệp ảnh đại diện nhóm (tùy chọn)") @RequestParam(value = "file", required = false) MultipartFile file,
-                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) throws IOException {
-
-                // Khởi tạo fileUrl là null
-                String fileUrl = null;
-
-                // Chỉ tải lên ảnh đại diện nếu file không phải null
-                if (file != null && !file.isEmpty()) {
-                        fileUrl = fileStorageService.uploadFile(file);
-                }
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
 
                 // Chuyển đổi chuỗi memberIds thành List<Long>
                 List<Long> memberIds = new java.util.ArrayList<>();
@@ -87,26 +79,33 @@ public class GroupController {
                         }
                 }
 
-                // Tạo đối tượng GroupCreateDto
-                GroupCreateDto groupCreateDto = new GroupCreateDto();
-                groupCreateDto.setName(name);
-                groupCreateDto.setAvatarUrl(fileUrl); // Có thể là null
-                groupCreateDto.setMemberIds(memberIds);
-
                 // Lấy userId của người đang đăng nhập
                 Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
 
-                // Gọi service để tạo nhóm
-                GroupDto createdGroup = groupService.createGroup(groupCreateDto, userId);
-
-                ApiResponse<GroupDto> response = ApiResponse.<GroupDto>builder()
-                                .success(true)
-                                .message("Nhóm đã được tạo thành công" + (fileUrl != null ? " với ảnh đại diện" : ""))
-                                .payload(createdGroup)
-                                .data("avatarUrl", fileUrl)
-                                .build();
-
-                return ResponseEntity.ok(response);
+                // Chỉ tải lên ảnh đại diện nếu file không phải null, luồng request không phải chờ upload
+                CompletableFuture<String> avatarUpload = (file != null && !file.isEmpty())
+                                ? avatarService.uploadAsync(file)
+                                : CompletableFuture.completedFuture(null);
+
+                return avatarUpload.thenApply(fileUrl -> {
+                        // Tạo đối tượng GroupCreateDto
+                        GroupCreateDto groupCreateDto = new GroupCreateDto();
+                        groupCreateDto.setName(name);
+                        groupCreateDto.setAvatarUrl(fileUrl); // Có thể là null
+                        groupCreateDto.setMemberIds(memberIds);
+
+                        // Gọi service để tạo nhóm
+                        GroupDto createdGroup = groupService.createGroup(groupCreateDto, userId);
+
+                        ApiResponse<GroupDto> response = ApiResponse.<GroupDto>builder()
+                                        .success(true)
+                                        .message("Nhóm đã được tạo thành công" + (fileUrl != null ? " với ảnh đại diện" : ""))
+                                        .payload(createdGroup)
+                                        .data("avatarUrl", fileUrl)
+                                        .build();
+
+                        return ResponseEntity.ok(response);
+                });
         }
 
         @Operation(summary = "Lấy nhóm theo ID", description = "Lấy thông tin chi tiết của nhóm theo ID")
@@ -204,28 +203,29 @@ public class GroupController {
                         @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Định dạng hoặc kích thước tệp không hợp lệ")
         })
         @PostMapping("/{id}/avatar")
-        public ResponseEntity<ApiResponse<GroupDto>> uploadGroupAvatar(
+        public CompletableFuture<ResponseEntity<ApiResponse<GroupDto>>> uploadGroupAvatar(
                         @Parameter(description = "ID của nhóm", required = true) @PathVariable Long id,
                         @Parameter(description = "Tệp ảnh đại diện", required = true) @RequestParam("file") MultipartFile file,
-                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) throws IOException {
+                        @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
 
                 Long userId = userService.getUserByPhone(userDetails.getUsername()).getUserId();
-                String fileUrl = fileStorageService.uploadFile(file);
 
-                GroupDto groupDto = new GroupDto();
-                groupDto.setAvatarUrl(fileUrl);
+                return avatarService.uploadAsync(file).thenApply(fileUrl -> {
+                        GroupDto groupDto = new GroupDto();
+                        groupDto.setAvatarUrl(fileUrl);
 
-                GroupDto updatedGroup = groupService.updateGroup(id, groupDto, userId);
+                        GroupDto updatedGroup = groupService.updateGroup(id, groupDto, userId);
 
-                ApiResponse<GroupDto> response = ApiResponse.<GroupDto>builder()
-                                .success(true)
-                                .message("Tải lên ảnh đại diện nhóm thành công")
-                                .payload(updatedGroup)
-                                .id(id)
-                                .data("avatarUrl", fileUrl)
-                                .build();
+                        ApiResponse<GroupDto> response = ApiResponse.<GroupDto>builder()
+                                        .success(true)
+                                        .message("Tải lên ảnh đại diện nhóm thành công")
+                                        .payload(updatedGroup)
+                                        .id(id)
+                                        .data("avatarUrl", fileUrl)
+                                        .build();
 
-                return ResponseEntity.ok(response);
+                        return ResponseEntity.ok(response);
+                });
         }
 
         @Operation(summary = "Thêm thành viên", description = "Thêm một thành viên mới vào nhóm")
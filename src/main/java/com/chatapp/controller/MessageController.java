@@ -16,8 +16,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -72,12 +72,10 @@ public class MessageController {
                         @ApiResponse(responseCode = "400", description = "Định dạng hoặc kích thước tệp tin không hợp lệ")
         })
         @PostMapping("/file")
-        public ResponseEntity<String> uploadFile(
-                        @Parameter(description = "File to upload", required = true) @RequestParam("file") MultipartFile file)
-                        throws IOException {
+        public CompletableFuture<ResponseEntity<String>> uploadFile(
+                        @Parameter(description = "File to upload", required = true) @RequestParam("file") MultipartFile file) {
 
-                String fileUrl = fileStorageService.uploadFile(file);
-                return ResponseEntity.ok(fileUrl);
+                return fileStorageService.uploadFileAsync(file).thenApply(ResponseEntity::ok);
         }
 
         @Operation(summary = "Lấy tin nhắn trực tiếp", description = "Lấy lịch sử trò chuyện giữa hai người dùng")
@@ -1,10 +1,10 @@
 package com.chatapp.controller;
 
+import com.chatapp.exception.BadRequestException;
 import com.chatapp.service.TextGenerationService;
+import com.chatapp.service.TextStreamingService;
 import com.google.common.collect.ImmutableMap;
-import com.google.genai.ResponseStream;
 import com.google.genai.types.GenerateContentConfig;
-import com.google.genai.types.GenerateContentResponse;
 import com.google.genai.types.Schema;
 import com.google.genai.types.Type;
 import org.slf4j.Logger;
@@ -13,6 +13,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -30,9 +31,12 @@ public class TextGenerationController {
     private static final Logger logger = LoggerFactory.getLogger(TextGenerationController.class);
 
     private final TextGenerationService textGenerationService;
+    private final TextStreamingService textStreamingService;
 
-    public TextGenerationController(TextGenerationService textGenerationService) {
+    public TextGenerationController(TextGenerationService textGenerationService,
+            TextStreamingService textStreamingService) {
         this.textGenerationService = textGenerationService;
+        this.textStreamingService = textStreamingService;
     }
 
     /**
@@ -224,43 +228,22 @@ public class TextGenerationController {
     }
 
     /**
-     * Tạo phản hồi văn bản streaming.
-     * Lưu ý: Đây là implementation đơn giản. Để streaming thực sự tới frontend,
-     * bạn cần sử dụng Server-Sent Events (SSE) hoặc WebSocket.
+     * Tạo phản hồi văn bản streaming qua Server-Sent Events.
+     * Mỗi đoạn được gửi dưới dạng sự kiện "chunk" ngay khi Gemini trả về,
+     * kết thúc bằng sự kiện "done" hoặc "error".
      *
      * @param request Request chứa prompt
-     * @return Phản hồi văn bản streaming hoàn chỉnh
+     * @return SseEmitter phát các đoạn văn bản
      */
-    @PostMapping("/generate-stream")
-    public ResponseEntity<Map<String, Object>> generateTextStream(@RequestBody Map<String, String> request) {
-        try {
-            String prompt = request.get("prompt");
-            if (prompt == null || prompt.trim().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Prompt không được để trống"));
-            }
-
-            GenerateContentConfig config = textGenerationService.createSimpleConfig(1000, 0.8);
-
-            StringBuilder fullResponse = new StringBuilder();
-            try (ResponseStream<GenerateContentResponse> responseStream = textGenerationService
-                    .generateTextStream(prompt, config)) {
-
-                for (GenerateContentResponse response : responseStream) {
-                    fullResponse.append(response.text());
-                }
-            }
-
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "text", fullResponse.toString(),
-                    "streamed", true));
-
-        } catch (Exception e) {
-            logger.error("Lỗi trong endpoint generateTextStream: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError()
-                    .body(Map.of("error", "Lỗi khi tạo luồng văn bản: " + e.getMessage()));
+    @PostMapping(value = "/generate-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateTextStream(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        if (prompt == null || prompt.trim().isEmpty()) {
+            throw new BadRequestException("Prompt không được để trống");
         }
+
+        GenerateContentConfig config = textGenerationService.createSimpleConfig(1000, 0.8);
+        return textStreamingService.stream(prompt, config);
     }
 
     /**
@@ -2,7 +2,7 @@ package com.chatapp.controller;
 
 import com.chatapp.dto.request.UserDto;
 import com.chatapp.dto.response.ApiResponse;
-import com.chatapp.service.FileStorageService;
+import com.chatapp.service.AvatarService;
 import com.chatapp.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,8 +16,8 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/users")
@@ -26,11 +26,11 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
-    private final FileStorageService fileStorageService;
+    private final AvatarService avatarService;
 
-    public UserController(UserService userService, FileStorageService fileStorageService) {
+    public UserController(UserService userService, AvatarService avatarService) {
         this.userService = userService;
-        this.fileStorageService = fileStorageService;
+        this.avatarService = avatarService;
     }
 
     @Operation(summary = "Lấy thông tin người dùng hiện tại", description = "Lấy thông tin hồ sơ của người dùng đang đăng nhập")
@@ -79,6 +79,24 @@ public class UserController {
         return ResponseEntity.ok(response);
     }
 
+    @Operation(summary = "Tìm kiếm người dùng", description = "Tìm người dùng theo tên (không phân biệt dấu) hoặc số điện thoại, bạn bè được xếp trước")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Tìm kiếm người dùng thành công"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Chuỗi tìm kiếm trống hoặc quá ngắn")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<List<UserDto>>> searchUsers(
+            @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails,
+            @Parameter(description = "Chuỗi tìm kiếm", required = true) @RequestParam String q,
+            @Parameter(description = "Số kết quả tối đa (1-50)") @RequestParam(defaultValue = "20") int limit) {
+        List<UserDto> users = userService.searchUsers(userDetails.getUsername(), q, Math.max(1, Math.min(limit, 50)));
+        ApiResponse<List<UserDto>> response = new ApiResponse<>();
+        response.setSuccess(true);
+        response.setMessage("Tìm kiếm người dùng thành công");
+        response.setPayload(users);
+        return ResponseEntity.ok(response);
+    }
+
     @Operation(summary = "Cập nhật thông tin người dùng", description = "Cập nhật thông tin hồ sơ của người dùng")
     @ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Cập nhật hồ sơ thành công"),
@@ -115,10 +133,10 @@ public class UserController {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Định dạng hoặc kích thước tệp không hợp lệ")
     })
     @PostMapping("/{id}/avatar")
-    public ResponseEntity<ApiResponse<UserDto>> uploadAvatar(
+    public CompletableFuture<ResponseEntity<ApiResponse<UserDto>>> uploadAvatar(
             @Parameter(description = "ID người dùng", required = true) @PathVariable Long id,
             @Parameter(description = "Tệp ảnh đại diện", required = true) @RequestParam("file") MultipartFile file,
-            @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) throws IOException {
+            @Parameter(hidden = true) @AuthenticationPrincipal UserDetails userDetails) {
 
         UserDto currentUser = userService.getUserByPhone(userDetails.getUsername());
         if (!currentUser.getUserId().equals(id)) {
@@ -126,21 +144,21 @@ public class UserController {
             response.setSuccess(false);
             response.setMessage("Không có quyền cập nhật avatar của người dùng khác");
             response.setError("Forbidden");
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(response));
         }
 
-        String fileUrl = fileStorageService.uploadFile(file);
+        return avatarService.uploadAsync(file).thenApply(fileUrl -> {
+            UserDto userDto = new UserDto();
+            userDto.setDisplayName(currentUser.getDisplayName());
+            userDto.setAvatarUrl(fileUrl);
 
-        UserDto userDto = new UserDto();
-        userDto.setDisplayName(currentUser.getDisplayName());
-        userDto.setAvatarUrl(fileUrl);
-
-        UserDto updatedUser = userService.updateUser(id, userDto);
-        ApiResponse<UserDto> response = new ApiResponse<>();
-        response.setSuccess(true);
-        response.setMessage("Cập nhật ảnh đại diện thành công");
-        response.setPayload(updatedUser);
-        return ResponseEntity.ok(response);
+            UserDto updatedUser = userService.updateUser(id, userDto);
+            ApiResponse<UserDto> response = new ApiResponse<>();
+            response.setSuccess(true);
+            response.setMessage("Cập nhật ảnh đại diện thành công");
+            response.setPayload(updatedUser);
+            return ResponseEntity.ok(response);
+        });
     }
 
     @Operation(summary = "Đổi mật khẩu", description = "Đổi mật khẩu cho người dùng hiện tại")
@@ -5,11 +5,11 @@ import com.chatapp.dto.request.MessageDto;
 import com.chatapp.dto.response.FriendAcceptanceResponse;
 import com.chatapp.service.FriendService;
 import com.chatapp.service.MessageService;
+import com.chatapp.service.UserMessagingService;
 import com.chatapp.service.UserService;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
@@ -21,11 +21,14 @@ public class WebSocketController {
     private final MessageService messageService;
     private final UserService userService;
     private final FriendService friendService;
+    private final UserMessagingService userMessagingService;
 
-    public WebSocketController(MessageService messageService, UserService userService, FriendService friendService) {
+    public WebSocketController(MessageService messageService, UserService userService, FriendService friendService,
+            UserMessagingService userMessagingService) {
         this.messageService = messageService;
         this.userService = userService;
         this.friendService = friendService;
+        this.userMessagingService = userMessagingService;
     }
 
     @MessageMapping("/chat.sendDirectMessage")
@@ -43,27 +46,24 @@ public class WebSocketController {
     }
 
     @MessageMapping("/friend.sendRequest/{receiverId}")
-    @SendTo("/queue/user/{receiverId}/friend-requests")
-    public FriendDto sendFriendRequest(@DestinationVariable Long receiverId, Principal principal) {
+    public void sendFriendRequest(@DestinationVariable Long receiverId, Principal principal) {
         Long senderId = userService.getUserByPhone(principal.getName()).getUserId();
-        return friendService.sendFriendRequest(senderId, receiverId);
+        FriendDto result = friendService.sendFriendRequest(senderId, receiverId);
+        userMessagingService.sendToUser(receiverId, "/queue/friend-requests", result);
     }
 
     @MessageMapping("/friend.acceptRequest/{friendshipId}")
-    @SendTo("/queue/user/{senderId}/friend-updates")
-    public FriendAcceptanceResponse acceptFriendRequest(@DestinationVariable Long friendshipId,
-            @DestinationVariable Long senderId,
-            Principal principal) {
+    public void acceptFriendRequest(@DestinationVariable Long friendshipId, Principal principal) {
         Long userId = userService.getUserByPhone(principal.getName()).getUserId();
-        return friendService.acceptFriendRequestWithConversation(friendshipId, userId);
+        FriendAcceptanceResponse result = friendService.acceptFriendRequestWithConversation(friendshipId, userId);
+        userMessagingService.sendToUser(result.getFriendship().getSenderId(), "/queue/friend-updates",
+                result.getFriendship());
     }
 
     @MessageMapping("/friend.rejectRequest/{friendshipId}")
-    @SendTo("/queue/user/{senderId}/friend-updates")
-    public FriendDto rejectFriendRequest(@DestinationVariable Long friendshipId,
-            @DestinationVariable Long senderId,
-            Principal principal) {
+    public void rejectFriendRequest(@DestinationVariable Long friendshipId, Principal principal) {
         Long userId = userService.getUserByPhone(principal.getName()).getUserId();
-        return friendService.rejectFriendRequest(friendshipId, userId);
+        FriendDto result = friendService.rejectFriendRequest(friendshipId, userId);
+        userMessagingService.sendToUser(result.getSenderId(), "/queue/friend-updates", result);
     }
-}
\ No newline at end of file
+}
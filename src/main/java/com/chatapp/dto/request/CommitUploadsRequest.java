@@ -0,0 +1,15 @@
+package com.chatapp.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Request xác nhận các file đã upload trực tiếp lên S3")
+public class CommitUploadsRequest {
+
+    @Schema(description = "Danh sách uploadId nhận được khi xin URL upload", required = true)
+    private List<String> uploadIds;
+
+}
@@ -0,0 +1,19 @@
+package com.chatapp.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Request xin URL upload trực tiếp lên S3")
+public class PresignUploadRequest {
+
+    @Schema(description = "Tên file gốc", required = true)
+    private String fileName;
+
+    @Schema(description = "MIME type của file", required = true)
+    private String contentType;
+
+    @Schema(description = "Kích thước file (byte)", required = true)
+    private long size;
+
+}
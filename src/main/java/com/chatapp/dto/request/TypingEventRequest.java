@@ -0,0 +1,13 @@
+package com.chatapp.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Sự kiện người dùng đang soạn tin nhắn")
+public class TypingEventRequest {
+
+    @Schema(description = "true khi đang soạn, false khi đã dừng", required = true)
+    private boolean typing = true;
+
+}
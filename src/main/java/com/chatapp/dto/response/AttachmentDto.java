@@ -15,4 +15,13 @@ public class AttachmentDto {
     private double size;
     private String createdAt;
     private String updatedAt;
+    private String previewStatus;
+    private String thumbnailSmallUrl;
+    private String thumbnailMediumUrl;
+    private String thumbnailLargeUrl;
+    private String posterUrl;
+    private String blurhash;
+    private String dominantColor;
+    private Integer width;
+    private Integer height;
 }
\ No newline at end of file
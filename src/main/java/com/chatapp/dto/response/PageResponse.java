@@ -1,5 +1,6 @@
 package com.chatapp.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.data.domain.Page;
 
 import lombok.Data;
@@ -21,6 +22,10 @@ public class PageResponse<T> {
     private boolean last;
     private boolean empty;
 
+    // Cursor cho trang tiếp theo khi phân trang theo keyset, null nếu không dùng hoặc đã hết
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
     public PageResponse() {
     }
 
@@ -103,4 +108,12 @@ public class PageResponse<T> {
     public void setEmpty(boolean empty) {
         this.empty = empty;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.chatapp.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresignedUploadResponse {
+    private String uploadId;
+    private String uploadUrl;
+    private String method;
+    private Map<String, String> headers; // Các header client phải gửi kèm khi PUT
+    private LocalDateTime expiresAt;
+}
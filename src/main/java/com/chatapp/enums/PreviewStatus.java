@@ -0,0 +1,7 @@
+package com.chatapp.enums;
+
+public enum PreviewStatus {
+    PENDING,
+    READY,
+    FAILED
+}
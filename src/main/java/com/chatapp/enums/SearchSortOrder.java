@@ -0,0 +1,6 @@
+package com.chatapp.enums;
+
+public enum SearchSortOrder {
+    RELEVANCE,
+    NEWEST
+}
@@ -0,0 +1,54 @@
+package com.chatapp.event;
+
+import com.chatapp.model.Conversation;
+import com.chatapp.service.AiConversationService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gỡ id cuộc trò chuyện khỏi tập cuộc trò chuyện AI trong bộ nhớ sau khi xóa cuộc trò chuyện đã commit,
+ * để id không còn bị coi là cuộc trò chuyện AI. Transaction xóa bị rollback thì tập vẫn giữ nguyên.
+ */
+@Component
+public class AiConversationEventListener implements PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final AiConversationService aiConversationService;
+
+    public AiConversationEventListener(EntityManagerFactory entityManagerFactory,
+            AiConversationService aiConversationService) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.aiConversationService = aiConversationService;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Conversation conversation) {
+            aiConversationService.evictAiConversation(conversation.getId());
+        }
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return Conversation.class.equals(persister.getMappedClass());
+    }
+}
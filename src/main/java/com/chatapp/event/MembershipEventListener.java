@@ -0,0 +1,71 @@
+package com.chatapp.event;
+
+import com.chatapp.model.ConversationUser;
+import com.chatapp.service.ConversationMembershipCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Xóa cache cuộc trò chuyện của user sau khi user được thêm vào hoặc rời một cuộc trò chuyện.
+ * Bắt mọi đường lưu ConversationUser (tạo cuộc trò chuyện, kết bạn, nhóm, AI...) nên phạm vi
+ * tìm kiếm toàn cục không bị lệch so với quyền truy cập thật.
+ */
+@Component
+public class MembershipEventListener implements PostCommitInsertEventListener, PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ConversationMembershipCache membershipCache;
+
+    public MembershipEventListener(EntityManagerFactory entityManagerFactory,
+            ConversationMembershipCache membershipCache) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.membershipCache = membershipCache;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        evict(event.getEntity());
+    }
+
+    private void evict(Object entity) {
+        if (entity instanceof ConversationUser conversationUser && conversationUser.getUser() != null) {
+            membershipCache.evictUser(conversationUser.getUser().getUserId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return ConversationUser.class.equals(persister.getMappedClass());
+    }
+}
@@ -0,0 +1,85 @@
+package com.chatapp.event;
+
+import com.chatapp.model.Message;
+import com.chatapp.service.MessageSearchService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cập nhật chỉ mục tìm kiếm khi tin nhắn được gửi, sửa, thu hồi hoặc xóa.
+ * Dùng sự kiện post-commit của Hibernate nên mọi đường lưu Message (repository.save, saveAll,
+ * deleteAllByConversation...) đều được bắt, và transaction bị rollback không làm bẩn chỉ mục.
+ */
+@Component
+public class MessageIndexEventListener implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final MessageSearchService messageSearchService;
+
+    public MessageIndexEventListener(EntityManagerFactory entityManagerFactory,
+            MessageSearchService messageSearchService) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.messageSearchService = messageSearchService;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Message message) {
+            messageSearchService.indexMessage(message);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Message message) {
+            messageSearchService.indexMessage(message);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Message) {
+            messageSearchService.removeMessage((Long) event.getId());
+        }
+    }
+
+    // Chỉ ghi vào chỉ mục sau khi commit nên không có gì phải hoàn tác khi commit thất bại
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return Message.class.equals(persister.getMappedClass());
+    }
+}
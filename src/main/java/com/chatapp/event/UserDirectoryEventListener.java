@@ -0,0 +1,98 @@
+package com.chatapp.event;
+
+import com.chatapp.model.Friend;
+import com.chatapp.model.User;
+import com.chatapp.service.UserSearchIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Giữ chỉ mục tìm kiếm người dùng khớp với database sau khi transaction commit:
+ * đăng ký, cập nhật hồ sơ, đổi avatar (User) và thay đổi quan hệ bạn bè (Friend).
+ */
+@Component
+public class UserDirectoryEventListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final UserSearchIndex userSearchIndex;
+
+    public UserDirectoryEventListener(EntityManagerFactory entityManagerFactory, UserSearchIndex userSearchIndex) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.userSearchIndex = userSearchIndex;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        onSaved(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        onSaved(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof User user) {
+            userSearchIndex.remove(user.getUserId());
+        } else if (event.getEntity() instanceof Friend friend) {
+            evictFriends(friend);
+        }
+    }
+
+    private void onSaved(Object entity) {
+        if (entity instanceof User user) {
+            userSearchIndex.upsert(user);
+        } else if (entity instanceof Friend friend) {
+            evictFriends(friend);
+        }
+    }
+
+    private void evictFriends(Friend friend) {
+        if (friend.getUser1() != null) {
+            userSearchIndex.evictFriends(friend.getUser1().getUserId());
+        }
+        if (friend.getUser2() != null) {
+            userSearchIndex.evictFriends(friend.getUser2().getUserId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return User.class.equals(persister.getMappedClass()) || Friend.class.equals(persister.getMappedClass());
+    }
+}
@@ -1,43 +1,50 @@
 package com.chatapp.event;
 
+import com.chatapp.service.PresenceService;
+import com.chatapp.service.UserSessionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.Map;
+import java.security.Principal;
 
 @Component
 public class WebSocketEventListener {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketEventListener.class);
 
-    private final SimpMessageSendingOperations messagingTemplate;
+    private final UserSessionRegistry sessionRegistry;
+    private final PresenceService presenceService;
 
-    public WebSocketEventListener(SimpMessageSendingOperations messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    public WebSocketEventListener(UserSessionRegistry sessionRegistry, PresenceService presenceService) {
+        this.sessionRegistry = sessionRegistry;
+        this.presenceService = presenceService;
     }
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
-        logger.info("Received a new web socket connection");
+        Principal user = event.getUser();
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        logger.info("Received a new web socket connection: {}", sessionId);
+
+        if (user != null && sessionId != null) {
+            Long userId = sessionRegistry.register(sessionId, user.getName());
+            if (userId != null) {
+                presenceService.onUserConnected(userId);
+            }
+        }
     }
 
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
-
-        if (username != null) {
-            logger.info("User Disconnected: {}", username);
-
-            // Broadcast user disconnect event
-            messagingTemplate.convertAndSend("/topic/public",
-                    Map.of("type", "DISCONNECT", "sender", username));
+        logger.info("Web socket session disconnected: {}", event.getSessionId());
+        Long userId = sessionRegistry.unregister(event.getSessionId());
+        if (userId != null) {
+            presenceService.onUserDisconnected(userId);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,7 @@
+package com.chatapp.exception;
+
+public class AiOverloadedException extends RuntimeException {
+    public AiOverloadedException(String message) {
+        super(message);
+    }
+}
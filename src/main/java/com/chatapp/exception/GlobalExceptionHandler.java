@@ -98,4 +98,14 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(response, HttpStatus.TOO_MANY_REQUESTS);
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(AiOverloadedException.class)
+    public ResponseEntity<ApiResponse<Object>> handleAiOverloadedException(AiOverloadedException e) {
+        ApiResponse<Object> response = new ApiResponse<>();
+        response.setSuccess(false);
+        response.setMessage(e.getMessage());
+        response.setError("Service overloaded");
+
+        return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -1,20 +1,28 @@
 package com.chatapp.model;
 
+import com.chatapp.enums.PreviewStatus;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "attachments")
+@Table(name = "attachments", indexes = {
+        @Index(name = "idx_attachments_content_hash", columnList = "content_hash"),
+        @Index(name = "idx_attachments_url", columnList = "url")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,6 +35,22 @@ public class Attachments {
     private String type;
     private String url;
     private double size;
+
+    // SHA-256 của nội dung, cũng là key của object trên S3; null với file upload trước khi có dedup
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Ảnh xem trước sinh nền sau khi upload (chỉ với ảnh và video)
+    @Enumerated(EnumType.STRING)
+    private PreviewStatus previewStatus;
+    private String thumbnailSmallUrl;
+    private String thumbnailMediumUrl;
+    private String thumbnailLargeUrl;
+    private String posterUrl;
+    private String blurhash;
+    private String dominantColor;
+    private Integer width;
+    private Integer height;
     @CreationTimestamp
     private String createdAt;
     @UpdateTimestamp
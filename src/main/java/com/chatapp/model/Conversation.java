@@ -14,7 +14,9 @@ import org.hibernate.annotations.CreationTimestamp;
 import com.chatapp.enums.ConversationType;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+        @Index(name = "idx_conversations_is_ai", columnList = "is_ai_conversation")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
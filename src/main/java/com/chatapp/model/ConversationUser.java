@@ -6,7 +6,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "conversation_users")
+@Table(name = "conversation_users", indexes = {
+        @Index(name = "idx_conversation_users_user_conversation", columnList = "user_id, conversation_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,48 @@
+package com.chatapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload trực tiếp lên S3 đã được cấp URL ký sẵn nhưng chưa được xác nhận.
+ * Lưu trong database để object của upload bị bỏ dở vẫn được dọn sau khi server khởi động lại.
+ */
+@Entity
+@Table(name = "pending_uploads", indexes = {
+        @Index(name = "idx_pending_uploads_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingUpload {
+
+    // uploadId trả cho client
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long conversationId;
+
+    @Column(nullable = false, unique = true)
+    private String objectKey;
+
+    private String fileName;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private long size;
+
+    // Thời điểm URL PUT hết hạn
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -45,6 +45,8 @@ public class User {
 
     private LocalDateTime lastLogin;
 
+    private LocalDateTime lastSeen;
+
     @Enumerated(EnumType.STRING)
     private UserStatus status;
 
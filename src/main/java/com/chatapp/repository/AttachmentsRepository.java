@@ -2,8 +2,18 @@ package com.chatapp.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import com.chatapp.enums.PreviewStatus;
 import com.chatapp.model.Attachments;
 
+import java.util.Optional;
+
 @Repository
 public interface AttachmentsRepository extends JpaRepository<Attachments, Long> {
+
+    boolean existsByContentHash(String contentHash);
+
+    // Còn attachment nào trỏ tới object này trên S3 hay không
+    boolean existsByUrl(String url);
+
+    Optional<Attachments> findFirstByContentHashAndPreviewStatus(String contentHash, PreviewStatus previewStatus);
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.chatapp.repository;
 
 import com.chatapp.model.Conversation;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -22,4 +24,19 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
             "AND cu1.user.userId = :userId1 " +
             "AND cu2.user.userId = :userId2")
     Optional<Conversation> findOneToOneConversation(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
+
+    @Query("SELECT c.id FROM Conversation c WHERE c.isAiConversation = true")
+    List<Long> findAiConversationIds();
+
+    @Query("SELECT c FROM Conversation c JOIN c.conversationUsers cu " +
+            "WHERE cu.user.userId = :userId AND c.isAiConversation = true " +
+            "ORDER BY c.createdAt DESC")
+    List<Conversation> findAiConversationsByParticipantId(@Param("userId") Long userId);
+
+    @Query(value = "SELECT c FROM Conversation c JOIN c.conversationUsers cu " +
+            "WHERE cu.user.userId = :userId AND c.isAiConversation = true " +
+            "ORDER BY c.createdAt DESC",
+            countQuery = "SELECT COUNT(c) FROM Conversation c JOIN c.conversationUsers cu " +
+                    "WHERE cu.user.userId = :userId AND c.isAiConversation = true")
+    Page<Conversation> findAiConversationsByParticipantId(@Param("userId") Long userId, Pageable pageable);
 }
\ No newline at end of file
@@ -24,6 +24,9 @@ public interface ConversationUserRepository extends JpaRepository<ConversationUs
         Optional<ConversationUser> findByConversationIdAndUserId(@Param("conversationId") Long conversationId,
                         @Param("userId") Long userId);
 
+        @Query("SELECT cu.conversation.id FROM ConversationUser cu WHERE cu.user.userId = :userId")
+        List<Long> findConversationIdsByUserId(@Param("userId") Long userId);
+
         void deleteByConversation(Conversation conversation);
 
         void deleteAllByConversation(Conversation conversation);
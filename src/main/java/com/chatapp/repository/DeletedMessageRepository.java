@@ -5,10 +5,13 @@ import com.chatapp.model.DeletedMessage;
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface DeletedMessageRepository extends JpaRepository<DeletedMessage, Long> {
@@ -16,6 +19,9 @@ public interface DeletedMessageRepository extends JpaRepository<DeletedMessage,
 
     List<DeletedMessage> findByUser(User user);
 
+    @Query("SELECT dm.message.messageId FROM DeletedMessage dm WHERE dm.user.userId = :userId")
+    Set<Long> findMessageIdsByUserId(@Param("userId") Long userId);
+
     List<DeletedMessage> findByMessage(Message message);
 
     void deleteByUserAndMessage(User user, Message message);
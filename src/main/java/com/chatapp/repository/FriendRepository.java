@@ -18,6 +18,13 @@ public interface FriendRepository extends JpaRepository<Friend, Long> {
     @Query("SELECT f FROM Friend f WHERE (f.user1 = :user OR f.user2 = :user) AND f.status = 'ACCEPTED'")
     List<Friend> findAcceptedFriendships(@Param("user") User user);
 
+    @Query("SELECT f FROM Friend f WHERE (f.user1.userId = :userId OR f.user2.userId = :userId) AND f.status = 'ACCEPTED'")
+    List<Friend> findAcceptedFriendshipsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT CASE WHEN f.user1.userId = :userId THEN f.user2.userId ELSE f.user1.userId END FROM Friend f " +
+            "WHERE (f.user1.userId = :userId OR f.user2.userId = :userId) AND f.status = 'ACCEPTED'")
+    List<Long> findAcceptedFriendIds(@Param("userId") Long userId);
+
     @Query("SELECT f FROM Friend f WHERE f.user2 = :user AND f.status = 'PENDING'")
     List<Friend> findPendingFriendRequests(@Param("user") User user);
 
@@ -16,6 +16,22 @@ import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
+
+    /**
+     * Các cột cần để đưa tin nhắn vào chỉ mục tìm kiếm, không nạp entity và quan hệ
+     */
+    interface MessageIndexRow {
+        Long getMessageId();
+
+        Long getConversationId();
+
+        Long getSenderId();
+
+        String getContent();
+
+        LocalDateTime getCreatedAt();
+    }
+
     List<Message> findByGroup(Group group);
 
     @Query("SELECT m FROM Message m WHERE " +
@@ -29,10 +45,26 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     // Thêm phương thức có phân trang, sắp xếp từ mới đến cũ
     Page<Message> findByConversationIdOrderByCreatedAtDesc(Long conversationId, Pageable pageable);
 
+    // Lấy các tin nhắn có id nằm giữa hai mốc (không bao gồm hai đầu), theo thứ tự cũ đến mới
+    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId " +
+            "AND m.messageId > :afterId AND m.messageId < :beforeId " +
+            "ORDER BY m.messageId ASC")
+    List<Message> findMessagesInIdRange(@Param("conversationId") Long conversationId,
+            @Param("afterId") Long afterId,
+            @Param("beforeId") Long beforeId,
+            Pageable pageable);
+
     void deleteByConversation(Conversation conversation);
 
     void deleteAllByConversation(Conversation conversation);
 
+    // Duyệt tin nhắn theo id tăng dần để dựng lại chỉ mục tìm kiếm
+    @Query("SELECT m.messageId AS messageId, c.id AS conversationId, s.userId AS senderId, " +
+            "m.content AS content, m.createdAt AS createdAt " +
+            "FROM Message m LEFT JOIN m.conversation c LEFT JOIN m.sender s " +
+            "WHERE m.messageId > :afterId ORDER BY m.messageId ASC")
+    List<MessageIndexRow> findIndexRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     // Tìm kiếm tin nhắn theo nội dung trong cuộc trò chuyện
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId " +
             "AND LOWER(m.content) LIKE LOWER(CONCAT('%', :searchTerm, '%')) " +
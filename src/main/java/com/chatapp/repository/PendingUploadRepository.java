@@ -0,0 +1,27 @@
+package com.chatapp.repository;
+
+import com.chatapp.model.PendingUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PendingUploadRepository extends JpaRepository<PendingUpload, String> {
+
+    List<PendingUpload> findByExpiresAtBefore(LocalDateTime time);
+
+    /**
+     * Xóa bản ghi để giữ riêng upload trong transaction hiện tại.
+     * Transaction khác xóa cùng bản ghi sẽ chờ khóa dòng rồi nhận 0 nếu transaction này commit.
+     *
+     * @return 1 nếu giữ được, 0 nếu bản ghi đã bị transaction khác xóa
+     */
+    @Modifying
+    @Query("DELETE FROM PendingUpload p WHERE p.id = :id")
+    int claim(@Param("id") String id);
+}
@@ -1,16 +1,34 @@
 package com.chatapp.repository;
 
+import com.chatapp.enums.UserStatus;
 import com.chatapp.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+
+    /**
+     * Các cột cần cho chỉ mục tìm kiếm người dùng
+     */
+    interface UserSearchRow {
+        Long getUserId();
+
+        String getDisplayName();
+
+        String getPhone();
+
+        String getAvatarUrl();
+    }
+
     Optional<User> findByPhone(String phone);
 
     boolean existsByPhone(String phone);
@@ -19,4 +37,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query("SELECT u FROM User u WHERE LOWER(u.displayName) LIKE LOWER(CONCAT('%', :searchTerm, '%'))")
     List<User> findByDisplayNameContainingIgnoreCase(@Param("searchTerm") String searchTerm);
+
+    @Query("SELECT u.userId AS userId, u.displayName AS displayName, u.phone AS phone, u.avatarUrl AS avatarUrl FROM User u")
+    List<UserSearchRow> findAllForSearch();
+
+    /**
+     * Cập nhật trạng thái online và thời điểm truy cập cuối cho nhiều user cùng lúc
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.status = :status, u.lastSeen = :lastSeen WHERE u.userId IN :userIds")
+    void updatePresence(@Param("userIds") Collection<Long> userIds, @Param("status") UserStatus status,
+            @Param("lastSeen") LocalDateTime lastSeen);
 }
\ No newline at end of file
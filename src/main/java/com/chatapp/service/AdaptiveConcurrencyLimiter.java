@@ -0,0 +1,145 @@
+package com.chatapp.service;
+
+import com.chatapp.exception.AiOverloadedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Giới hạn số lời gọi đồng thời theo cơ chế AIMD:
+ * tăng dần giới hạn khi các lời gọi thành công nhanh, giảm mạnh khi gặp timeout hoặc lỗi quota.
+ * Lời gọi vượt giới hạn phải xếp hàng (có giới hạn), mỗi caller chỉ được giữ một số suất nhất định
+ * để một user không chiếm hết hàng đợi.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.7;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final int maxPerCaller;
+    private final long slowCallThresholdNanos;
+
+    // Lock công bằng để các lời gọi đang chờ được phục vụ theo thứ tự đến
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition permitReleased = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    // caller -> số lời gọi đang chạy hoặc đang chờ
+    private final Map<String, Integer> callerUsage = new HashMap<>();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueued,
+            int maxPerCaller, long slowCallThresholdMs) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.maxPerCaller = maxPerCaller;
+        this.slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMs);
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * Xin một suất gọi, chờ tối đa maxWaitMs nếu đã đạt giới hạn
+     *
+     * @throws AiOverloadedException nếu caller vượt hạn mức, hàng đợi đầy hoặc chờ quá lâu
+     */
+    public void acquire(String caller, long maxWaitMs) throws InterruptedException {
+        lock.lock();
+        try {
+            if (callerUsage.getOrDefault(caller, 0) >= maxPerCaller) {
+                throw new AiOverloadedException("Bạn đang có quá nhiều yêu cầu AI, vui lòng thử lại sau");
+            }
+
+            if (inFlight >= (int) limit) {
+                if (queued >= maxQueued) {
+                    throw new AiOverloadedException("Hệ thống AI đang quá tải, vui lòng thử lại sau");
+                }
+
+                callerUsage.merge(caller, 1, Integer::sum);
+                queued++;
+                boolean acquired = false;
+                try {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            throw new AiOverloadedException("Hết thời gian chờ gọi AI, vui lòng thử lại sau");
+                        }
+                        remaining = permitReleased.awaitNanos(remaining);
+                    }
+                    acquired = true;
+                } finally {
+                    queued--;
+                    if (!acquired) {
+                        decrementUsage(caller);
+                    }
+                }
+            } else {
+                callerUsage.merge(caller, 1, Integer::sum);
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Trả suất gọi và điều chỉnh giới hạn theo kết quả
+     *
+     * @param latencyNanos thời gian thực hiện lời gọi
+     * @param dropped      true nếu lời gọi bị timeout hoặc bị nhà cung cấp từ chối
+     */
+    public void release(String caller, long latencyNanos, boolean dropped) {
+        lock.lock();
+        try {
+            inFlight--;
+            decrementUsage(caller);
+
+            if (dropped) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (latencyNanos <= slowCallThresholdNanos && inFlight + 1 >= (int) limit) {
+                // Chỉ tăng khi đang dùng hết giới hạn, tránh tăng vô hạn lúc tải thấp
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrementUsage(String caller) {
+        callerUsage.computeIfPresent(caller, (key, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -0,0 +1,219 @@
+package com.chatapp.service;
+
+import com.chatapp.enums.MessageType;
+import com.chatapp.model.Message;
+import com.chatapp.repository.MessageRepository;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dựng ngữ cảnh hội thoại cho AI bot với kích thước cố định.
+ * Chỉ gửi N tin nhắn gần nhất nằm trong ngân sách token, phần cũ hơn được gộp vào
+ * một bản tóm tắt cuộn được cache theo cuộc trò chuyện và chỉ làm mới khi cửa sổ trượt đủ xa.
+ */
+@Service
+public class AiContextBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AiContextBuilder.class);
+
+    private static final String ROLE_USER = "user";
+    private static final String ROLE_MODEL = "model";
+
+    // Ước lượng thô: khoảng 4 ký tự cho một token
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Ngữ cảnh gửi cho mô hình: các lượt hội thoại, system instruction đã kèm tóm tắt
+     * và id tin nhắn cũ nhất trong cửa sổ (null nếu cửa sổ rỗng)
+     */
+    public record AiContext(List<Content> contents, String systemInstruction, Long windowStartId) {
+    }
+
+    /**
+     * Bản tóm tắt các tin nhắn có id nhỏ hơn hoặc bằng coveredUpToId
+     */
+    private record RollingSummary(String text, long coveredUpToId, long lastUsed) {
+        RollingSummary touch() {
+            return new RollingSummary(text, coveredUpToId, System.currentTimeMillis());
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final TextGenerationService textGenerationService;
+
+    private final Map<Long, RollingSummary> summaries = new ConcurrentHashMap<>();
+
+    @Value("${ai.context.max-messages:20}")
+    private int maxMessages;
+
+    @Value("${ai.context.token-budget:2000}")
+    private int tokenBudget;
+
+    @Value("${ai.context.summary-refresh-step:10}")
+    private int summaryRefreshStep;
+
+    @Value("${ai.context.summary-max-tokens:300}")
+    private int summaryMaxTokens;
+
+    @Value("${ai.context.summary-idle-ms:3600000}")
+    private long summaryIdleMs;
+
+    public AiContextBuilder(MessageRepository messageRepository, TextGenerationService textGenerationService) {
+        this.messageRepository = messageRepository;
+        this.textGenerationService = textGenerationService;
+    }
+
+    /**
+     * Dựng ngữ cảnh cho lượt trả lời tiếp theo
+     *
+     * @param conversationId  ID cuộc trò chuyện AI
+     * @param botUserId       ID của AI bot, tin nhắn của bot mang role "model"
+     * @param baseInstruction System instruction gốc
+     * @param userMessage     Tin nhắn mới nhất, được thêm vào nếu chưa có trong cửa sổ
+     */
+    public AiContext build(Long conversationId, Long botUserId, String baseInstruction, String userMessage) {
+        List<Message> recent = messageRepository
+                .findByConversationIdOrderByCreatedAtDesc(conversationId, PageRequest.of(0, maxMessages))
+                .getContent();
+
+        // Duyệt từ mới đến cũ, dừng khi vượt ngân sách token
+        List<Message> window = new ArrayList<>();
+        int usedTokens = 0;
+        for (Message message : recent) {
+            int tokens = estimateTokens(describe(message));
+            if (!window.isEmpty() && usedTokens + tokens > tokenBudget) {
+                break;
+            }
+            window.add(message);
+            usedTokens += tokens;
+        }
+        Collections.reverse(window);
+
+        List<Content> contents = new ArrayList<>();
+        String currentRole = null;
+        StringBuilder currentText = new StringBuilder();
+        for (Message message : window) {
+            String role = message.getSender() != null && botUserId.equals(message.getSender().getUserId())
+                    ? ROLE_MODEL
+                    : ROLE_USER;
+            // Gộp các tin nhắn liên tiếp cùng role thành một lượt
+            if (currentRole != null && !currentRole.equals(role)) {
+                contents.add(toContent(currentRole, currentText.toString()));
+                currentText.setLength(0);
+            }
+            if (currentText.length() > 0) {
+                currentText.append('\n');
+            }
+            currentText.append(describe(message));
+            currentRole = role;
+        }
+        if (currentRole != null) {
+            contents.add(toContent(currentRole, currentText.toString()));
+        }
+        if (!ROLE_USER.equals(currentRole)) {
+            contents.add(toContent(ROLE_USER, userMessage));
+        }
+
+        String systemInstruction = baseInstruction;
+        RollingSummary summary = summaries.computeIfPresent(conversationId, (id, existing) -> existing.touch());
+        if (summary != null) {
+            systemInstruction += "\n\nTóm tắt phần trước của cuộc trò chuyện:\n" + summary.text();
+        }
+        Long windowStartId = window.isEmpty() ? null : window.get(0).getMessageId();
+        return new AiContext(contents, systemInstruction, windowStartId);
+    }
+
+    /**
+     * Gộp các tin nhắn đã trượt ra khỏi cửa sổ vào bản tóm tắt.
+     * Chỉ gọi model khi đã có ít nhất summaryRefreshStep tin nhắn mới nằm ngoài cửa sổ;
+     * nên gọi sau khi đã gửi phản hồi để không làm chậm người dùng.
+     */
+    public void refreshSummaryIfNeeded(Long conversationId, AiContext context) {
+        Long windowStart = context.windowStartId();
+        if (windowStart == null) {
+            return;
+        }
+
+        RollingSummary current = summaries.get(conversationId);
+        long coveredUpTo = current != null ? current.coveredUpToId() : 0L;
+
+        List<Message> evicted = messageRepository.findMessagesInIdRange(conversationId, coveredUpTo, windowStart,
+                PageRequest.of(0, maxMessages * 2));
+        if (evicted.size() < summaryRefreshStep) {
+            return;
+        }
+
+        try {
+            StringBuilder prompt = new StringBuilder(
+                    "Hãy cập nhật bản tóm tắt ngắn gọn của cuộc trò chuyện giữa người dùng và AI Assistant. " +
+                            "Giữ lại các thông tin, yêu cầu và quyết định quan trọng, bỏ qua lời chào hỏi. " +
+                            "Chỉ trả về nội dung bản tóm tắt bằng tiếng Việt.\n\n");
+            if (current != null) {
+                prompt.append("Bản tóm tắt hiện tại:\n").append(current.text()).append("\n\n");
+            }
+            prompt.append("Các tin nhắn mới:\n");
+            for (Message message : evicted) {
+                prompt.append(message.getSender() != null ? message.getSender().getDisplayName() : "Hệ thống")
+                        .append(": ")
+                        .append(describe(message))
+                        .append('\n');
+            }
+
+            String text = textGenerationService.generateText(prompt.toString(),
+                    textGenerationService.createSimpleConfig(summaryMaxTokens, 0.3));
+            long newCoveredUpTo = evicted.get(evicted.size() - 1).getMessageId();
+            summaries.put(conversationId, new RollingSummary(text.trim(), newCoveredUpTo, System.currentTimeMillis()));
+            logger.info("Đã cập nhật tóm tắt cho conversation {} tới tin nhắn {}", conversationId, newCoveredUpTo);
+
+        } catch (Exception e) {
+            // Giữ bản tóm tắt cũ, lần sau sẽ thử lại
+            logger.warn("Không thể cập nhật tóm tắt cho conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa ngữ cảnh đã cache của cuộc trò chuyện
+     */
+    public void evict(Long conversationId) {
+        summaries.remove(conversationId);
+    }
+
+    /**
+     * Dọn tóm tắt của các cuộc trò chuyện lâu không dùng
+     */
+    @Scheduled(fixedDelayString = "${ai.context.summary-idle-ms:3600000}")
+    public void removeIdleSummaries() {
+        long now = System.currentTimeMillis();
+        summaries.values().removeIf(summary -> now - summary.lastUsed() >= summaryIdleMs);
+    }
+
+    private static Content toContent(String role, String text) {
+        return Content.builder()
+                .role(role)
+                .parts(List.of(Part.fromText(text)))
+                .build();
+    }
+
+    private static String describe(Message message) {
+        if (message.getType() == MessageType.TEXT) {
+            return message.getContent();
+        }
+        return "[" + message.getType().name() + ": " + message.getContent() + "]";
+    }
+
+    private static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
@@ -3,8 +3,10 @@ package com.chatapp.service;
 import com.chatapp.dto.request.ConversationDto;
 import com.chatapp.dto.request.MessageDto;
 import com.chatapp.dto.request.UserDto;
+import com.chatapp.dto.response.PageResponse;
 import com.chatapp.enums.ConversationType;
 import com.chatapp.enums.MessageType;
+import com.chatapp.enums.PreviewStatus;
 import com.chatapp.enums.UserStatus;
 import com.chatapp.exception.ResourceNotFoundException;
 import com.chatapp.model.Conversation;
@@ -18,17 +20,30 @@ import com.chatapp.repository.MessageRepository;
 import com.chatapp.repository.UserRepository;
 import com.chatapp.repository.AttachmentsRepository;
 import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -43,6 +58,13 @@ public class AiConversationService {
     private static final String AI_BOT_DISPLAY_NAME = "AI Assistant";
     private static final String AI_BOT_AVATAR_URL = "https://mys3iuh.s3.ap-southeast-1.amazonaws.com/449521094_1563710030877271_6471969711590990679_n.jpg";
 
+    // System instruction cho AI bot
+    private static final String AI_SYSTEM_INSTRUCTION = "Bạn là một AI Assistant thông minh và hữu ích trong ứng dụng chat. " +
+            "Hãy trả lời một cách tự nhiên, thân thiện và hữu ích. " +
+            "Trả lời bằng tiếng Việt trừ khi được yêu cầu sử dụng ngôn ngữ khác. " +
+            "Giữ câu trả lời ngắn gọn và dễ hiểu. " +
+            "Nếu được hỏi về thông tin cá nhân, hãy lịch sự từ chối và chuyển hướng cuộc trò chuyện.";
+
     // Pattern để detect từ khóa tạo ảnh
     private static final Pattern IMAGE_GENERATION_PATTERN = Pattern.compile(
             ".*(?:tạo\\s*ảnh|vẽ\\s*(?:cho|giúp|tôi)?|generate\\s*image|create\\s*image|draw|painting).*",
@@ -81,29 +103,62 @@ public class AiConversationService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private AiContextBuilder aiContextBuilder;
+
+    @Autowired
+    private AttachmentPreviewService attachmentPreviewService;
+
+    // AI bot được nạp một lần khi khởi động, tránh truy vấn theo phone ở mỗi lần trả lời
+    private volatile User aiBot;
+
+    // ID các cuộc trò chuyện AI, giúp kiểm tra mà không cần truy vấn cho mỗi tin nhắn
+    private final Set<Long> aiConversationIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Nạp sẵn AI bot và danh sách cuộc trò chuyện AI khi ứng dụng sẵn sàng
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAiCache() {
+        getOrCreateAiBot();
+        aiConversationIds.addAll(conversationRepository.findAiConversationIds());
+        logger.info("Đã nạp {} cuộc trò chuyện AI vào bộ nhớ", aiConversationIds.size());
+    }
+
     /**
      * Tạo hoặc lấy AI bot user
      */
     @Transactional
     public User getOrCreateAiBot() {
-        Optional<User> existingBot = userRepository.findByPhone(AI_BOT_PHONE);
+        User cachedBot = aiBot;
+        if (cachedBot != null) {
+            return cachedBot;
+        }
 
-        if (existingBot.isPresent()) {
-            return existingBot.get();
+        synchronized (this) {
+            if (aiBot == null) {
+                aiBot = userRepository.findByPhone(AI_BOT_PHONE).orElseGet(this::createAiBot);
+            }
+            return aiBot;
         }
+    }
 
+    private User createAiBot() {
         // Tạo AI bot user mới
-        User aiBot = new User();
-        aiBot.setDisplayName(AI_BOT_DISPLAY_NAME);
-        aiBot.setPhone(AI_BOT_PHONE);
-        aiBot.setPassword(""); // AI bot không cần password
-        aiBot.setEmail("ai@chatapp.com");
-        aiBot.setDateOfBirth(LocalDate.of(2024, 1, 1));
-        aiBot.setAvatarUrl(AI_BOT_AVATAR_URL);
-        aiBot.setStatus(UserStatus.ONLINE);
-        aiBot.setCreatedAt(LocalDateTime.now());
-
-        return userRepository.save(aiBot);
+        User bot = new User();
+        bot.setDisplayName(AI_BOT_DISPLAY_NAME);
+        bot.setPhone(AI_BOT_PHONE);
+        bot.setPassword(""); // AI bot không cần password
+        bot.setEmail("ai@chatapp.com");
+        bot.setDateOfBirth(LocalDate.of(2024, 1, 1));
+        bot.setAvatarUrl(AI_BOT_AVATAR_URL);
+        bot.setStatus(UserStatus.ONLINE);
+        bot.setCreatedAt(LocalDateTime.now());
+
+        return userRepository.save(bot);
     }
 
     /**
@@ -121,6 +176,7 @@ public class AiConversationService {
                 aiBot.getUserId());
 
         if (existingConversation.isPresent() && existingConversation.get().getIsAiConversation()) {
+            aiConversationIds.add(existingConversation.get().getId());
             return conversationService.mapToConversationDto(existingConversation.get(), userId);
         }
 
@@ -147,6 +203,8 @@ public class AiConversationService {
         // Gửi tin nhắn chào mừng
         sendWelcomeMessage(savedConversation.getId(), aiBot);
 
+        registerAiConversation(savedConversation.getId());
+
         return conversationService.mapToConversationDto(savedConversation, user.getUserId());
     }
 
@@ -171,9 +229,10 @@ public class AiConversationService {
     }
 
     /**
-     * Xử lý tin nhắn tự động cho AI conversation
+     * Xử lý tin nhắn tự động cho AI conversation.
+     * Chạy trên luồng của AiReplyDispatcher và không mở transaction bao quanh lời gọi Gemini,
+     * mỗi lần lưu tin nhắn tự dùng transaction ngắn của repository.
      */
-    @Transactional
     public void handleAutoReply(Long conversationId, String userMessage, Long senderId) {
         try {
             Conversation conversation = conversationRepository.findById(conversationId)
@@ -225,15 +284,14 @@ public class AiConversationService {
             // Gửi tin nhắn thông báo đang tạo ảnh
             sendTypingMessage(conversation.getId(), aiBot, "Tôi đang tạo ảnh cho bạn, vui lòng chờ một chút...");
 
-            // Delay để hiển thị tin nhắn thông báo
-            Thread.sleep(1500);
+            // Tạo ảnh, các ảnh được upload song song và chỉ chờ ảnh đầu tiên upload xong
+            List<CompletableFuture<String>> uploads = imageGenerationService.generateImageUploads(imagePrompt, null);
+            Optional<String> firstImageUrl = ImageGenerationService.firstUploaded(uploads).join();
+            sendTypingMessage(conversation.getId(), aiBot, null);
 
-            // Tạo ảnh
-            List<String> imageUrls = imageGenerationService.generateImages(imagePrompt, null);
-
-            if (!imageUrls.isEmpty()) {
+            if (firstImageUrl.isPresent()) {
                 // Gửi tin nhắn với ảnh đã tạo
-                sendImageMessage(conversation, aiBot, imageUrls.get(0),
+                sendImageMessage(conversation, aiBot, firstImageUrl.get(),
                         "Đây là ảnh tôi đã tạo cho bạn dựa trên yêu cầu: " + imagePrompt);
             } else {
                 sendErrorMessage(conversation.getId(), aiBot,
@@ -248,34 +306,97 @@ public class AiConversationService {
     }
 
     /**
-     * Xử lý tạo văn bản thông thường
+     * Xử lý tạo văn bản thông thường.
+     * Phản hồi được stream tới client theo từng đoạn (AI_DELTA) gắn với một provisionalId,
+     * chỉ lưu vào database một lần khi stream kết thúc.
      */
     private void handleTextGeneration(Conversation conversation, User aiBot, String userMessage) {
+        Long conversationId = conversation.getId();
+        String provisionalId = UUID.randomUUID().toString();
+        StringBuilder fullText = new StringBuilder();
+
+        // Chỉ gửi cửa sổ tin nhắn gần nhất kèm bản tóm tắt phần cũ hơn
+        AiContextBuilder.AiContext context = aiContextBuilder.build(conversationId, aiBot.getUserId(),
+                AI_SYSTEM_INSTRUCTION, userMessage);
+
+        try (GenAiStream stream = textGenerationService.generateTextStream(
+                context.contents(), createReplyConfig(context.systemInstruction()))) {
+            int index = 0;
+            for (GenerateContentResponse chunk : stream) {
+                String delta = chunk.text();
+                if (delta == null || delta.isEmpty()) {
+                    continue;
+                }
+                fullText.append(delta);
+                sendDelta(conversationId, aiBot, provisionalId, delta, index++);
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi stream phản hồi văn bản: {}", e.getMessage(), e);
+            if (fullText.length() == 0) {
+                sendStreamEnd(conversationId, provisionalId, null);
+                sendErrorMessage(conversationId, aiBot);
+                return;
+            }
+            // Giữ lại phần đã gửi cho client thay vì bỏ mất
+        }
+
         try {
-            // Tạo AI response
-            String aiResponse = generateAiResponse(userMessage);
+            if (fullText.length() == 0) {
+                fullText.append("Xin lỗi, tôi gặp sự cố kỹ thuật. Vui lòng thử lại sau.");
+            }
 
             // Tạo và lưu tin nhắn phản hồi từ AI
             Message aiMessage = new Message();
             aiMessage.setSender(aiBot);
             aiMessage.setConversation(conversation);
-            aiMessage.setContent(aiResponse);
+            aiMessage.setContent(fullText.toString());
             aiMessage.setType(MessageType.TEXT);
             aiMessage.setCreatedAt(LocalDateTime.now());
 
             Message savedMessage = messageRepository.save(aiMessage);
             MessageDto messageDto = conversationService.mapToMessageDto(savedMessage);
 
-            // Gửi qua WebSocket với độ trễ nhỏ để tạo cảm giác tự nhiên
-            Thread.sleep(1000); // Delay 1 giây
-            messagingTemplate.convertAndSend("/queue/conversation/" + conversation.getId(), messageDto);
+            // Báo cho client thay tin nhắn tạm bằng tin nhắn đã lưu
+            sendStreamEnd(conversationId, provisionalId, savedMessage.getMessageId());
+            messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, messageDto);
 
-            logger.info("AI đã phản hồi văn bản trong conversation {}: {}", conversation.getId(), aiResponse);
+            logger.info("AI đã phản hồi văn bản trong conversation {}: {} ký tự", conversationId, fullText.length());
 
         } catch (Exception e) {
-            logger.error("Lỗi khi tạo phản hồi văn bản: {}", e.getMessage(), e);
-            sendErrorMessage(conversation.getId(), aiBot);
+            logger.error("Lỗi khi lưu phản hồi văn bản: {}", e.getMessage(), e);
+            sendStreamEnd(conversationId, provisionalId, null);
+            sendErrorMessage(conversationId, aiBot);
+            return;
         }
+
+        // Cập nhật tóm tắt sau khi người dùng đã nhận phản hồi
+        aiContextBuilder.refreshSummaryIfNeeded(conversationId, context);
+    }
+
+    /**
+     * Gửi một đoạn phản hồi đang được sinh ra
+     */
+    private void sendDelta(Long conversationId, User aiBot, String provisionalId, String delta, int index) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "AI_DELTA");
+        payload.put("conversationId", conversationId);
+        payload.put("provisionalId", provisionalId);
+        payload.put("senderId", aiBot.getUserId());
+        payload.put("delta", delta);
+        payload.put("index", index);
+        messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, payload);
+    }
+
+    /**
+     * Kết thúc stream; messageId null nghĩa là tin nhắn tạm bị hủy
+     */
+    private void sendStreamEnd(Long conversationId, String provisionalId, Long messageId) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "AI_DONE");
+        payload.put("conversationId", conversationId);
+        payload.put("provisionalId", provisionalId);
+        payload.put("messageId", messageId);
+        messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, payload);
     }
 
     /**
@@ -301,21 +422,8 @@ public class AiConversationService {
      * Gửi tin nhắn thông báo đang typing/processing
      */
     private void sendTypingMessage(Long conversationId, User aiBot, String content) {
-        try {
-            Message typingMessage = new Message();
-            typingMessage.setSender(aiBot);
-            typingMessage.setConversation(conversationRepository.findById(conversationId).orElse(null));
-            typingMessage.setContent(content);
-            typingMessage.setType(MessageType.TEXT);
-            typingMessage.setCreatedAt(LocalDateTime.now());
-
-            Message savedMessage = messageRepository.save(typingMessage);
-            MessageDto messageDto = conversationService.mapToMessageDto(savedMessage);
-
-            messagingTemplate.convertAndSend("/queue/conversation/" + conversationId, messageDto);
-        } catch (Exception e) {
-            logger.error("Lỗi khi gửi typing message: {}", e.getMessage());
-        }
+        // Trạng thái typing chỉ là sự kiện tạm thời, không lưu thành tin nhắn
+        typingIndicatorService.publishTyping(conversationId, aiBot.getUserId(), content != null, content);
     }
 
     /**
@@ -329,6 +437,7 @@ public class AiConversationService {
             attachment.setType("image/png");
             attachment.setUrl(imageUrl);
             attachment.setSize(0); // Size không biết trước
+            attachment.setPreviewStatus(PreviewStatus.PENDING);
             // createdAt và updatedAt sẽ được tự động set bởi @CreationTimestamp và
             // @UpdateTimestamp
 
@@ -349,6 +458,7 @@ public class AiConversationService {
 
             // Thêm attachment vào message
             savedMessage.getAttachments().add(attachment);
+            attachmentPreviewService.scheduleAfterCommit(List.of(savedMessage));
 
             MessageDto messageDto = conversationService.mapToMessageDto(savedMessage);
 
@@ -362,6 +472,14 @@ public class AiConversationService {
         }
     }
 
+    /**
+     * Thông báo cho người dùng khi hàng đợi AI đang quá tải
+     */
+    public void sendBusyMessage(Long conversationId) {
+        sendErrorMessage(conversationId, getOrCreateAiBot(),
+                "Hiện có quá nhiều yêu cầu, AI chưa thể trả lời tin nhắn này. Vui lòng thử lại sau.");
+    }
+
     /**
      * Gửi tin nhắn lỗi
      */
@@ -391,54 +509,70 @@ public class AiConversationService {
     }
 
     /**
-     * Tạo phản hồi AI dựa trên tin nhắn của user
+     * Cấu hình sinh phản hồi cho AI bot
      */
-    private String generateAiResponse(String userMessage) {
-        try {
-            // Tạo system instruction cho AI
-            String systemInstruction = "Bạn là một AI Assistant thông minh và hữu ích trong ứng dụng chat. " +
-                    "Hãy trả lời một cách tự nhiên, thân thiện và hữu ích. " +
-                    "Trả lời bằng tiếng Việt trừ khi được yêu cầu sử dụng ngôn ngữ khác. " +
-                    "Giữ câu trả lời ngắn gọn và dễ hiểu. " +
-                    "Nếu được hỏi về thông tin cá nhân, hãy lịch sự từ chối và chuyển hướng cuộc trò chuyện.";
-
-            GenerateContentConfig config = textGenerationService.createSimpleConfig(500, 0.7);
-
-            return textGenerationService.generateTextWithAdvancedConfig(
-                    userMessage,
-                    systemInstruction,
-                    500,
-                    0.7,
-                    textGenerationService.createDefaultSafetySettings());
-
-        } catch (Exception e) {
-            logger.error("Lỗi khi tạo phản hồi AI: {}", e.getMessage(), e);
-            return "Xin lỗi, tôi gặp sự cố kỹ thuật. Vui lòng thử lại sau.";
-        }
+    private GenerateContentConfig createReplyConfig(String systemInstruction) {
+        return textGenerationService.buildAdvancedConfig(
+                systemInstruction,
+                500,
+                0.7,
+                textGenerationService.createDefaultSafetySettings());
     }
 
     /**
      * Kiểm tra xem cuộc trò chuyện có phải là AI conversation không
      */
     public boolean isAiConversation(Long conversationId) {
-        return conversationRepository.findById(conversationId)
-                .map(conversation -> conversation.getIsAiConversation() != null && conversation.getIsAiConversation())
-                .orElse(false);
+        return conversationId != null && aiConversationIds.contains(conversationId);
+    }
+
+    /**
+     * Gỡ cuộc trò chuyện khỏi tập cuộc trò chuyện AI, gọi sau khi xóa cuộc trò chuyện đã commit
+     */
+    public void evictAiConversation(Long conversationId) {
+        aiConversationIds.remove(conversationId);
+    }
+
+    /**
+     * Ghi nhận cuộc trò chuyện AI mới, chỉ sau khi transaction tạo nó đã commit
+     */
+    private void registerAiConversation(Long conversationId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    aiConversationIds.add(conversationId);
+                }
+            });
+        } else {
+            aiConversationIds.add(conversationId);
+        }
     }
 
     /**
      * Lấy danh sách tất cả AI conversations của user
      */
     public List<ConversationDto> getAiConversations(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy người dùng với id: " + userId));
-
-        List<Conversation> conversations = conversationRepository.findByParticipantId(userId);
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("Không tìm thấy người dùng với id: " + userId);
+        }
 
-        return conversations.stream()
-                .filter(conversation -> conversation.getIsAiConversation() != null
-                        && conversation.getIsAiConversation())
+        return conversationRepository.findAiConversationsByParticipantId(userId).stream()
                 .map(conversation -> conversationService.mapToConversationDto(conversation, userId))
                 .toList();
     }
+
+    /**
+     * Lấy danh sách AI conversations của user có phân trang
+     */
+    public PageResponse<ConversationDto> getPagedAiConversations(Long userId, Pageable pageable) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("Không tìm thấy người dùng với id: " + userId);
+        }
+
+        Page<ConversationDto> conversations = conversationRepository
+                .findAiConversationsByParticipantId(userId, pageable)
+                .map(conversation -> conversationService.mapToConversationDto(conversation, userId));
+        return PageResponse.of(conversations);
+    }
 }
\ No newline at end of file
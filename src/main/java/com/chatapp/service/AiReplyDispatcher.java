@@ -0,0 +1,121 @@
+package com.chatapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hàng đợi xử lý phản hồi AI chạy nền.
+ * Tin nhắn của người dùng được xác nhận ngay, phản hồi AI được gửi qua STOMP khi sẵn sàng.
+ * Các yêu cầu trong cùng một cuộc trò chuyện được xử lý tuần tự theo thứ tự gửi.
+ */
+@Service
+public class AiReplyDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AiReplyDispatcher.class);
+
+    private final AiConversationService aiConversationService;
+    private final ThreadPoolTaskExecutor aiReplyExecutor;
+
+    // conversationId -> tác vụ cuối cùng trong chuỗi của cuộc trò chuyện
+    private final Map<Long, CompletableFuture<Void>> conversationTails = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+
+    private final Timer queueWaitTimer;
+    private final Timer processingTimer;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    @Value("${ai.reply.max-pending:200}")
+    private int maxPending;
+
+    public AiReplyDispatcher(AiConversationService aiConversationService,
+            @Qualifier("aiReplyExecutor") ThreadPoolTaskExecutor aiReplyExecutor,
+            MeterRegistry meterRegistry) {
+        this.aiConversationService = aiConversationService;
+        this.aiReplyExecutor = aiReplyExecutor;
+
+        Gauge.builder("chatapp.ai.reply.pending", pendingJobs, AtomicInteger::get)
+                .description("Số yêu cầu phản hồi AI đang chờ hoặc đang xử lý")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("chatapp.ai.reply.queue.wait")
+                .description("Thời gian yêu cầu phản hồi AI nằm trong hàng đợi")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("chatapp.ai.reply.duration")
+                .description("Thời gian tạo và gửi phản hồi AI")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chatapp.ai.reply.rejected")
+                .description("Số yêu cầu phản hồi AI bị từ chối do hàng đợi đầy")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("chatapp.ai.reply.failed")
+                .description("Số yêu cầu phản hồi AI xử lý thất bại")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Đưa yêu cầu phản hồi AI vào hàng đợi
+     *
+     * @param caller Số điện thoại người gửi, cùng định danh mà GenAiGateway.currentCaller lấy từ request HTTP
+     *               để người gửi dùng chung một hạn mức AI trên mọi đường gọi
+     * @return false nếu hàng đợi đã đầy và yêu cầu bị từ chối
+     */
+    public boolean submit(Long conversationId, String userMessage, Long senderId, String caller) {
+        if (pendingJobs.incrementAndGet() > maxPending) {
+            pendingJobs.decrementAndGet();
+            rejectedCounter.increment();
+            logger.warn("Hàng đợi AI đã đầy ({}), bỏ qua yêu cầu của conversation {}", maxPending, conversationId);
+            aiConversationService.sendBusyMessage(conversationId);
+            return false;
+        }
+
+        long submittedAt = System.nanoTime();
+        CompletableFuture<Void> job = conversationTails.compute(conversationId, (id, tail) -> {
+            CompletableFuture<Void> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+            // Chạy sau tác vụ trước của cùng cuộc trò chuyện, kể cả khi tác vụ đó lỗi
+            return previous
+                    .handle((result, error) -> null)
+                    .thenRunAsync(() -> process(conversationId, userMessage, senderId, caller, submittedAt),
+                            aiReplyExecutor);
+        });
+
+        job.whenComplete((result, error) -> {
+            pendingJobs.decrementAndGet();
+            conversationTails.remove(conversationId, job);
+            if (error != null) {
+                failedCounter.increment();
+                logger.error("Không thể xử lý phản hồi AI cho conversation {}: {}", conversationId,
+                        error.getMessage());
+            }
+        });
+        return true;
+    }
+
+    public int getPendingCount() {
+        return pendingJobs.get();
+    }
+
+    private void process(Long conversationId, String userMessage, Long senderId, String caller, long submittedAt) {
+        long startedAt = System.nanoTime();
+        queueWaitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+        try {
+            // Tính suất gọi AI theo người gửi để một user không chiếm hết hạn mức
+            GenAiGateway.runAs(caller,
+                    () -> aiConversationService.handleAutoReply(conversationId, userMessage, senderId));
+        } finally {
+            processingTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
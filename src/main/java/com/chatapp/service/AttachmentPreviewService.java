@@ -0,0 +1,356 @@
+package com.chatapp.service;
+
+import com.chatapp.enums.PreviewStatus;
+import com.chatapp.model.Attachments;
+import com.chatapp.model.Message;
+import com.chatapp.repository.AttachmentsRepository;
+import com.chatapp.util.BlurHash;
+import com.chatapp.util.ImageUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sinh ảnh xem trước cho file đính kèm sau khi upload.
+ * Ảnh: thumbnail ở vài kích thước cố định (lưu cạnh file gốc), BlurHash và màu chủ đạo làm placeholder.
+ * Video: lấy khung hình đầu bằng ffmpeg (nếu có cấu hình) rồi xử lý như ảnh.
+ * Chạy trên previewExecutor có giới hạn, lỗi được thử lại với thời gian chờ tăng dần;
+ * kết quả được gửi tới client bằng sự kiện ATTACHMENT_PREVIEW.
+ */
+@Service
+public class AttachmentPreviewService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentPreviewService.class);
+
+    // Cạnh dài nhất của từng thumbnail: nhỏ, vừa, lớn
+    private static final int[] THUMBNAIL_SIZES = { 160, 480, 1080 };
+    private static final int PLACEHOLDER_SIZE = 32;
+    private static final String THUMBNAIL_CONTENT_TYPE = "image/jpeg";
+
+    private record PreviewJob(Long attachmentId, Long messageId, Long conversationId, int attempt) {
+        PreviewJob nextAttempt() {
+            return new PreviewJob(attachmentId, messageId, conversationId, attempt + 1);
+        }
+    }
+
+    private final AttachmentsRepository attachmentsRepository;
+    private final AttachmentsService attachmentsService;
+    private final StorageBackend storageBackend;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ThreadPoolTaskExecutor previewExecutor;
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "preview-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter readyCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+
+    @Value("${preview.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${preview.retry-delay-ms:2000}")
+    private long retryDelayMs;
+
+    @Value("${preview.max-pixels:100000000}")
+    private long maxPixels;
+
+    @Value("${preview.ffmpeg-path:}")
+    private String ffmpegPath;
+
+    @Value("${preview.ffmpeg-timeout-ms:30000}")
+    private long ffmpegTimeoutMs;
+
+    public AttachmentPreviewService(AttachmentsRepository attachmentsRepository,
+            AttachmentsService attachmentsService,
+            StorageBackend storageBackend,
+            SimpMessagingTemplate messagingTemplate,
+            @Qualifier("previewExecutor") ThreadPoolTaskExecutor previewExecutor,
+            MeterRegistry meterRegistry) {
+        this.attachmentsRepository = attachmentsRepository;
+        this.attachmentsService = attachmentsService;
+        this.storageBackend = storageBackend;
+        this.messagingTemplate = messagingTemplate;
+        this.previewExecutor = previewExecutor;
+
+        this.readyCounter = Counter.builder("chatapp.attachment.preview")
+                .description("Số lần sinh ảnh xem trước")
+                .tag("result", "ready")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("chatapp.attachment.preview")
+                .description("Số lần sinh ảnh xem trước")
+                .tag("result", "retried")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("chatapp.attachment.preview")
+                .description("Số lần sinh ảnh xem trước")
+                .tag("result", "failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * File có được sinh ảnh xem trước hay không
+     */
+    public boolean supportsPreview(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        if (contentType.startsWith("image/")) {
+            return true;
+        }
+        return contentType.startsWith("video/") && !ffmpegPath.isBlank();
+    }
+
+    /**
+     * Đưa các file đính kèm đang chờ vào hàng đợi, chỉ sau khi transaction lưu chúng đã commit
+     */
+    public void scheduleAfterCommit(Collection<Message> messages) {
+        List<PreviewJob> jobs = new ArrayList<>();
+        for (Message message : messages) {
+            for (Attachments attachment : message.getAttachments()) {
+                if (attachment.getPreviewStatus() == PreviewStatus.PENDING) {
+                    jobs.add(new PreviewJob(attachment.getId(), message.getMessageId(),
+                            message.getConversation().getId(), 0));
+                }
+            }
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    jobs.forEach(AttachmentPreviewService.this::submit);
+                }
+            });
+        } else {
+            jobs.forEach(this::submit);
+        }
+    }
+
+    private void submit(PreviewJob job) {
+        try {
+            previewExecutor.execute(() -> process(job));
+        } catch (TaskRejectedException e) {
+            handleFailure(job, e);
+        }
+    }
+
+    private void process(PreviewJob job) {
+        Optional<Attachments> found = attachmentsRepository.findById(job.attachmentId());
+        if (found.isEmpty()) {
+            return;
+        }
+        Attachments attachment = found.get();
+
+        try {
+            // Cùng nội dung thì dùng lại ảnh xem trước đã có
+            Optional<Attachments> existing = attachment.getContentHash() != null
+                    ? attachmentsRepository.findFirstByContentHashAndPreviewStatus(attachment.getContentHash(),
+                            PreviewStatus.READY)
+                    : Optional.empty();
+            if (existing.isPresent()) {
+                copyPreview(existing.get(), attachment);
+            } else {
+                generatePreview(attachment);
+            }
+
+            attachment.setPreviewStatus(PreviewStatus.READY);
+            attachmentsRepository.save(attachment);
+            readyCounter.increment();
+            publish(job, attachment);
+
+        } catch (Exception e) {
+            handleFailure(job, e);
+        }
+    }
+
+    private void handleFailure(PreviewJob job, Exception error) {
+        // Ảnh vượt giới hạn pixel thì thử lại cũng không đọc được
+        if (job.attempt() + 1 < maxAttempts && !(error instanceof ImageUtils.ImageTooLargeException)) {
+            long delay = retryDelayMs << job.attempt();
+            retriedCounter.increment();
+            logger.warn("Sinh ảnh xem trước cho attachment {} thất bại (lần {}), thử lại sau {} ms: {}",
+                    job.attachmentId(), job.attempt() + 1, delay, error.getMessage());
+            retryScheduler.schedule(() -> submit(job.nextAttempt()), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        failedCounter.increment();
+        logger.error("Không thể sinh ảnh xem trước cho attachment {}: {}", job.attachmentId(), error.getMessage());
+        attachmentsRepository.findById(job.attachmentId()).ifPresent(attachment -> {
+            attachment.setPreviewStatus(PreviewStatus.FAILED);
+            attachmentsRepository.save(attachment);
+        });
+    }
+
+    private void generatePreview(Attachments attachment) throws IOException, InterruptedException {
+        String key = attachmentsService.toObjectKey(attachment.getUrl());
+        boolean isVideo = attachment.getType() != null && attachment.getType().startsWith("video/");
+
+        // Chỉ giải mã đủ lớn cho thumbnail lớn nhất, ảnh "bom pixel" bị từ chối trước khi giải mã
+        int largestThumbnail = THUMBNAIL_SIZES[THUMBNAIL_SIZES.length - 1];
+        ImageUtils.DecodedImage decoded;
+        String fullSizeUrl;
+        if (isVideo) {
+            byte[] poster = extractPoster(key);
+            String posterKey = key + "_poster.jpg";
+            storageBackend.put(posterKey, new ByteArrayInputStream(poster), poster.length,
+                    THUMBNAIL_CONTENT_TYPE);
+            fullSizeUrl = attachmentsService.toFileUrl(posterKey);
+            attachment.setPosterUrl(fullSizeUrl);
+            decoded = ImageUtils.readScaledToFit(new ByteArrayInputStream(poster), maxPixels, largestThumbnail);
+        } else {
+            try (InputStream inputStream = storageBackend.open(key)) {
+                decoded = ImageUtils.readScaledToFit(inputStream, maxPixels, largestThumbnail);
+            }
+            fullSizeUrl = attachment.getUrl();
+        }
+        if (decoded == null) {
+            throw new IOException("Không đọc được ảnh của attachment " + attachment.getId());
+        }
+        BufferedImage source = decoded.image();
+
+        attachment.setWidth(decoded.sourceWidth());
+        attachment.setHeight(decoded.sourceHeight());
+
+        String[] thumbnailUrls = new String[THUMBNAIL_SIZES.length];
+        for (int i = 0; i < THUMBNAIL_SIZES.length; i++) {
+            int size = THUMBNAIL_SIZES[i];
+            if (Math.max(decoded.sourceWidth(), decoded.sourceHeight()) <= size) {
+                // Ảnh gốc đã đủ nhỏ
+                thumbnailUrls[i] = fullSizeUrl;
+                continue;
+            }
+            byte[] jpeg = ImageUtils.toJpeg(ImageUtils.resize(source, size));
+            String thumbnailKey = key + "_" + size + ".jpg";
+            storageBackend.put(thumbnailKey, new ByteArrayInputStream(jpeg), jpeg.length,
+                    THUMBNAIL_CONTENT_TYPE);
+            thumbnailUrls[i] = attachmentsService.toFileUrl(thumbnailKey);
+        }
+        attachment.setThumbnailSmallUrl(thumbnailUrls[0]);
+        attachment.setThumbnailMediumUrl(thumbnailUrls[1]);
+        attachment.setThumbnailLargeUrl(thumbnailUrls[2]);
+
+        BufferedImage tiny = ImageUtils.resize(source, PLACEHOLDER_SIZE);
+        int width = tiny.getWidth();
+        int height = tiny.getHeight();
+        int[] pixels = tiny.getRGB(0, 0, width, height, null, 0, width);
+        attachment.setBlurhash(BlurHash.encode(pixels, width, height, 4, 3));
+        attachment.setDominantColor(averageColor(pixels));
+    }
+
+    /**
+     * Lấy khung hình đầu của video bằng ffmpeg
+     */
+    private byte[] extractPoster(String key) throws IOException, InterruptedException {
+        Path video = Files.createTempFile("preview-", ".video");
+        Path poster = Files.createTempFile("preview-", ".jpg");
+        try {
+            try (InputStream inputStream = storageBackend.open(key)) {
+                Files.copy(inputStream, video, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Process process = new ProcessBuilder(ffmpegPath, "-y", "-v", "error",
+                    "-i", video.toString(), "-frames:v", "1", "-f", "image2", poster.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(ffmpegTimeoutMs, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("ffmpeg quá thời gian " + ffmpegTimeoutMs + " ms");
+            }
+            if (process.exitValue() != 0 || Files.size(poster) == 0) {
+                throw new IOException("ffmpeg không lấy được khung hình, mã thoát " + process.exitValue());
+            }
+            return Files.readAllBytes(poster);
+        } finally {
+            deleteTempFile(video.toFile());
+            deleteTempFile(poster.toFile());
+        }
+    }
+
+    private static void deleteTempFile(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void copyPreview(Attachments from, Attachments to) {
+        to.setThumbnailSmallUrl(from.getThumbnailSmallUrl());
+        to.setThumbnailMediumUrl(from.getThumbnailMediumUrl());
+        to.setThumbnailLargeUrl(from.getThumbnailLargeUrl());
+        to.setPosterUrl(from.getPosterUrl());
+        to.setBlurhash(from.getBlurhash());
+        to.setDominantColor(from.getDominantColor());
+        to.setWidth(from.getWidth());
+        to.setHeight(from.getHeight());
+    }
+
+    private static String averageColor(int[] pixels) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        for (int pixel : pixels) {
+            red += (pixel >> 16) & 0xFF;
+            green += (pixel >> 8) & 0xFF;
+            blue += pixel & 0xFF;
+        }
+        int count = Math.max(1, pixels.length);
+        return String.format("#%02x%02x%02x", red / count, green / count, blue / count);
+    }
+
+    private void publish(PreviewJob job, Attachments attachment) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "ATTACHMENT_PREVIEW");
+        event.put("conversationId", job.conversationId());
+        event.put("messageId", job.messageId());
+        event.put("attachmentId", attachment.getId());
+        event.put("blurhash", attachment.getBlurhash());
+        event.put("dominantColor", attachment.getDominantColor());
+        event.put("width", attachment.getWidth());
+        event.put("height", attachment.getHeight());
+        event.put("thumbnailSmallUrl", attachment.getThumbnailSmallUrl());
+        event.put("thumbnailMediumUrl", attachment.getThumbnailMediumUrl());
+        event.put("thumbnailLargeUrl", attachment.getThumbnailLargeUrl());
+        event.put("posterUrl", attachment.getPosterUrl());
+        messagingTemplate.convertAndSend("/queue/conversation/" + job.conversationId(), event);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+}
@@ -1,6 +1,12 @@
 package com.chatapp.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -8,66 +14,315 @@ import com.chatapp.model.Attachments;
 import com.chatapp.repository.AttachmentsRepository;
 
 import lombok.RequiredArgsConstructor;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 public class AttachmentsService {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentsService.class);
+
     public final AttachmentsRepository attachmentsRepository;
 
-    private final S3Client s3Client;
+    private final StorageBackend storageBackend;
 
-    @Value("${aws.s3.bucket-name}")
-    private String bucketName;
+    @Qualifier("storageIoExecutor")
+    private final ThreadPoolTaskExecutor storageIoExecutor;
 
-    public Attachments uploadFile(MultipartFile file) throws IOException {
-        String fileName = generateFileName(file);
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Số lần upload đang giữ một object, tính từ lúc kiểm tra trùng nội dung tới khi bản ghi attachment
+     * đã commit (releaseClaims) hoặc bị bỏ (discard). Object đang được giữ không bị xóa
+     * dù database chưa có bản ghi nào tham chiếu tới nó.
+     */
+    private record Claim(int count, long claimedAt) {
+    }
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+
+    // Khóa theo key của object để việc giữ object và việc kiểm tra-rồi-xóa không chen vào nhau
+    private final Object[] keyLocks = createLocks();
+
+    // Hạn của một lần giữ, phòng trường hợp bên gọi không bao giờ trả
+    @Value("${attachments.claim-ttl-ms:900000}")
+    private long claimTtlMs;
 
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(fileName)
-                .contentType(file.getContentType())
-                .build();
+    /**
+     * Upload file với key là SHA-256 của nội dung.
+     * Nếu nội dung đã có trong kho lưu trữ thì bỏ qua bước upload, chỉ tạo attachment mới trỏ tới object đó.
+     * Object được giữ cho tới khi bên gọi gọi releaseClaims sau khi lưu attachment, hoặc discard nếu không lưu.
+     */
+    public Attachments uploadFile(MultipartFile file) throws IOException {
+        String contentHash = computeContentHash(file);
+        String fileName = contentHash;
 
-        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+        // Giữ object trước khi kiểm tra trùng để lần xóa song song không xóa mất object sắp được dùng lại
+        claim(contentHash);
+        try {
+            if (attachmentsRepository.existsByContentHash(contentHash) || storageBackend.exists(fileName)) {
+                logger.debug("File {} đã tồn tại, bỏ qua upload", contentHash);
+            } else {
+                // Upload trực tiếp từ stream của file, không đọc toàn bộ vào bộ nhớ
+                try (InputStream inputStream = file.getInputStream()) {
+                    storageBackend.put(fileName, inputStream, file.getSize(), file.getContentType());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            releaseClaim(contentHash);
+            throw e;
+        }
 
-        String url = String.format("https://%s.s3.amazonaws.com/%s", bucketName, fileName);
+        String url = toFileUrl(fileName);
 
         Attachments attachments = new Attachments();
         attachments.setName(file.getOriginalFilename());
         attachments.setType(file.getContentType());
         attachments.setSize(file.getSize());
         attachments.setUrl(url);
+        attachments.setContentHash(contentHash);
 
         return attachments;
     }
 
+    /**
+     * Upload nhiều file song song, chặn tới khi tất cả xong (dùng cho handler STOMP).
+     * Kết quả giữ đúng thứ tự của mảng đầu vào; nếu một file lỗi thì các file đã upload
+     * được xóa khỏi kho lưu trữ và lỗi được ném ra.
+     */
+    public List<Attachments> uploadFiles(MultipartFile[] files) throws IOException {
+        try {
+            return uploadFilesAsync(files).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Upload nhiều file song song mà không chặn luồng gọi.
+     * Future lỗi với IOException sau khi đã dọn các file upload thành công.
+     */
+    public CompletableFuture<List<Attachments>> uploadFilesAsync(MultipartFile[] files) {
+        List<CompletableFuture<Attachments>> uploads = new ArrayList<>(files.length);
+        for (MultipartFile file : files) {
+            uploads.add(uploadFileAsync(file));
+        }
+
+        return CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0]))
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        // Dọn các file đã upload để không để lại object mồ côi
+                        List<Attachments> uploaded = new ArrayList<>();
+                        for (CompletableFuture<Attachments> upload : uploads) {
+                            if (!upload.isCompletedExceptionally()) {
+                                uploaded.add(upload.join());
+                            }
+                        }
+                        discard(uploaded);
+                        throw new CompletionException(toIOException(error));
+                    }
+
+                    List<Attachments> attachments = new ArrayList<>(uploads.size());
+                    for (CompletableFuture<Attachments> upload : uploads) {
+                        attachments.add(upload.join());
+                    }
+                    return attachments;
+                });
+    }
+
+    /**
+     * Bản bất đồng bộ của uploadFile: băm nội dung trên storageIoExecutor,
+     * sau đó ghi qua StorageBackend.putAsync (client S3 bất đồng bộ nếu được bật).
+     */
+    public CompletableFuture<Attachments> uploadFileAsync(MultipartFile file) {
+        CompletableFuture<String> hashing;
+        try {
+            hashing = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return computeContentHash(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, storageIoExecutor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return hashing.thenCompose(contentHash -> {
+            claim(contentHash);
+            return putIfAbsent(file, contentHash).whenComplete((result, error) -> {
+                if (error != null) {
+                    releaseClaim(contentHash);
+                }
+            });
+        }).thenApply(contentHash -> {
+            Attachments attachments = new Attachments();
+            attachments.setName(file.getOriginalFilename());
+            attachments.setType(file.getContentType());
+            attachments.setSize(file.getSize());
+            attachments.setUrl(toFileUrl(contentHash));
+            attachments.setContentHash(contentHash);
+            return attachments;
+        });
+    }
+
+    private CompletableFuture<String> putIfAbsent(MultipartFile file, String contentHash) {
+        try {
+            if (attachmentsRepository.existsByContentHash(contentHash) || storageBackend.exists(contentHash)) {
+                logger.debug("File {} đã tồn tại, bỏ qua upload", contentHash);
+                return CompletableFuture.completedFuture(contentHash);
+            }
+
+            InputStream inputStream = file.getInputStream();
+            return storageBackend.putAsync(contentHash, inputStream, file.getSize(), file.getContentType())
+                    .whenComplete((result, error) -> FileStorageService.closeQuietly(inputStream))
+                    .thenApply(result -> contentHash);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static IOException toIOException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        if (cause instanceof UncheckedIOException uncheckedIOException) {
+            return uncheckedIOException.getCause();
+        }
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        return new IOException(cause.getMessage(), cause);
+    }
+
+    public void deleteQuietly(String fileUrl) {
+        try {
+            deleteFile(fileUrl);
+        } catch (Exception e) {
+            logger.warn("Không thể xóa file {}: {}", fileUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa file khi không còn attachment nào tham chiếu tới nó và không có lần upload nào đang giữ nó
+     */
     public void deleteFile(String fileUrl) {
-        String key = fileUrl.substring(fileUrl.lastIndexOf("/") + 1);
+        String key = toObjectKey(fileUrl);
+        synchronized (lockFor(key)) {
+            // Kiểm tra lại khi đã giữ khóa: lần upload mới chỉ có thể giữ object trước hoặc sau toàn bộ đoạn này
+            if (isClaimed(key) || attachmentsRepository.existsByUrl(fileUrl)) {
+                logger.debug("File {} vẫn còn được tham chiếu, không xóa", fileUrl);
+                return;
+            }
+            storageBackend.delete(key);
+        }
+    }
+
+    /**
+     * Trả các object đã giữ khi upload, gọi sau khi bản ghi attachment tham chiếu tới chúng đã commit
+     */
+    public void releaseClaims(List<Attachments> attachments) {
+        for (Attachments attachment : attachments) {
+            releaseClaim(toObjectKey(attachment.getUrl()));
+        }
+    }
 
-        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .build();
+    /**
+     * Bỏ các file đã upload nhưng không được lưu: trả object đã giữ rồi xóa nếu không còn ai dùng
+     */
+    public void discard(List<Attachments> attachments) {
+        for (Attachments attachment : attachments) {
+            releaseClaim(toObjectKey(attachment.getUrl()));
+            deleteQuietly(attachment.getUrl());
+        }
+    }
 
-        s3Client.deleteObject(deleteObjectRequest);
+    private void claim(String key) {
+        synchronized (lockFor(key)) {
+            claims.merge(key, new Claim(1, System.currentTimeMillis()),
+                    (current, added) -> new Claim(current.count() + 1, added.claimedAt()));
+        }
     }
 
-    private String generateFileName(MultipartFile file) {
-        String originalFileName = file.getOriginalFilename();
-        String extension = "";
+    private void releaseClaim(String key) {
+        claims.computeIfPresent(key, (k, claim) -> claim.count() > 1
+                ? new Claim(claim.count() - 1, claim.claimedAt())
+                : null);
+    }
 
-        if (originalFileName != null && originalFileName.contains(".")) {
-            extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+    private boolean isClaimed(String key) {
+        Claim claim = claims.get(key);
+        return claim != null && System.currentTimeMillis() - claim.claimedAt() < claimTtlMs;
+    }
+
+    /**
+     * Dọn các lần giữ đã quá hạn mà bên gọi không trả
+     */
+    @Scheduled(fixedDelayString = "${attachments.claim-ttl-ms:900000}")
+    public void removeExpiredClaims() {
+        long now = System.currentTimeMillis();
+        claims.entrySet().removeIf(entry -> now - entry.getValue().claimedAt() >= claimTtlMs);
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[Math.floorMod(key.hashCode(), keyLocks.length)];
+    }
+
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
         }
+        return locks;
+    }
 
-        return UUID.randomUUID().toString() + extension;
+    /**
+     * URL công khai của file
+     */
+    public String toFileUrl(String key) {
+        return storageBackend.toUrl(key);
+    }
+
+    /**
+     * Lấy lại key từ URL đã lưu của attachment
+     */
+    public String toObjectKey(String fileUrl) {
+        return storageBackend.toKey(fileUrl);
+    }
+
+    /**
+     * Tính SHA-256 của file bằng cách đọc tuần tự từ stream, không nạp toàn bộ vào bộ nhớ
+     */
+    private String computeContentHash(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = file.getInputStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
     }
 }
@@ -0,0 +1,115 @@
+package com.chatapp.service;
+
+import com.chatapp.exception.BadRequestException;
+import com.chatapp.util.AvatarUrls;
+import com.chatapp.util.ImageUtils;
+import com.chatapp.util.ImageUtils.DecodedImage;
+import com.chatapp.util.ImageUtils.ImageTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Chuẩn hóa avatar của người dùng và nhóm khi tải lên:
+ * cắt vuông ở giữa rồi lưu các kích thước AvatarUrls.SIZES dưới dạng JPEG.
+ */
+@Service
+public class AvatarService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarService.class);
+
+    private static final String AVATAR_CONTENT_TYPE = "image/jpeg";
+
+    private final StorageBackend storageBackend;
+    private final ThreadPoolTaskExecutor storageIoExecutor;
+
+    @Value("${avatar.max-dimension:8000}")
+    private int maxDimension;
+
+    public AvatarService(StorageBackend storageBackend,
+            @Qualifier("storageIoExecutor") ThreadPoolTaskExecutor storageIoExecutor) {
+        this.storageBackend = storageBackend;
+        this.storageIoExecutor = storageIoExecutor;
+    }
+
+    /**
+     * Xử lý và lưu avatar trên storageIoExecutor
+     *
+     * @return URL của bản lớn nhất, dùng làm avatarUrl
+     */
+    public CompletableFuture<String> uploadAsync(MultipartFile file) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return upload(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, storageIoExecutor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public String upload(MultipartFile file) throws IOException {
+        BufferedImage square = readSquare(file);
+        String version = UUID.randomUUID().toString();
+
+        List<String> writtenKeys = new ArrayList<>(AvatarUrls.SIZES.length);
+        try {
+            for (int size : AvatarUrls.SIZES) {
+                byte[] jpeg = ImageUtils.toJpeg(ImageUtils.resize(square, size));
+                String key = AvatarUrls.key(version, size);
+                storageBackend.put(key, new ByteArrayInputStream(jpeg), jpeg.length, AVATAR_CONTENT_TYPE);
+                writtenKeys.add(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Không để lại bộ avatar thiếu kích thước
+            for (String key : writtenKeys) {
+                try {
+                    storageBackend.delete(key);
+                } catch (RuntimeException deleteError) {
+                    logger.warn("Không thể xóa avatar {}: {}", key, deleteError.getMessage());
+                }
+            }
+            throw e;
+        }
+
+        return storageBackend.toUrl(AvatarUrls.key(version, AvatarUrls.LARGEST_SIZE));
+    }
+
+    /**
+     * Đọc phần vuông ở giữa ảnh, thu nhỏ ngay khi giải mã về gần AvatarUrls.LARGEST_SIZE.
+     * Diện tích được kiểm tra từ header trước khi giải mã để ảnh nén nhỏ nhưng kích thước cực lớn
+     * không làm cạn bộ nhớ.
+     */
+    private BufferedImage readSquare(MultipartFile file) throws IOException {
+        DecodedImage decoded;
+        try (InputStream inputStream = file.getInputStream()) {
+            decoded = ImageUtils.readCenterSquare(inputStream, (long) maxDimension * maxDimension,
+                    AvatarUrls.LARGEST_SIZE);
+        } catch (ImageTooLargeException e) {
+            throw new BadRequestException(
+                    "Ảnh đại diện vượt quá " + maxDimension + "x" + maxDimension + " pixel");
+        }
+        if (decoded == null) {
+            throw new BadRequestException("Tệp ảnh đại diện không phải là ảnh hợp lệ");
+        }
+        return decoded.image();
+    }
+}
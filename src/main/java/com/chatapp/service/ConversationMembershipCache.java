@@ -0,0 +1,144 @@
+package com.chatapp.service;
+
+import com.chatapp.model.ConversationUser;
+import com.chatapp.repository.ConversationUserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache danh sách thành viên của cuộc trò chuyện cho các luồng realtime
+ * (typing, presence...) để không phải truy vấn database cho mỗi sự kiện.
+ * Ngoài ra cache chiều ngược lại (user -> các cuộc trò chuyện) cho tìm kiếm toàn cục.
+ */
+@Service
+public class ConversationMembershipCache {
+
+    /**
+     * Thông tin tối thiểu của một thành viên cần cho việc gửi sự kiện realtime
+     */
+    public record Member(Long userId, String phone, String displayName) {
+    }
+
+    private record CachedMembers(List<Member> members, long loadedAt) {
+    }
+
+    private final ConversationUserRepository conversationUserRepository;
+
+    private record CachedConversationIds(Set<Long> conversationIds, long loadedAt) {
+    }
+
+    private final Map<Long, CachedMembers> cache = new ConcurrentHashMap<>();
+
+    private final Map<Long, CachedConversationIds> userConversations = new ConcurrentHashMap<>();
+
+    // Tăng mỗi lần xóa cache theo user để kết quả nạp song song với lần xóa không được ghi lại vào cache
+    private final AtomicLong userGeneration = new AtomicLong();
+
+    @Value("${membership.cache-ttl-ms:300000}")
+    private long ttlMs;
+
+    public ConversationMembershipCache(ConversationUserRepository conversationUserRepository) {
+        this.conversationUserRepository = conversationUserRepository;
+    }
+
+    /**
+     * Lấy danh sách thành viên của cuộc trò chuyện
+     */
+    public List<Member> getMembers(Long conversationId) {
+        long now = System.currentTimeMillis();
+        CachedMembers cached = cache.get(conversationId);
+        if (cached != null && now - cached.loadedAt() < ttlMs) {
+            return cached.members();
+        }
+
+        List<Member> members = conversationUserRepository.findByConversationId(conversationId).stream()
+                .map(ConversationUser::getUser)
+                .map(user -> new Member(user.getUserId(), user.getPhone(), user.getDisplayName()))
+                .toList();
+
+        // Không cache kết quả rỗng để cuộc trò chuyện vừa tạo không bị xem là không có thành viên
+        if (!members.isEmpty()) {
+            cache.put(conversationId, new CachedMembers(members, now));
+        }
+        return members;
+    }
+
+    /**
+     * Tìm thành viên theo số điện thoại (principal của phiên STOMP)
+     */
+    public Optional<Member> findMemberByPhone(Long conversationId, String phone) {
+        return getMembers(conversationId).stream()
+                .filter(member -> member.phone().equals(phone))
+                .findFirst();
+    }
+
+    /**
+     * Kiểm tra user có phải thành viên của cuộc trò chuyện
+     */
+    public boolean isMember(Long conversationId, Long userId) {
+        return getMembers(conversationId).stream()
+                .anyMatch(member -> member.userId().equals(userId));
+    }
+
+    /**
+     * Tập id các cuộc trò chuyện mà user đang tham gia
+     */
+    public Set<Long> getConversationIds(Long userId) {
+        long now = System.currentTimeMillis();
+        CachedConversationIds cached = userConversations.get(userId);
+        if (cached != null && now - cached.loadedAt() < ttlMs) {
+            return cached.conversationIds();
+        }
+
+        long generation = userGeneration.get();
+        Set<Long> conversationIds = Set.copyOf(conversationUserRepository.findConversationIdsByUserId(userId));
+        userConversations.compute(userId, (key, current) -> userGeneration.get() == generation
+                ? new CachedConversationIds(conversationIds, now)
+                : current);
+        return conversationIds;
+    }
+
+    /**
+     * Xóa cache các cuộc trò chuyện của user, gọi sau khi user được thêm vào hoặc rời một cuộc trò chuyện
+     */
+    public void evictUser(Long userId) {
+        userGeneration.incrementAndGet();
+        userConversations.remove(userId);
+    }
+
+    /**
+     * Xóa cache của cuộc trò chuyện khi danh sách thành viên thay đổi.
+     * Nếu đang trong transaction thì chỉ xóa sau khi commit để không nạp lại dữ liệu cũ.
+     */
+    public void evict(Long conversationId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(conversationId);
+                }
+            });
+        }
+        cache.remove(conversationId);
+    }
+
+    /**
+     * Dọn các mục đã hết hạn để cache không phình to theo số cuộc trò chuyện
+     */
+    @Scheduled(fixedDelayString = "${membership.cache-ttl-ms:300000}")
+    public void removeExpiredEntries() {
+        long now = System.currentTimeMillis();
+        cache.entrySet().removeIf(entry -> now - entry.getValue().loadedAt() >= ttlMs);
+        userConversations.entrySet().removeIf(entry -> now - entry.getValue().loadedAt() >= ttlMs);
+    }
+}
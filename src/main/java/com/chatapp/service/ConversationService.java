@@ -8,7 +8,10 @@ import com.chatapp.dto.response.PageResponse;
 import com.chatapp.dto.response.BlockedUserResponse;
 import com.chatapp.enums.ConversationType;
 import com.chatapp.enums.MessageType;
+import com.chatapp.enums.PreviewStatus;
+import com.chatapp.enums.SearchSortOrder;
 import com.chatapp.exception.ResourceNotFoundException;
+import com.chatapp.model.Attachments;
 import com.chatapp.model.Conversation;
 import com.chatapp.model.ConversationUser;
 import com.chatapp.model.Message;
@@ -23,16 +26,24 @@ import com.chatapp.repository.ConversationBlockRepository;
 import com.chatapp.model.ConversationBlock;
 import com.chatapp.repository.GroupRepository;
 import com.chatapp.model.Group;
+import com.chatapp.util.AppConstants;
+import com.chatapp.util.AvatarUrls;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.Set;
@@ -70,6 +81,18 @@ public class ConversationService {
         @Autowired
         private SimpMessagingTemplate messagingTemplate;
 
+        @Autowired
+        private ConversationMembershipCache membershipCache;
+
+        @Autowired
+        private AiContextBuilder aiContextBuilder;
+
+        @Autowired
+        private AttachmentPreviewService attachmentPreviewService;
+
+        @Autowired
+        private MessageSearchService messageSearchService;
+
         public List<ConversationDto> getConversationsByUserId(Long userId) {
                 User user = userRepository.findById(userId)
                                 .orElseThrow(() -> new ResourceNotFoundException(
@@ -252,7 +275,7 @@ public class ConversationService {
                                 // Thiết lập thông tin nhóm cho DTO
                                 dto.setGroupId(group.getGroupId());
                                 dto.setGroupName(group.getName());
-                                dto.setGroupAvatarUrl(group.getAvatarUrl());
+                                dto.setGroupAvatarUrl(AvatarUrls.variant(group.getAvatarUrl(), AvatarUrls.LIST_SIZE));
                         }
 
                         // Vẫn lấy danh sách người tham gia cho cả GROUP
@@ -293,7 +316,18 @@ public class ConversationService {
                                                 attachment.getUrl(),
                                                 attachment.getSize(),
                                                 attachment.getCreatedAt(),
-                                                attachment.getUpdatedAt()))
+                                                attachment.getUpdatedAt(),
+                                                attachment.getPreviewStatus() != null
+                                                                ? attachment.getPreviewStatus().name()
+                                                                : null,
+                                                attachment.getThumbnailSmallUrl(),
+                                                attachment.getThumbnailMediumUrl(),
+                                                attachment.getThumbnailLargeUrl(),
+                                                attachment.getPosterUrl(),
+                                                attachment.getBlurhash(),
+                                                attachment.getDominantColor(),
+                                                attachment.getWidth(),
+                                                attachment.getHeight()))
                                 .collect(Collectors.toSet());
                 dto.setFiles(attachmentDtos);
 
@@ -306,7 +340,7 @@ public class ConversationService {
                 dto.setPhone(user.getPhone());
                 dto.setDisplayName(user.getDisplayName());
                 dto.setCreatedAt(user.getCreatedAt());
-                dto.setAvatarUrl(user.getAvatarUrl());
+                dto.setAvatarUrl(AvatarUrls.variant(user.getAvatarUrl(), AvatarUrls.LIST_SIZE));
                 return dto;
         }
 
@@ -416,6 +450,7 @@ public class ConversationService {
                 conversationUser.setConversation(conversation);
                 conversationUser.setUser(user);
                 conversationUserRepository.save(conversationUser);
+                membershipCache.evict(conversationId);
         }
 
         /**
@@ -435,6 +470,7 @@ public class ConversationService {
 
                 if (conversationUser != null) {
                         conversationUserRepository.delete(conversationUser);
+                        membershipCache.evict(conversationId);
                 }
         }
 
@@ -468,6 +504,8 @@ public class ConversationService {
 
                 // Cuối cùng xóa cuộc trò chuyện
                 conversationRepository.delete(conversation);
+                membershipCache.evict(conversationId);
+                aiContextBuilder.evict(conversationId);
         }
 
         /**
@@ -503,43 +541,31 @@ public class ConversationService {
          * @param senderId       ID của người gửi (có thể null)
          * @param startDate      Ngày bắt đầu (có thể null)
          * @param endDate        Ngày kết thúc (có thể null)
+         * @param sortOrder      Xếp theo độ liên quan hoặc mới nhất
+         * @param cursor         nextCursor của trang trước (có thể null)
          * @param pageable       Thông tin phân trang
          * @return PageResponse<MessageDto> Danh sách tin nhắn tìm được
          */
         public PageResponse<MessageDto> searchMessages(Long conversationId, Long userId, String searchTerm,
                         Long senderId, LocalDateTime startDate, LocalDateTime endDate,
-                        Pageable pageable) {
+                        SearchSortOrder sortOrder, String cursor, Pageable pageable) {
                 // Kiểm tra xem người dùng có trong cuộc trò chuyện không
-                boolean isParticipant = conversationUserRepository.existsByConversationIdAndUserId(conversationId,
-                                userId);
-                if (!isParticipant) {
+                if (!membershipCache.getConversationIds(userId).contains(conversationId)) {
                         throw new ResourceNotFoundException(
                                         "Không tìm thấy cuộc trò chuyện hoặc người dùng không phải là thành viên");
                 }
 
-                // Lấy danh sách tin nhắn đã xóa của người dùng
-                User user = userRepository.findById(userId).orElse(null);
-                List<Long> deletedMessageIds = new ArrayList<>();
-                if (user != null) {
-                        deletedMessageIds = deletedMessageRepository.findByUser(user)
-                                        .stream().map(dm -> dm.getMessage().getMessageId()).toList();
-                }
+                Set<Long> deletedMessageIds = deletedMessageRepository.findMessageIdsByUserId(userId);
 
-                final List<Long> finalDeletedMessageIds = deletedMessageIds;
+                if (messageSearchService.isReady()) {
+                        return searchIndex(List.of(conversationId), searchTerm, senderId, startDate, endDate,
+                                        sortOrder, cursor, pageable, deletedMessageIds);
+                }
 
-                // Thực hiện tìm kiếm
+                // Chỉ mục đang được dựng lại, tạm thời truy vấn database
                 Page<Message> messagesPage = messageRepository.searchMessages(conversationId, searchTerm,
                                 senderId, startDate, endDate, pageable);
-
-                // Map sang DTO và bỏ qua các tin nhắn đã xóa
-                Page<MessageDto> messageDtosPage = messagesPage.map(message -> {
-                        if (finalDeletedMessageIds.contains(message.getMessageId())) {
-                                return null;
-                        }
-                        return mapToMessageDto(message);
-                }).map(dto -> dto);
-
-                return PageResponse.of(messageDtosPage);
+                return toSearchPage(messagesPage, deletedMessageIds);
         }
 
         /**
@@ -550,36 +576,77 @@ public class ConversationService {
          * @param senderId   ID của người gửi (có thể null)
          * @param startDate  Ngày bắt đầu (có thể null)
          * @param endDate    Ngày kết thúc (có thể null)
+         * @param sortOrder  Xếp theo độ liên quan hoặc mới nhất
+         * @param cursor     nextCursor của trang trước (có thể null)
          * @param pageable   Thông tin phân trang
          * @return PageResponse<MessageDto> Danh sách tin nhắn tìm được
          */
         public PageResponse<MessageDto> searchMessagesGlobal(Long userId, String searchTerm, Long senderId,
                         LocalDateTime startDate, LocalDateTime endDate,
-                        Pageable pageable) {
+                        SearchSortOrder sortOrder, String cursor, Pageable pageable) {
                 // Kiểm tra người dùng có tồn tại
-                User user = userRepository.findById(userId)
-                                .orElseThrow(() -> new ResourceNotFoundException(
-                                                "Không tìm thấy người dùng với id: " + userId));
+                if (!userRepository.existsById(userId)) {
+                        throw new ResourceNotFoundException("Không tìm thấy người dùng với id: " + userId);
+                }
 
-                // Lấy danh sách tin nhắn đã xóa của người dùng
-                List<Long> deletedMessageIds = deletedMessageRepository.findByUser(user)
-                                .stream().map(dm -> dm.getMessage().getMessageId()).toList();
+                Set<Long> deletedMessageIds = deletedMessageRepository.findMessageIdsByUserId(userId);
 
-                final List<Long> finalDeletedMessageIds = deletedMessageIds;
+                if (messageSearchService.isReady()) {
+                        // Phạm vi tìm kiếm là các cuộc trò chuyện người dùng đang tham gia, lấy từ cache
+                        // thay vì join bảng thành viên trên toàn bộ tin nhắn
+                        Set<Long> conversationIds = membershipCache.getConversationIds(userId);
+                        return searchIndex(conversationIds, searchTerm, senderId, startDate, endDate,
+                                        sortOrder, cursor, pageable, deletedMessageIds);
+                }
 
-                // Thực hiện tìm kiếm
+                // Chỉ mục đang được dựng lại, tạm thời truy vấn database
                 Page<Message> messagesPage = messageRepository.searchMessagesGlobal(userId, searchTerm,
                                 senderId, startDate, endDate, pageable);
+                return toSearchPage(messagesPage, deletedMessageIds);
+        }
 
-                // Map sang DTO và bỏ qua các tin nhắn đã xóa
-                Page<MessageDto> messageDtosPage = messagesPage.map(message -> {
-                        if (finalDeletedMessageIds.contains(message.getMessageId())) {
-                                return null;
-                        }
-                        return mapToMessageDto(message);
-                }).map(dto -> dto);
+        private PageResponse<MessageDto> searchIndex(Collection<Long> conversationIds, String searchTerm,
+                        Long senderId, LocalDateTime startDate, LocalDateTime endDate,
+                        SearchSortOrder sortOrder, String cursor, Pageable pageable,
+                        Set<Long> deletedMessageIds) {
+                MessageSearchService.SearchResult result;
+                try {
+                        // Tin nhắn đã xóa phía người dùng bị loại ngay trong truy vấn chỉ mục
+                        result = messageSearchService.search(conversationIds, deletedMessageIds, searchTerm,
+                                        senderId, startDate, endDate, sortOrder, cursor, pageable.getPageNumber(),
+                                        pageable.getPageSize());
+                } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                }
 
-                return PageResponse.of(messageDtosPage);
+                // Nạp tin nhắn theo lô rồi giữ đúng thứ tự xếp hạng của chỉ mục
+                Map<Long, Message> messagesById = messageRepository.findAllById(result.messageIds()).stream()
+                                .collect(Collectors.toMap(Message::getMessageId, message -> message));
+                List<MessageDto> content = result.messageIds().stream()
+                                .map(messagesById::get)
+                                .filter(Objects::nonNull)
+                                .filter(message -> !AppConstants.RECALLED_MESSAGE_CONTENT
+                                                .equalsIgnoreCase(message.getContent()))
+                                .map(this::mapToMessageDto)
+                                .toList();
+
+                PageResponse<MessageDto> response = PageResponse.of(
+                                new PageImpl<>(content, pageable, result.totalHits()));
+                response.setNextCursor(result.nextCursor());
+                if (cursor != null && !cursor.isBlank()) {
+                        // Số trang không có ý nghĩa khi đi theo cursor
+                        response.setLast(result.nextCursor() == null);
+                }
+                return response;
+        }
+
+        private PageResponse<MessageDto> toSearchPage(Page<Message> messagesPage, Set<Long> deletedMessageIds) {
+                List<MessageDto> content = messagesPage.getContent().stream()
+                                .filter(message -> !deletedMessageIds.contains(message.getMessageId()))
+                                .map(this::mapToMessageDto)
+                                .toList();
+                return PageResponse.of(new PageImpl<>(content, messagesPage.getPageable(),
+                                messagesPage.getTotalElements()));
         }
 
         /**
@@ -932,16 +999,11 @@ public class ConversationService {
                         forwardedMessage.setCreatedAt(LocalDateTime.now());
 
                         // Xử lý attachments nếu có
-                        if (!originalMessage.getAttachments().isEmpty()) {
-                                // Copy attachments từ tin nhắn gốc
-                                originalMessage.getAttachments().forEach(attachment -> {
-                                        // Tạo attachment mới với cùng thông tin
-                                        // Lưu ý: Trong thực tế có thể cần copy file vật lý
-                                        forwardedMessage.getAttachments().add(attachment);
-                                });
-                        }
+                        copyAttachments(originalMessage, forwardedMessage);
 
                         Message savedForwardedMessage = messageRepository.save(forwardedMessage);
+                        // Bản sao của file đang chờ sinh ảnh xem trước cần được xếp hàng riêng
+                        attachmentPreviewService.scheduleAfterCommit(List.of(savedForwardedMessage));
                         MessageDto forwardedMessageDto = mapToMessageDto(savedForwardedMessage);
                         forwardedMessages.add(forwardedMessageDto);
 
@@ -1050,6 +1112,101 @@ public class ConversationService {
                 return messageParts;
         }
 
+        /**
+         * Lưu mỗi file đính kèm thành một tin nhắn trong cùng một transaction.
+         * Người gửi và cuộc trò chuyện chỉ được tải một lần cho cả lô.
+         *
+         * @param senderId       ID người gửi
+         * @param conversationId ID cuộc trò chuyện
+         * @param attachments    Các file đã upload, theo thứ tự gửi
+         * @return List<MessageDto> Danh sách tin nhắn đã lưu theo cùng thứ tự
+         */
+        @Transactional
+        public List<MessageDto> saveAttachmentMessages(Long senderId, Long conversationId,
+                        List<Attachments> attachments) {
+                User sender = userRepository.findById(senderId)
+                                .orElseThrow(() -> new ResourceNotFoundException(
+                                                "Không tìm thấy người gửi với id: " + senderId));
+
+                Conversation conversation = conversationRepository.findById(conversationId)
+                                .orElseThrow(() -> new ResourceNotFoundException(
+                                                "Không tìm thấy cuộc trò chuyện với id: " + conversationId));
+
+                LocalDateTime now = LocalDateTime.now();
+                List<Message> messages = new ArrayList<>(attachments.size());
+                for (Attachments attachment : attachments) {
+                        Message message = new Message();
+                        message.setSender(sender);
+                        message.setConversation(conversation);
+                        message.setContent(attachment.getName());
+                        message.setType(determineMessageType(attachment.getType()));
+                        message.setCreatedAt(now);
+
+                        // Thiết lập mối quan hệ hai chiều
+                        message.getAttachments().add(attachment);
+                        attachment.setMessage(message);
+                        if (attachmentPreviewService.supportsPreview(attachment.getType())) {
+                                attachment.setPreviewStatus(PreviewStatus.PENDING);
+                        }
+                        messages.add(message);
+                }
+
+                List<Message> savedMessages = messageRepository.saveAll(messages);
+                // Sinh thumbnail và placeholder chạy nền sau khi commit
+                attachmentPreviewService.scheduleAfterCommit(savedMessages);
+
+                return savedMessages.stream()
+                                .map(this::mapToMessageDto)
+                                .collect(Collectors.toList());
+        }
+
+        /**
+         * Tạo bản ghi attachment mới cho tin nhắn đích, trỏ tới cùng object trên S3.
+         * File vật lý không bị copy; object chỉ bị xóa khi không còn bản ghi nào tham chiếu.
+         * Bản sao còn PENDING phải được đưa vào hàng đợi bằng
+         * AttachmentPreviewService.scheduleAfterCommit sau khi tin nhắn đích được lưu.
+         */
+        public void copyAttachments(Message source, Message target) {
+                for (Attachments attachment : source.getAttachments()) {
+                        Attachments copy = new Attachments();
+                        copy.setName(attachment.getName());
+                        copy.setType(attachment.getType());
+                        copy.setUrl(attachment.getUrl());
+                        copy.setSize(attachment.getSize());
+                        copy.setContentHash(attachment.getContentHash());
+                        copy.setPreviewStatus(attachment.getPreviewStatus());
+                        copy.setThumbnailSmallUrl(attachment.getThumbnailSmallUrl());
+                        copy.setThumbnailMediumUrl(attachment.getThumbnailMediumUrl());
+                        copy.setThumbnailLargeUrl(attachment.getThumbnailLargeUrl());
+                        copy.setPosterUrl(attachment.getPosterUrl());
+                        copy.setBlurhash(attachment.getBlurhash());
+                        copy.setDominantColor(attachment.getDominantColor());
+                        copy.setWidth(attachment.getWidth());
+                        copy.setHeight(attachment.getHeight());
+                        copy.setMessage(target);
+                        target.getAttachments().add(copy);
+                }
+        }
+
+        /**
+         * Xác định loại tin nhắn dựa trên MIME type của file
+         */
+        public MessageType determineMessageType(String contentType) {
+                if (contentType == null) {
+                        return MessageType.DOCUMENT;
+                }
+
+                if (contentType.startsWith("image/")) {
+                        return MessageType.IMAGE;
+                } else if (contentType.startsWith("video/")) {
+                        return MessageType.VIDEO;
+                } else if (contentType.startsWith("audio/")) {
+                        return MessageType.AUDIO;
+                } else {
+                        return MessageType.DOCUMENT;
+                }
+        }
+
         /**
          * Gửi tin nhắn, tự động chia thành nhiều tin nhắn nếu quá dài
          *
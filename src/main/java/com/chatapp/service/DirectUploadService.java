@@ -0,0 +1,281 @@
+package com.chatapp.service;
+
+import com.chatapp.dto.request.MessageDto;
+import com.chatapp.dto.request.PresignUploadRequest;
+import com.chatapp.dto.response.PresignedUploadResponse;
+import com.chatapp.exception.BadRequestException;
+import com.chatapp.exception.ResourceNotFoundException;
+import com.chatapp.model.Attachments;
+import com.chatapp.model.PendingUpload;
+import com.chatapp.repository.AttachmentsRepository;
+import com.chatapp.repository.PendingUploadRepository;
+import com.chatapp.util.AppConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upload và tải file trực tiếp giữa client và S3 bằng URL ký sẵn.
+ * Bước 1: client xin URL PUT đã ký kèm ràng buộc kích thước và loại file, rồi tự upload lên S3.
+ * Bước 2: client xác nhận, server kiểm tra object bằng HEAD rồi mới tạo tin nhắn.
+ * Server chỉ xử lý metadata, dữ liệu file không đi qua ứng dụng.
+ * Chỉ có khi dùng S3 làm nơi lưu trữ.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class DirectUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectUploadService.class);
+
+    /**
+     * URL tải đã ký, dùng lại cho tới khi gần hết hạn
+     */
+    private record CachedUrl(String url, long expiresAt) {
+    }
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final AttachmentsService attachmentsService;
+    private final AttachmentsRepository attachmentsRepository;
+    private final ConversationService conversationService;
+    private final PendingUploadRepository pendingUploadRepository;
+
+    // attachmentId -> URL tải đã ký
+    private final Map<Long, CachedUrl> downloadUrls = new ConcurrentHashMap<>();
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${storage.presign.upload-ttl-seconds:900}")
+    private long uploadTtlSeconds;
+
+    @Value("${storage.presign.download-ttl-seconds:600}")
+    private long downloadTtlSeconds;
+
+    public DirectUploadService(S3Client s3Client, S3Presigner s3Presigner, AttachmentsService attachmentsService,
+            AttachmentsRepository attachmentsRepository, ConversationService conversationService,
+            PendingUploadRepository pendingUploadRepository) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.attachmentsService = attachmentsService;
+        this.attachmentsRepository = attachmentsRepository;
+        this.conversationService = conversationService;
+        this.pendingUploadRepository = pendingUploadRepository;
+    }
+
+    /**
+     * Cấp URL PUT đã ký cho một file sẽ gửi vào cuộc trò chuyện.
+     * Content-Type và Content-Length nằm trong chữ ký nên S3 từ chối nếu client gửi khác.
+     */
+    public PresignedUploadResponse createUpload(Long userId, Long conversationId, PresignUploadRequest request) {
+        checkCanSend(userId, conversationId);
+
+        String contentType = request.getContentType();
+        if (contentType == null || !Arrays.asList(AppConstants.ALLOWED_FILE_TYPES).contains(contentType)) {
+            throw new BadRequestException("Loại file không được hỗ trợ: " + contentType);
+        }
+        if (request.getSize() <= 0 || request.getSize() > AppConstants.MAX_FILE_SIZE) {
+            throw new BadRequestException("Kích thước file phải nằm trong khoảng 1 byte đến "
+                    + AppConstants.MAX_FILE_SIZE + " byte");
+        }
+
+        String key = generateKey(request.getFileName());
+        Duration ttl = Duration.ofSeconds(uploadTtlSeconds);
+
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength(request.getSize())
+                        .build())
+                .build());
+
+        String uploadId = UUID.randomUUID().toString();
+        LocalDateTime expiresAt = LocalDateTime.ofInstant(presigned.expiration(), ZoneId.systemDefault());
+        pendingUploadRepository.save(new PendingUpload(uploadId, userId, conversationId, key,
+                request.getFileName(), contentType, request.getSize(), expiresAt));
+
+        // Trình duyệt tự đặt Host, client chỉ cần gửi các header còn lại
+        Map<String, String> headers = new HashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!"host".equalsIgnoreCase(name)) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+
+        return new PresignedUploadResponse(uploadId, presigned.url().toString(), "PUT", headers, expiresAt);
+    }
+
+    /**
+     * Xác nhận các file đã upload và tạo tin nhắn đính kèm.
+     * Bản ghi upload bị xóa trong cùng transaction với tin nhắn, lỗi ở bất kỳ bước nào rollback cả hai
+     * nên client có thể thử xác nhận lại.
+     *
+     * @return Danh sách tin nhắn đã tạo theo thứ tự uploadIds
+     */
+    @Transactional
+    public List<MessageDto> commitUploads(Long userId, Long conversationId, List<String> uploadIds) {
+        if (uploadIds == null || uploadIds.isEmpty()) {
+            throw new BadRequestException("Danh sách uploadId không được để trống");
+        }
+        checkCanSend(userId, conversationId);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingUpload> uploads = new ArrayList<>(uploadIds.size());
+        for (String uploadId : uploadIds) {
+            PendingUpload upload = pendingUploadRepository.findById(uploadId).orElse(null);
+            if (upload == null || upload.getExpiresAt().isBefore(now)) {
+                throw new BadRequestException("Upload không tồn tại hoặc đã hết hạn: " + uploadId);
+            }
+            if (!upload.getUserId().equals(userId) || !upload.getConversationId().equals(conversationId)) {
+                throw new AccessDeniedException("Bạn không có quyền xác nhận upload này");
+            }
+            uploads.add(upload);
+        }
+
+        // Giữ riêng các upload để hai request trùng nhau (hoặc lần dọn upload hết hạn) không cùng xử lý
+        for (String uploadId : uploadIds) {
+            if (pendingUploadRepository.claim(uploadId) == 0) {
+                throw new BadRequestException("Upload đang được xác nhận: " + uploadId);
+            }
+        }
+
+        List<Attachments> attachments = new ArrayList<>(uploads.size());
+        for (PendingUpload upload : uploads) {
+            verifyUploaded(upload);
+
+            Attachments attachment = new Attachments();
+            attachment.setName(upload.getFileName());
+            attachment.setType(upload.getContentType());
+            attachment.setSize(upload.getSize());
+            attachment.setUrl(attachmentsService.toFileUrl(upload.getObjectKey()));
+            attachments.add(attachment);
+        }
+
+        return conversationService.saveAttachmentMessages(userId, conversationId, attachments);
+    }
+
+    /**
+     * URL GET đã ký, có hạn ngắn, để tải file đính kèm.
+     * URL được cache theo attachment và dùng lại khi còn hơn nửa thời hạn.
+     */
+    public String getDownloadUrl(Long userId, Long attachmentId) {
+        Attachments attachment = attachmentsRepository.findById(attachmentId)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "Không tìm thấy file đính kèm với id: " + attachmentId));
+        if (attachment.getMessage() == null
+                || !conversationService.isUserInConversation(attachment.getMessage().getConversation().getId(),
+                        userId)) {
+            throw new AccessDeniedException("Bạn không có quyền tải file này");
+        }
+
+        long now = System.currentTimeMillis();
+        long minRemaining = downloadTtlSeconds * 1000 / 2;
+        CachedUrl cached = downloadUrls.get(attachmentId);
+        if (cached != null && cached.expiresAt() - now > minRemaining) {
+            return cached.url();
+        }
+
+        String key = attachmentsService.toObjectKey(attachment.getUrl());
+        PresignedGetObjectRequest presigned = s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(downloadTtlSeconds))
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .build())
+                .build());
+
+        String url = presigned.url().toString();
+        downloadUrls.put(attachmentId, new CachedUrl(url, presigned.expiration().toEpochMilli()));
+        return url;
+    }
+
+    /**
+     * Dọn các upload không được xác nhận và URL tải đã hết hạn.
+     * Lần chạy đầu tiên ngay khi khởi động dọn cả các upload bị bỏ dở trước lần khởi động lại.
+     */
+    @Scheduled(fixedDelayString = "${storage.presign.cleanup-interval-ms:300000}")
+    @Transactional
+    public void removeExpired() {
+        for (PendingUpload upload : pendingUploadRepository.findByExpiresAtBefore(LocalDateTime.now())) {
+            // Chỉ xóa object khi giữ được bản ghi, upload đang được xác nhận thì bỏ qua
+            if (pendingUploadRepository.claim(upload.getId()) == 1) {
+                // Client có thể đã upload nhưng không xác nhận, xóa object để tránh rác
+                attachmentsService.deleteQuietly(attachmentsService.toFileUrl(upload.getObjectKey()));
+            }
+        }
+        long now = System.currentTimeMillis();
+        downloadUrls.values().removeIf(cached -> cached.expiresAt() < now);
+    }
+
+    private void verifyUploaded(PendingUpload upload) {
+        HeadObjectResponse head;
+        try {
+            head = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(upload.getObjectKey())
+                    .build());
+        } catch (NoSuchKeyException e) {
+            throw new BadRequestException("File chưa được upload: " + upload.getFileName());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new BadRequestException("File chưa được upload: " + upload.getFileName());
+            }
+            throw e;
+        }
+
+        if (head.contentLength() == null || head.contentLength() != upload.getSize()
+                || !upload.getContentType().equals(head.contentType())) {
+            logger.warn("File {} trên S3 không khớp với thông tin đã khai báo", upload.getObjectKey());
+            throw new BadRequestException("File đã upload không khớp với thông tin đã khai báo: "
+                    + upload.getFileName());
+        }
+    }
+
+    private void checkCanSend(Long userId, Long conversationId) {
+        if (!conversationService.isUserInConversation(conversationId, userId)) {
+            throw new AccessDeniedException("Bạn không có quyền gửi file trong cuộc trò chuyện này");
+        }
+        if (conversationService.isConversationBlocked(conversationId)) {
+            throw new AccessDeniedException("Tin nhắn đã bị chặn trong cuộc trò chuyện này");
+        }
+    }
+
+    private static String generateKey(String originalFileName) {
+        String extension = "";
+        if (originalFileName != null && originalFileName.contains(".")) {
+            extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        }
+        return UUID.randomUUID().toString() + extension;
+    }
+}
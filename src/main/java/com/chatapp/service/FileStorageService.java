@@ -1,55 +1,86 @@
 package com.chatapp.service;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class FileStorageService {
 
-    private final S3Client s3Client;
+    private final StorageBackend storageBackend;
 
-    @Value("${aws.s3.bucket-name}")
-    private String bucketName;
-
-    public FileStorageService(S3Client s3Client) {
-        this.s3Client = s3Client;
+    public FileStorageService(StorageBackend storageBackend) {
+        this.storageBackend = storageBackend;
     }
 
     public String uploadFile(MultipartFile file) throws IOException {
         String fileName = generateFileName(file);
 
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(fileName)
-                .contentType(file.getContentType())
-                .build();
+        // Upload trực tiếp từ stream của file, không đọc toàn bộ vào bộ nhớ
+        try (InputStream inputStream = file.getInputStream()) {
+            storageBackend.put(fileName, inputStream, file.getSize(), file.getContentType());
+        }
+
+        return storageBackend.toUrl(fileName);
+    }
+
+    /**
+     * Upload không chặn luồng gọi, trả về URL khi upload xong
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file) {
+        String fileName = generateFileName(file);
 
-        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+        InputStream inputStream;
+        try {
+            inputStream = file.getInputStream();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
-        return String.format("https://%s.s3.amazonaws.com/%s", bucketName, fileName);
+        return storageBackend.putAsync(fileName, inputStream, file.getSize(), file.getContentType())
+                .whenComplete((result, error) -> closeQuietly(inputStream))
+                .thenApply(result -> storageBackend.toUrl(fileName));
     }
 
-    public void deleteFile(String fileUrl) {
-        String key = fileUrl.substring(fileUrl.lastIndexOf("/") + 1);
+    /**
+     * Upload trực tiếp từ mảng byte có sẵn (ví dụ ảnh do AI tạo).
+     * Nội dung được đọc qua stream từ chính mảng này nên không tạo thêm bản sao.
+     */
+    public String uploadBytes(byte[] content, String originalFileName, String contentType) {
+        String fileName = generateFileName(originalFileName);
+
+        try {
+            storageBackend.put(fileName, new ByteArrayInputStream(content), content.length, contentType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return storageBackend.toUrl(fileName);
+    }
 
-        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .build();
+    public void deleteFile(String fileUrl) {
+        storageBackend.delete(storageBackend.toKey(fileUrl));
+    }
 
-        s3Client.deleteObject(deleteObjectRequest);
+    static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+            // Stream của file tạm, lỗi khi đóng không ảnh hưởng kết quả upload
+        }
     }
 
     private String generateFileName(MultipartFile file) {
-        String originalFileName = file.getOriginalFilename();
+        return generateFileName(file.getOriginalFilename());
+    }
+
+    private String generateFileName(String originalFileName) {
         String extension = "";
 
         if (originalFileName != null && originalFileName.contains(".")) {
@@ -58,4 +89,4 @@ public class FileStorageService {
 
         return UUID.randomUUID().toString() + extension;
     }
-}
\ No newline at end of file
+}
@@ -13,12 +13,16 @@ import com.chatapp.model.Conversation;
 import com.chatapp.repository.FriendRepository;
 import com.chatapp.repository.UserRepository;
 import com.chatapp.repository.ConversationRepository;
+import com.chatapp.util.AvatarUrls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.Optional;
 
@@ -34,6 +38,7 @@ public class FriendService {
     private final UserRepository userRepository;
     private final ConversationService conversationService;
     private final ConversationRepository conversationRepository;
+    private final UserSearchIndex userSearchIndex;
 
     /**
      * Constructor để dependency injection
@@ -46,13 +51,16 @@ public class FriendService {
      *                               chuyện
      * @param conversationRepository Repository xử lý thao tác với database của
      *                               Conversation
+     * @param userSearchIndex        Chỉ mục tìm kiếm người dùng trong bộ nhớ
      */
     public FriendService(FriendRepository friendRepository, UserRepository userRepository,
-            ConversationService conversationService, ConversationRepository conversationRepository) {
+            ConversationService conversationService, ConversationRepository conversationRepository,
+            UserSearchIndex userSearchIndex) {
         this.friendRepository = friendRepository;
         this.userRepository = userRepository;
         this.conversationService = conversationService;
         this.conversationRepository = conversationRepository;
+        this.userSearchIndex = userSearchIndex;
     }
 
     /**
@@ -408,7 +416,29 @@ public class FriendService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy người dùng với id: " + userId));
 
-        return friendRepository.searchFriendsByName(user, searchTerm).stream()
+        if (!userSearchIndex.isReady()) {
+            return friendRepository.searchFriendsByName(user, searchTerm).stream()
+                    .map(this::mapToDto)
+                    .collect(Collectors.toList());
+        }
+
+        // Chỉ mục cho thứ tự xếp hạng (không phân biệt dấu), chỉ còn lấy các quan hệ bạn bè theo id user
+        List<Long> rankedIds = userSearchIndex.search(userId, searchTerm, true, Integer.MAX_VALUE).stream()
+                .map(UserSearchIndex.Entry::userId)
+                .toList();
+        if (rankedIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Friend> friendshipByFriendId = new HashMap<>();
+        for (Friend friend : friendRepository.findAcceptedFriendshipsByUserId(userId)) {
+            Long friendId = friend.getUser1().getUserId().equals(userId)
+                    ? friend.getUser2().getUserId()
+                    : friend.getUser1().getUserId();
+            friendshipByFriendId.put(friendId, friend);
+        }
+        return rankedIds.stream()
+                .map(friendshipByFriendId::get)
+                .filter(Objects::nonNull)
                 .map(this::mapToDto)
                 .collect(Collectors.toList());
     }
@@ -539,14 +569,14 @@ public class FriendService {
         user1Dto.setUserId(friend.getUser1().getUserId());
         user1Dto.setDisplayName(friend.getUser1().getDisplayName());
         user1Dto.setPhone(friend.getUser1().getPhone());
-        user1Dto.setAvatarUrl(friend.getUser1().getAvatarUrl());
+        user1Dto.setAvatarUrl(AvatarUrls.variant(friend.getUser1().getAvatarUrl(), AvatarUrls.LIST_SIZE));
         dto.setUser1(user1Dto);
 
         UserDto user2Dto = new UserDto();
         user2Dto.setUserId(friend.getUser2().getUserId());
         user2Dto.setDisplayName(friend.getUser2().getDisplayName());
         user2Dto.setPhone(friend.getUser2().getPhone());
-        user2Dto.setAvatarUrl(friend.getUser2().getAvatarUrl());
+        user2Dto.setAvatarUrl(AvatarUrls.variant(friend.getUser2().getAvatarUrl(), AvatarUrls.LIST_SIZE));
         dto.setUser2(user2Dto);
 
         dto.setStatus(friend.getStatus());
@@ -0,0 +1,330 @@
+package com.chatapp.service;
+
+import com.chatapp.exception.AiOverloadedException;
+import com.google.genai.Client;
+import com.google.genai.ResponseStream;
+import com.google.genai.errors.ApiException;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Điểm duy nhất gọi tới Google GenAI client.
+ * Các service AI đi qua lớp này thay vì dùng Client trực tiếp, nhờ đó có thể thay bằng
+ * một lớp con giả lập (ghi đè các phương thức bên dưới) để chạy mà không cần mạng.
+ * Mọi lời gọi đều qua bộ giới hạn đồng thời, chạy trên executor riêng và có timeout.
+ */
+@Service
+public class GenAiGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenAiGateway.class);
+
+    // Caller của luồng hiện tại, dùng để chia đều suất gọi giữa các user
+    private static final ThreadLocal<String> CURRENT_CALLER = new ThreadLocal<>();
+
+    private final Client genaiClient;
+    private final ThreadPoolTaskExecutor genAiExecutor;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final Timer queueWaitTimer;
+    private final Timer callTimer;
+    private final Counter overloadedCounter;
+    private final Counter timeoutCounter;
+
+    @Value("${ai.gateway.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    @Value("${ai.gateway.call-timeout-ms:60000}")
+    private long callTimeoutMs;
+
+    public GenAiGateway(Client genaiClient,
+            @Qualifier("genAiExecutor") ThreadPoolTaskExecutor genAiExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${ai.gateway.initial-limit:8}") int initialLimit,
+            @Value("${ai.gateway.min-limit:2}") int minLimit,
+            @Value("${ai.gateway.max-limit:32}") int maxLimit,
+            @Value("${ai.gateway.max-queued:100}") int maxQueued,
+            @Value("${ai.gateway.max-per-caller:3}") int maxPerCaller,
+            @Value("${ai.gateway.slow-call-threshold-ms:15000}") long slowCallThresholdMs) {
+        this.genaiClient = genaiClient;
+        this.genAiExecutor = genAiExecutor;
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, maxQueued,
+                maxPerCaller, slowCallThresholdMs);
+
+        Gauge.builder("chatapp.ai.gateway.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Số lời gọi GenAI đang chạy")
+                .register(meterRegistry);
+        Gauge.builder("chatapp.ai.gateway.queued", limiter, AdaptiveConcurrencyLimiter::getQueued)
+                .description("Số lời gọi GenAI đang chờ suất")
+                .register(meterRegistry);
+        Gauge.builder("chatapp.ai.gateway.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Giới hạn đồng thời hiện tại của GenAI")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("chatapp.ai.gateway.queue.wait")
+                .description("Thời gian chờ suất gọi GenAI")
+                .register(meterRegistry);
+        this.callTimer = Timer.builder("chatapp.ai.gateway.call")
+                .description("Thời gian thực hiện lời gọi GenAI")
+                .register(meterRegistry);
+        this.overloadedCounter = Counter.builder("chatapp.ai.gateway.rejected")
+                .description("Số lời gọi GenAI bị từ chối")
+                .tag("reason", "overloaded")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("chatapp.ai.gateway.rejected")
+                .description("Số lời gọi GenAI bị từ chối")
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chạy tác vụ với caller xác định (ví dụ từ luồng nền không có SecurityContext)
+     */
+    public static <T> T callAs(String caller, Supplier<T> task) {
+        String previous = CURRENT_CALLER.get();
+        CURRENT_CALLER.set(caller);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT_CALLER.set(previous);
+            } else {
+                CURRENT_CALLER.remove();
+            }
+        }
+    }
+
+    public static void runAs(String caller, Runnable task) {
+        callAs(caller, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public GenerateContentResponse generateContent(String model, String prompt,
+            @Nullable GenerateContentConfig config) {
+        return execute(() -> genaiClient.models.generateContent(model, prompt, config));
+    }
+
+    public GenerateContentResponse generateContent(String model, Content content,
+            @Nullable GenerateContentConfig config) {
+        return execute(() -> genaiClient.models.generateContent(model, content, config));
+    }
+
+    public GenerateContentResponse generateContent(String model, List<Content> contents,
+            @Nullable GenerateContentConfig config) {
+        return execute(() -> genaiClient.models.generateContent(model, contents, config));
+    }
+
+    /**
+     * Mở luồng streaming. Bên gọi phải đóng luồng (try-with-resources) để trả suất gọi.
+     */
+    public GenAiStream generateContentStream(String model, String prompt,
+            @Nullable GenerateContentConfig config) {
+        return openStream(() -> genaiClient.models.generateContentStream(model, prompt, config));
+    }
+
+    public GenAiStream generateContentStream(String model, List<Content> contents,
+            @Nullable GenerateContentConfig config) {
+        return openStream(() -> genaiClient.models.generateContentStream(model, contents, config));
+    }
+
+    /**
+     * Gọi bất đồng bộ trên executor riêng thay vì common pool.
+     * Suất gọi được xin trên luồng của bên gọi trước khi submit để worker không bị chặn chờ suất;
+     * quá thời gian thì hủy lời gọi và tính là bị drop.
+     */
+    public CompletableFuture<GenerateContentResponse> generateContentAsync(String model, String prompt,
+            @Nullable GenerateContentConfig config) {
+        String caller = currentCaller();
+        long startedAt;
+        try {
+            startedAt = acquirePermit(caller);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<GenerateContentResponse> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = genAiExecutor.submit(() -> {
+                try {
+                    result.complete(genaiClient.models.generateContent(model, prompt, config));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            overloadedCounter.increment();
+            releasePermit(caller, startedAt, false);
+            return CompletableFuture.failedFuture(
+                    new AiOverloadedException("Hệ thống AI đang quá tải, vui lòng thử lại sau"));
+        }
+
+        result.orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    boolean timedOut = error instanceof TimeoutException;
+                    if (timedOut) {
+                        task.cancel(true);
+                        timeoutCounter.increment();
+                    }
+                    releasePermit(caller, startedAt, timedOut || isProviderOverloaded(error));
+                });
+        return result;
+    }
+
+    private <T> T execute(Callable<T> call) {
+        return invoke(currentCaller(), call, true);
+    }
+
+    /**
+     * Xin suất gọi rồi thực hiện lời gọi
+     *
+     * @param onExecutor true để chạy lời gọi trên genAiExecutor và áp timeout,
+     *                   false để chạy ngay trên luồng hiện tại
+     */
+    private <T> T invoke(String caller, Callable<T> call, boolean onExecutor) {
+        long startedAt = acquirePermit(caller);
+        boolean dropped = false;
+        try {
+            return call(call, onExecutor);
+        } catch (RuntimeException e) {
+            dropped = isDropped(e);
+            throw e;
+        } finally {
+            releasePermit(caller, startedAt, dropped);
+        }
+    }
+
+    /**
+     * Mở luồng streaming. Suất gọi được giữ tới khi luồng đọc hết, gặp lỗi hoặc bị đóng
+     * để các stream dài vẫn nằm trong giới hạn đồng thời và được tính vào AIMD.
+     */
+    private GenAiStream openStream(Callable<ResponseStream<GenerateContentResponse>> call) {
+        String caller = currentCaller();
+        long startedAt = acquirePermit(caller);
+        ResponseStream<GenerateContentResponse> upstream;
+        try {
+            upstream = call(call, true);
+        } catch (RuntimeException e) {
+            releasePermit(caller, startedAt, isDropped(e));
+            throw e;
+        }
+        return new GenAiStream(upstream, dropped -> releasePermit(caller, startedAt, dropped));
+    }
+
+    /**
+     * Chờ suất gọi của limiter
+     *
+     * @return thời điểm (nanoTime) bắt đầu giữ suất
+     */
+    private long acquirePermit(String caller) {
+        long queuedAt = System.nanoTime();
+        try {
+            limiter.acquire(caller, maxWaitMs);
+        } catch (AiOverloadedException e) {
+            overloadedCounter.increment();
+            logger.warn("Từ chối lời gọi GenAI của {}: {}", caller, e.getMessage());
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AiOverloadedException("Lời gọi AI bị gián đoạn");
+        }
+
+        long startedAt = System.nanoTime();
+        queueWaitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+        return startedAt;
+    }
+
+    private void releasePermit(String caller, long startedAt, boolean dropped) {
+        long latency = System.nanoTime() - startedAt;
+        callTimer.record(latency, TimeUnit.NANOSECONDS);
+        limiter.release(caller, latency, dropped);
+    }
+
+    /**
+     * Thực hiện lời gọi khi đã giữ suất, không tự trả suất
+     */
+    private <T> T call(Callable<T> call, boolean onExecutor) {
+        Future<T> future = null;
+        try {
+            if (!onExecutor) {
+                return call.call();
+            }
+            future = genAiExecutor.submit(call);
+            return future.get(callTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCounter.increment();
+            throw new RuntimeException("Gọi AI quá thời gian " + callTimeoutMs + " ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            if (future != null) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Lời gọi AI bị gián đoạn", e);
+        } catch (TaskRejectedException e) {
+            overloadedCounter.increment();
+            throw new AiOverloadedException("Hệ thống AI đang quá tải, vui lòng thử lại sau");
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lời gọi bị timeout hoặc bị nhà cung cấp từ chối vì quá tải, dùng để giảm giới hạn AIMD
+     */
+    private static boolean isDropped(RuntimeException error) {
+        return error.getCause() instanceof TimeoutException || isProviderOverloaded(error);
+    }
+
+    static boolean isProviderOverloaded(Throwable error) {
+        return error instanceof ApiException apiException
+                && (apiException.code() == 429 || apiException.code() == 503);
+    }
+
+    /**
+     * Caller của luồng hiện tại: giá trị đặt qua callAs/runAs, nếu không có thì lấy user đang đăng nhập
+     */
+    public static String currentCaller() {
+        String caller = CURRENT_CALLER.get();
+        if (caller != null) {
+            return caller;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()) {
+            return authentication.getName();
+        }
+        return "anonymous";
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.service;
+
+import com.google.genai.ResponseStream;
+import com.google.genai.types.GenerateContentResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Luồng phản hồi streaming của GenAI kèm suất gọi của GenAiGateway.
+ * Suất gọi được trả đúng một lần khi luồng đọc hết, gặp lỗi hoặc bị đóng (kể cả đóng từ luồng khác).
+ */
+public class GenAiStream implements Iterable<GenerateContentResponse>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenAiStream.class);
+
+    private final ResponseStream<GenerateContentResponse> upstream;
+    private final Consumer<Boolean> releasePermit;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param releasePermit Trả suất gọi, tham số là true nếu luồng bị nhà cung cấp từ chối vì quá tải
+     */
+    GenAiStream(ResponseStream<GenerateContentResponse> upstream, Consumer<Boolean> releasePermit) {
+        this.upstream = upstream;
+        this.releasePermit = releasePermit;
+    }
+
+    @Override
+    public Iterator<GenerateContentResponse> iterator() {
+        Iterator<GenerateContentResponse> delegate = upstream.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    boolean hasNext = delegate.hasNext();
+                    if (!hasNext) {
+                        release(false);
+                    }
+                    return hasNext;
+                } catch (RuntimeException e) {
+                    release(GenAiGateway.isProviderOverloaded(e));
+                    throw e;
+                }
+            }
+
+            @Override
+            public GenerateContentResponse next() {
+                try {
+                    return delegate.next();
+                } catch (RuntimeException e) {
+                    release(GenAiGateway.isProviderOverloaded(e));
+                    throw e;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        try {
+            upstream.close();
+        } catch (Exception e) {
+            logger.debug("Lỗi khi đóng luồng Gemini: {}", e.getMessage());
+        } finally {
+            release(false);
+        }
+    }
+
+    private void release(boolean dropped) {
+        if (released.compareAndSet(false, true)) {
+            releasePermit.accept(dropped);
+        }
+    }
+}
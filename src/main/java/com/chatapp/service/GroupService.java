@@ -18,7 +18,7 @@ import com.chatapp.repository.FriendRepository;
 import com.chatapp.repository.GroupMemberRepository;
 import com.chatapp.repository.GroupRepository;
 import com.chatapp.repository.UserRepository;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import com.chatapp.util.AvatarUrls;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -39,7 +39,7 @@ public class GroupService {
         private final UserRepository userRepository;
         private final FriendRepository friendRepository;
         private final ConversationService conversationService;
-        private final SimpMessagingTemplate messagingTemplate;
+        private final UserMessagingService userMessagingService;
 
         /**
          * Constructor để dependency injection
@@ -52,17 +52,17 @@ public class GroupService {
          *                              Friend
          * @param conversationService   Service xử lý các thao tác liên quan đến cuộc
          *                              trò chuyện
-         * @param messagingTemplate     Template để gửi thông báo WebSocket realtime
+         * @param userMessagingService  Service gửi thông báo WebSocket realtime tới user
          */
         public GroupService(GroupRepository groupRepository, GroupMemberRepository groupMemberRepository,
                         UserRepository userRepository, FriendRepository friendRepository,
-                        ConversationService conversationService, SimpMessagingTemplate messagingTemplate) {
+                        ConversationService conversationService, UserMessagingService userMessagingService) {
                 this.groupRepository = groupRepository;
                 this.groupMemberRepository = groupMemberRepository;
                 this.userRepository = userRepository;
                 this.friendRepository = friendRepository;
                 this.conversationService = conversationService;
-                this.messagingTemplate = messagingTemplate;
+                this.userMessagingService = userMessagingService;
         }
 
         /**
@@ -108,7 +108,7 @@ public class GroupService {
                 leaderUserDto.setUserId(creator.getUserId());
                 leaderUserDto.setDisplayName(creator.getDisplayName());
                 leaderUserDto.setPhone(creator.getPhone());
-                leaderUserDto.setAvatarUrl(creator.getAvatarUrl());
+                leaderUserDto.setAvatarUrl(AvatarUrls.variant(creator.getAvatarUrl(), AvatarUrls.LIST_SIZE));
                 leaderMemberDto.setUser(leaderUserDto);
                 leaderMemberDto.setRole(GroupRole.LEADER);
                 groupMembers.add(leaderMemberDto);
@@ -155,7 +155,7 @@ public class GroupService {
                         userDto.setUserId(member.getUserId());
                         userDto.setDisplayName(member.getDisplayName());
                         userDto.setPhone(member.getPhone());
-                        userDto.setAvatarUrl(member.getAvatarUrl());
+                        userDto.setAvatarUrl(AvatarUrls.variant(member.getAvatarUrl(), AvatarUrls.LIST_SIZE));
                         memberDto.setUser(userDto);
                         memberDto.setRole(savedMember.getRole());
                         groupMembers.add(memberDto);
@@ -752,7 +752,7 @@ public class GroupService {
                 userDto.setUserId(member.getUser().getUserId());
                 userDto.setDisplayName(member.getUser().getDisplayName());
                 userDto.setPhone(member.getUser().getPhone());
-                userDto.setAvatarUrl(member.getUser().getAvatarUrl());
+                userDto.setAvatarUrl(AvatarUrls.variant(member.getUser().getAvatarUrl(), AvatarUrls.LIST_SIZE));
 
                 dto.setUser(userDto);
                 dto.setRole(member.getRole());
@@ -772,7 +772,7 @@ public class GroupService {
                         // Gửi thông báo đến queue cá nhân của từng thành viên về việc được thêm vào
                         // nhóm mới
                         GroupDto groupNotification = mapToDto(group);
-                        messagingTemplate.convertAndSend("/queue/user/" + memberId + "/group-created",
+                        userMessagingService.sendToUser(memberId, "/queue/group-created",
                                         Map.of(
                                                         "type", "GROUP_CREATED",
                                                         "message", String.format("Bạn đã được %s thêm vào nhóm \"%s\"",
@@ -793,7 +793,7 @@ public class GroupService {
          */
         private void sendMemberRemovedNotificationToUser(Long userId, Group group, String memberName,
                         String managerName) {
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/group-member-removed",
+                userMessagingService.sendToUser(userId, "/queue/group-member-removed",
                                 Map.of(
                                                 "type", "GROUP_MEMBER_REMOVED",
                                                 "message", String.format("Bạn đã bị %s xóa khỏi nhóm \"%s\"",
@@ -817,8 +817,8 @@ public class GroupService {
                 List<GroupMember> remainingMembers = groupMemberRepository.findByGroup(group);
                 for (GroupMember member : remainingMembers) {
                         // Gửi thông báo đến tất cả thành viên còn lại
-                        messagingTemplate.convertAndSend(
-                                        "/queue/user/" + member.getUser().getUserId() + "/group-member-removed",
+                        userMessagingService.sendToUser(
+                                        member.getUser().getUserId(), "/queue/group-member-removed",
                                         Map.of(
                                                         "type", "GROUP_MEMBER_REMOVED",
                                                         "message",
@@ -842,7 +842,7 @@ public class GroupService {
          */
         private void sendMemberAddedNotificationToNewMember(Long userId, Group group, String memberName,
                         String managerName) {
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/group-member-added",
+                userMessagingService.sendToUser(userId, "/queue/group-member-added",
                                 Map.of(
                                                 "type", "GROUP_MEMBER_ADDED",
                                                 "message", String.format("Bạn đã được %s thêm vào nhóm \"%s\"",
@@ -866,8 +866,8 @@ public class GroupService {
                 List<GroupMember> existingMembers = groupMemberRepository.findByGroup(group);
                 for (GroupMember member : existingMembers) {
                         // Gửi thông báo đến tất cả thành viên còn lại
-                        messagingTemplate.convertAndSend(
-                                        "/queue/user/" + member.getUser().getUserId() + "/group-member-added",
+                        userMessagingService.sendToUser(
+                                        member.getUser().getUserId(), "/queue/group-member-added",
                                         Map.of(
                                                         "type", "GROUP_MEMBER_ADDED",
                                                         "message",
@@ -894,7 +894,7 @@ public class GroupService {
                         // Gửi thông báo đến queue cá nhân của từng thành viên về việc nhóm đã được giải
                         // tán
                         GroupDto groupNotification = mapToDto(group);
-                        messagingTemplate.convertAndSend("/queue/user/" + memberId + "/group-dissolved",
+                        userMessagingService.sendToUser(memberId, "/queue/group-dissolved",
                                         Map.of(
                                                         "type", "GROUP_DISSOLVED",
                                                         "message", String.format("Nhóm \"%s\" đã được %s giải tán",
@@ -913,7 +913,7 @@ public class GroupService {
          * @param memberName Tên của thành viên rời khỏi nhóm
          */
         private void sendMemberLeftNotificationToUser(Long userId, Group group, String memberName) {
-                messagingTemplate.convertAndSend("/queue/user/" + userId + "/group-member-left",
+                userMessagingService.sendToUser(userId, "/queue/group-member-left",
                                 Map.of(
                                                 "type", "GROUP_MEMBER_LEFT",
                                                 "message", String.format("Bạn đã rời khỏi nhóm \"%s\"",
@@ -934,8 +934,8 @@ public class GroupService {
                 List<GroupMember> remainingMembers = groupMemberRepository.findByGroup(group);
                 for (GroupMember member : remainingMembers) {
                         // Gửi thông báo đến tất cả thành viên còn lại
-                        messagingTemplate.convertAndSend(
-                                        "/queue/user/" + member.getUser().getUserId() + "/group-member-left",
+                        userMessagingService.sendToUser(
+                                        member.getUser().getUserId(), "/queue/group-member-left",
                                         Map.of(
                                                         "type", "GROUP_MEMBER_LEFT",
                                                         "message",
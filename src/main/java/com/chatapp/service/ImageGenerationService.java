@@ -1,26 +1,31 @@
 package com.chatapp.service;
 
+import com.chatapp.exception.AiOverloadedException;
 import com.google.common.collect.ImmutableList;
-import com.google.genai.Client;
 import com.google.genai.types.Content;
 import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
 import com.google.genai.types.Part;
 import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeType;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service responsible for generating images using Google's Gemini AI model.
@@ -31,20 +36,26 @@ import java.util.UUID;
 @Service
 public class ImageGenerationService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ImageGenerationService.class);
+
     private final String imageGenerationModel = "gemini-2.0-flash-exp-image-generation";
 
-    private final Client genaiClient;
+    private final GenAiGateway genAiGateway;
     private final FileStorageService fileStorageService;
+    private final ThreadPoolTaskExecutor storageIoExecutor;
 
     /**
      * Constructs an ImageGenerationService with the required dependencies.
      *
-     * @param genaiClient        Google GenAI client for API communication
+     * @param genAiGateway       Gateway to the Google GenAI client for API communication
      * @param fileStorageService Service for uploading files to S3
+     * @param storageIoExecutor  Bounded executor for concurrent uploads
      */
-    public ImageGenerationService(Client genaiClient, FileStorageService fileStorageService) {
-        this.genaiClient = genaiClient;
+    public ImageGenerationService(GenAiGateway genAiGateway, FileStorageService fileStorageService,
+            @Qualifier("storageIoExecutor") ThreadPoolTaskExecutor storageIoExecutor) {
+        this.genAiGateway = genAiGateway;
         this.fileStorageService = fileStorageService;
+        this.storageIoExecutor = storageIoExecutor;
     }
 
     /**
@@ -55,6 +66,26 @@ public class ImageGenerationService {
      * @return List of image URLs from S3
      */
     public List<String> generateImages(String prompt, @Nullable List<MultipartFile> images) {
+        List<String> imageUrls = new ArrayList<>();
+        for (CompletableFuture<String> upload : generateImageUploads(prompt, images)) {
+            try {
+                imageUrls.add(upload.join());
+            } catch (CompletionException e) {
+                logger.warn("Lỗi khi upload ảnh lên S3", e.getCause());
+            }
+        }
+        return imageUrls;
+    }
+
+    /**
+     * Generates images and uploads them concurrently on the storage I/O executor,
+     * straight from the decoded image bytes.
+     *
+     * @param prompt Text description of the image to generate
+     * @param images Optional reference images to guide the generation (can be null)
+     * @return One future per generated image, completing with its S3 URL
+     */
+    public List<CompletableFuture<String>> generateImageUploads(String prompt, @Nullable List<MultipartFile> images) {
         List<Part> parts = new ArrayList<>();
         parts.add(Part.fromText(prompt)); // Add prompt
 
@@ -78,34 +109,57 @@ public class ImageGenerationService {
                 .build();
 
         try {
-            GenerateContentResponse response = this.genaiClient.models.generateContent(imageGenerationModel, content,
+            GenerateContentResponse response = genAiGateway.generateContent(imageGenerationModel, content,
                     config);
-            List<Image> generatedImages = getImages(response);
-
-            List<String> imageUrls = new ArrayList<>();
-            for (Image image : generatedImages) {
-                try {
-                    // Tạo CustomMultipartFile từ byte array để upload lên S3
-                    CustomMultipartFile multipartFile = new CustomMultipartFile(
-                            image.imageBytes(),
-                            image.imageName(),
-                            image.mimeType());
-
-                    String imageUrl = fileStorageService.uploadFile(multipartFile);
-                    imageUrls.add(imageUrl);
-                } catch (IOException e) {
-                    System.out.println("Lỗi khi upload ảnh lên S3: " + e.getMessage());
-                }
-            }
 
-            return imageUrls;
+            return getImages(response).stream()
+                    .map(this::uploadAsync)
+                    .toList();
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("Error generating images: " + e.getMessage());
+            logger.error("Error generating images", e);
         }
 
         return Collections.emptyList();
     }
 
+    /**
+     * Completes with the URL of the first upload that succeeds, without waiting for the others.
+     *
+     * @param uploads Upload futures returned by {@link #generateImageUploads}
+     * @return Future with the first URL, or an empty Optional if every upload fails
+     */
+    public static CompletableFuture<Optional<String>> firstUploaded(List<CompletableFuture<String>> uploads) {
+        CompletableFuture<Optional<String>> first = new CompletableFuture<>();
+        if (uploads.isEmpty()) {
+            first.complete(Optional.empty());
+            return first;
+        }
+
+        AtomicInteger remainingFailures = new AtomicInteger(uploads.size());
+        for (CompletableFuture<String> upload : uploads) {
+            upload.whenComplete((url, error) -> {
+                if (error == null && url != null) {
+                    first.complete(Optional.of(url));
+                } else if (remainingFailures.decrementAndGet() == 0) {
+                    first.complete(Optional.empty());
+                }
+            });
+        }
+        return first;
+    }
+
+    private CompletableFuture<String> uploadAsync(Image image) {
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> fileStorageService.uploadBytes(image.imageBytes(), image.imageName(), image.mimeType()),
+                    storageIoExecutor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Extracts image data from the Gemini API response.
      *
@@ -143,59 +197,4 @@ public class ImageGenerationService {
      */
     record Image(String imageName, byte[] imageBytes, String mimeType) {
     }
-
-    /**
-     * Custom implementation of MultipartFile for generated images
-     */
-    private static class CustomMultipartFile implements MultipartFile {
-        private final byte[] content;
-        private final String name;
-        private final String contentType;
-
-        public CustomMultipartFile(byte[] content, String name, String contentType) {
-            this.content = content;
-            this.name = name;
-            this.contentType = contentType;
-        }
-
-        @Override
-        public String getName() {
-            return "file";
-        }
-
-        @Override
-        public String getOriginalFilename() {
-            return name;
-        }
-
-        @Override
-        public String getContentType() {
-            return contentType;
-        }
-
-        @Override
-        public boolean isEmpty() {
-            return content.length == 0;
-        }
-
-        @Override
-        public long getSize() {
-            return content.length;
-        }
-
-        @Override
-        public byte[] getBytes() throws IOException {
-            return content;
-        }
-
-        @Override
-        public InputStream getInputStream() throws IOException {
-            return new ByteArrayInputStream(content);
-        }
-
-        @Override
-        public void transferTo(File dest) throws IOException, IllegalStateException {
-            throw new UnsupportedOperationException("transferTo not supported");
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package com.chatapp.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lưu trữ trên ổ đĩa cục bộ cho triển khai không dùng S3.
+ * File được phục vụ qua FileDownloadController; MIME type lưu trong thư mục .meta cạnh file.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final Path baseDir;
+    private final Path metaDir;
+    private final String publicUrl;
+    private final ThreadPoolTaskExecutor storageIoExecutor;
+
+    public LocalStorageBackend(@Value("${storage.local.base-dir:./data/files}") String baseDir,
+            @Value("${storage.local.public-url:/api/files}") String publicUrl,
+            @Qualifier("storageIoExecutor") ThreadPoolTaskExecutor storageIoExecutor) throws IOException {
+        this.storageIoExecutor = storageIoExecutor;
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        this.metaDir = this.baseDir.resolve(".meta");
+        this.publicUrl = publicUrl.endsWith("/") ? publicUrl.substring(0, publicUrl.length() - 1) : publicUrl;
+        Files.createDirectories(this.metaDir);
+    }
+
+    @Override
+    public void put(String key, InputStream inputStream, long contentLength, String contentType)
+            throws IOException {
+        Path target = resolve(key);
+        // Ghi ra file tạm rồi đổi tên để người đọc không thấy file đang ghi dở
+        Path temp = Files.createTempFile(baseDir, ".upload-", ".part");
+        try {
+            long written = Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (written != contentLength) {
+                throw new IOException("Kích thước file không khớp: mong đợi " + contentLength + ", nhận " + written);
+            }
+            Files.writeString(metaDir.resolve(key), contentType != null ? contentType : DEFAULT_CONTENT_TYPE,
+                    StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, InputStream inputStream, long contentLength,
+            String contentType) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    put(key, inputStream, contentLength, contentType);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, storageIoExecutor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+            Files.deleteIfExists(metaDir.resolve(key));
+        } catch (IOException e) {
+            throw new IllegalStateException("Không thể xóa file " + key, e);
+        }
+    }
+
+    @Override
+    public String toUrl(String key) {
+        return publicUrl + "/" + key;
+    }
+
+    /**
+     * Đường dẫn của key trên ổ đĩa, từ chối key có thể thoát ra ngoài thư mục gốc
+     */
+    public Path resolve(String key) {
+        if (key == null || key.isBlank() || key.startsWith(".") || key.contains("/") || key.contains("\\")
+                || key.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Key không hợp lệ: " + key);
+        }
+        Path path = baseDir.resolve(key).normalize();
+        if (!path.getParent().equals(baseDir)) {
+            throw new IllegalArgumentException("Key không hợp lệ: " + key);
+        }
+        return path;
+    }
+
+    public String contentType(String key) throws IOException {
+        Path meta = metaDir.resolve(key);
+        if (Files.isRegularFile(meta)) {
+            return Files.readString(meta, StandardCharsets.UTF_8).trim();
+        }
+        String probed = Files.probeContentType(resolve(key));
+        return probed != null ? probed : DEFAULT_CONTENT_TYPE;
+    }
+}
@@ -0,0 +1,454 @@
+package com.chatapp.service;
+
+import com.chatapp.enums.SearchSortOrder;
+import com.chatapp.exception.BadRequestException;
+import com.chatapp.model.Message;
+import com.chatapp.repository.MessageRepository;
+import com.chatapp.repository.MessageRepository.MessageIndexRow;
+import com.chatapp.util.AppConstants;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chỉ mục toàn văn cho tin nhắn, dùng Lucene nhúng thay cho LIKE '%...%'.
+ * Nội dung được tách từ, chuyển chữ thường và bỏ dấu (ASCIIFolding) nên "chao" khớp "chào", "đi" khớp "di".
+ * Chỉ mục được cập nhật sau khi transaction commit (MessageIndexEventListener);
+ * searcher làm mới định kỳ nên tin nhắn mới có trong kết quả sau tối đa search.refresh-interval-ms.
+ * Chỉ mục nằm trên đĩa cục bộ của từng instance.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchService.class);
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_ID_SORT = "idSort";
+    private static final String FIELD_CONVERSATION = "conversationId";
+    private static final String FIELD_SENDER = "senderId";
+    private static final String FIELD_CREATED_AT = "createdAt";
+    private static final String FIELD_CONTENT = "content";
+
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final float EXACT_TERM_BOOST = 2f;
+
+    private static final Sort NEWEST_SORT = new Sort(
+            new SortField(FIELD_CREATED_AT, SortField.Type.LONG, true),
+            new SortField(FIELD_ID_SORT, SortField.Type.LONG, true));
+    private static final Sort RELEVANCE_SORT = new Sort(
+            SortField.FIELD_SCORE,
+            new SortField(FIELD_CREATED_AT, SortField.Type.LONG, true),
+            new SortField(FIELD_ID_SORT, SortField.Type.LONG, true));
+
+    /**
+     * Một trang kết quả: id tin nhắn theo đúng thứ tự xếp hạng và cursor cho trang tiếp theo
+     * (null nếu đã hết kết quả)
+     */
+    public record SearchResult(List<Long> messageIds, long totalHits, String nextCursor) {
+    }
+
+    private final MessageRepository messageRepository;
+    private final Analyzer analyzer = new FoldingAnalyzer();
+    private final Directory directory;
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+
+    // false cho tới khi đồng bộ xong với database lúc khởi động
+    private volatile boolean ready;
+
+    @Value("${search.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    @Value("${search.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public MessageSearchService(MessageRepository messageRepository,
+            @Value("${search.index-dir:./data/search-index}") String indexDir) throws IOException {
+        this.messageRepository = messageRepository;
+
+        Path path = Paths.get(indexDir).toAbsolutePath().normalize();
+        Files.createDirectories(path);
+        this.directory = FSDirectory.open(path);
+
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.indexWriter = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(indexWriter, null);
+    }
+
+    /**
+     * Chỉ mục đã sẵn sàng để truy vấn. Trong lúc đang dựng lại, bên gọi nên dùng truy vấn database.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Đồng bộ chỉ mục với database trên luồng nền: dựng lại toàn bộ nếu được yêu cầu,
+     * nếu không thì chỉ bổ sung các tin nhắn có id lớn hơn id lớn nhất đã có trong chỉ mục
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void synchronizeOnStartup() {
+        Thread thread = new Thread(this::synchronize, "message-index-sync");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void synchronize() {
+        try {
+            long afterId;
+            if (rebuildOnStartup) {
+                indexWriter.deleteAll();
+                afterId = 0;
+            } else {
+                afterId = maxIndexedId();
+            }
+
+            long indexed = 0;
+            List<MessageIndexRow> rows;
+            do {
+                rows = messageRepository.findIndexRowsAfter(afterId, PageRequest.of(0, rebuildBatchSize));
+                for (MessageIndexRow row : rows) {
+                    index(row.getMessageId(), row.getConversationId(), row.getSenderId(), row.getContent(),
+                            row.getCreatedAt());
+                    afterId = row.getMessageId();
+                }
+                indexed += rows.size();
+            } while (rows.size() == rebuildBatchSize);
+
+            indexWriter.commit();
+            searcherManager.maybeRefresh();
+            ready = true;
+            logger.info("Chỉ mục tìm kiếm tin nhắn sẵn sàng, đã đồng bộ {} tin nhắn", indexed);
+        } catch (Exception e) {
+            logger.error("Không thể đồng bộ chỉ mục tìm kiếm, tiếp tục dùng truy vấn database", e);
+        }
+    }
+
+    /**
+     * Thêm hoặc cập nhật tin nhắn trong chỉ mục. Tin nhắn đã thu hồi bị gỡ khỏi chỉ mục.
+     */
+    public void indexMessage(Message message) {
+        try {
+            index(message.getMessageId(),
+                    message.getConversation() != null ? message.getConversation().getId() : null,
+                    message.getSender() != null ? message.getSender().getUserId() : null,
+                    message.getContent(),
+                    message.getCreatedAt());
+        } catch (IOException | AlreadyClosedException e) {
+            logger.warn("Không thể cập nhật chỉ mục cho tin nhắn {}: {}", message.getMessageId(), e.getMessage());
+        }
+    }
+
+    public void removeMessage(Long messageId) {
+        try {
+            indexWriter.deleteDocuments(new Term(FIELD_ID, messageId.toString()));
+        } catch (IOException | AlreadyClosedException e) {
+            logger.warn("Không thể xóa tin nhắn {} khỏi chỉ mục: {}", messageId, e.getMessage());
+        }
+    }
+
+    /**
+     * Tìm tin nhắn trong các cuộc trò chuyện cho trước.
+     * Có cursor thì lấy trang tiếp theo bằng searchAfter (chi phí không phụ thuộc độ sâu trang),
+     * nếu không thì lấy trang thứ page.
+     *
+     * @param conversationIds    Phạm vi tìm kiếm, thường là các cuộc trò chuyện người dùng đang tham gia
+     * @param excludedMessageIds Tin nhắn người dùng đã xóa phía mình, bị loại ngay trong truy vấn
+     *                           để mỗi trang luôn đủ kích thước
+     * @param sortOrder          RELEVANCE chỉ có tác dụng khi có từ khóa, ngược lại luôn xếp mới nhất trước
+     */
+    public SearchResult search(Collection<Long> conversationIds, Collection<Long> excludedMessageIds,
+            String searchTerm, Long senderId, LocalDateTime startDate, LocalDateTime endDate,
+            SearchSortOrder sortOrder, String cursor, int page, int size) throws IOException {
+        if (conversationIds.isEmpty() || size <= 0) {
+            return new SearchResult(List.of(), 0, null);
+        }
+
+        boolean byRelevance = sortOrder == SearchSortOrder.RELEVANCE && searchTerm != null
+                && !searchTerm.isBlank();
+        Sort sort = byRelevance ? RELEVANCE_SORT : NEWEST_SORT;
+        Query query = buildQuery(conversationIds, excludedMessageIds, searchTerm, senderId, startDate, endDate);
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            ScoreDoc[] hits;
+            TopFieldDocs topDocs;
+            if (cursor != null && !cursor.isBlank()) {
+                topDocs = searcher.searchAfter(decodeCursor(cursor, byRelevance), query, size, sort, byRelevance);
+                hits = topDocs.scoreDocs;
+            } else {
+                int offset = Math.max(0, page) * size;
+                topDocs = searcher.search(query, offset + size, sort, byRelevance);
+                ScoreDoc[] all = topDocs.scoreDocs;
+                hits = offset >= all.length ? new ScoreDoc[0] : Arrays.copyOfRange(all, offset, all.length);
+            }
+
+            StoredFields storedFields = searcher.storedFields();
+            List<Long> messageIds = new ArrayList<>(hits.length);
+            for (ScoreDoc hit : hits) {
+                messageIds.add(Long.parseLong(storedFields.document(hit.doc, Set.of(FIELD_ID)).get(FIELD_ID)));
+            }
+
+            String nextCursor = hits.length == size ? encodeCursor((FieldDoc) hits[hits.length - 1], byRelevance)
+                    : null;
+            return new SearchResult(messageIds, topDocs.totalHits.value, nextCursor);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.refresh-interval-ms:1000}")
+    public void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException | AlreadyClosedException e) {
+            logger.warn("Không thể làm mới searcher: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.commit-interval-ms:30000}")
+    public void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (IOException | AlreadyClosedException e) {
+            logger.warn("Không thể commit chỉ mục tìm kiếm: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        indexWriter.close();
+        directory.close();
+    }
+
+    private void index(Long messageId, Long conversationId, Long senderId, String content,
+            LocalDateTime createdAt) throws IOException {
+        Term idTerm = new Term(FIELD_ID, messageId.toString());
+        if (conversationId == null || content == null || content.isBlank()
+                || AppConstants.RECALLED_MESSAGE_CONTENT.equalsIgnoreCase(content)) {
+            indexWriter.deleteDocuments(idTerm);
+            return;
+        }
+
+        long createdAtMillis = toMillis(createdAt != null ? createdAt : LocalDateTime.now());
+
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, messageId.toString(), Field.Store.YES));
+        document.add(new NumericDocValuesField(FIELD_ID_SORT, messageId));
+        document.add(new LongPoint(FIELD_CONVERSATION, conversationId));
+        if (senderId != null) {
+            document.add(new LongPoint(FIELD_SENDER, senderId));
+        }
+        document.add(new LongPoint(FIELD_CREATED_AT, createdAtMillis));
+        document.add(new NumericDocValuesField(FIELD_CREATED_AT, createdAtMillis));
+        document.add(new TextField(FIELD_CONTENT, content, Field.Store.NO));
+        indexWriter.updateDocument(idTerm, document);
+    }
+
+    private Query buildQuery(Collection<Long> conversationIds, Collection<Long> excludedMessageIds,
+            String searchTerm, Long senderId, LocalDateTime startDate, LocalDateTime endDate) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(LongPoint.newSetQuery(FIELD_CONVERSATION, conversationIds), BooleanClause.Occur.FILTER);
+        if (!excludedMessageIds.isEmpty()) {
+            List<BytesRef> excludedIds = new ArrayList<>(excludedMessageIds.size());
+            for (Long messageId : excludedMessageIds) {
+                excludedIds.add(new BytesRef(messageId.toString()));
+            }
+            builder.add(new TermInSetQuery(FIELD_ID, excludedIds), BooleanClause.Occur.MUST_NOT);
+        }
+        if (senderId != null) {
+            builder.add(LongPoint.newExactQuery(FIELD_SENDER, senderId), BooleanClause.Occur.FILTER);
+        }
+        if (startDate != null || endDate != null) {
+            builder.add(LongPoint.newRangeQuery(FIELD_CREATED_AT,
+                    startDate != null ? toMillis(startDate) : Long.MIN_VALUE,
+                    endDate != null ? toMillis(endDate) : Long.MAX_VALUE), BooleanClause.Occur.FILTER);
+        }
+
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return builder.build();
+        }
+
+        List<String> terms = analyze(searchTerm);
+        if (terms.isEmpty()) {
+            // Từ khóa chỉ có dấu câu
+            return new MatchNoDocsQuery();
+        }
+
+        // Mỗi từ phải xuất hiện, khớp nguyên từ được điểm cao hơn khớp tiền tố
+        for (String term : terms) {
+            BooleanQuery.Builder termQuery = new BooleanQuery.Builder();
+            termQuery.add(new BoostQuery(new TermQuery(new Term(FIELD_CONTENT, term)), EXACT_TERM_BOOST),
+                    BooleanClause.Occur.SHOULD);
+            if (term.length() >= MIN_PREFIX_LENGTH) {
+                termQuery.add(new PrefixQuery(new Term(FIELD_CONTENT, term)), BooleanClause.Occur.SHOULD);
+            }
+            builder.add(termQuery.build(), BooleanClause.Occur.MUST);
+        }
+        // Đúng cụm từ thì xếp lên trước
+        if (terms.size() > 1) {
+            builder.add(new PhraseQuery(FIELD_CONTENT, terms.toArray(new String[0])), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(FIELD_CONTENT, text)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken() && terms.size() < MAX_QUERY_TERMS) {
+                terms.add(termAttribute.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    private long maxIndexedId() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopFieldDocs topDocs = searcher.search(new MatchAllDocsQuery(), 1,
+                    new Sort(new SortField(FIELD_ID_SORT, SortField.Type.LONG, true)));
+            if (topDocs.scoreDocs.length == 0) {
+                return 0;
+            }
+            return (Long) ((FieldDoc) topDocs.scoreDocs[0]).fields[0];
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Cursor là giá trị các trường sắp xếp của kết quả cuối trang, mã hóa base64 URL-safe
+     */
+    private static String encodeCursor(FieldDoc last, boolean byRelevance) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < last.fields.length; i++) {
+            if (i > 0) {
+                value.append(',');
+            }
+            value.append(last.fields[i]);
+        }
+        String prefix = byRelevance ? "r:" : "n:";
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((prefix + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static FieldDoc decodeCursor(String cursor, boolean byRelevance) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String prefix = byRelevance ? "r:" : "n:";
+            if (!value.startsWith(prefix)) {
+                throw new IllegalArgumentException("Sai kiểu sắp xếp");
+            }
+            String[] parts = value.substring(prefix.length()).split(",");
+            Object[] fields;
+            if (byRelevance) {
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Sai số trường");
+                }
+                fields = new Object[] { Float.parseFloat(parts[0]), Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2]) };
+            } else {
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Sai số trường");
+                }
+                fields = new Object[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+            }
+            // Các trường sắp xếp đã duy nhất theo id nên docId chỉ cần lớn nhất để không loại nhầm kết quả
+            float score = byRelevance ? (Float) fields[0] : Float.NaN;
+            return new FieldDoc(Integer.MAX_VALUE, score, fields);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Cursor tìm kiếm không hợp lệ");
+        }
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Tách từ theo Unicode, chuyển chữ thường rồi bỏ dấu để tìm kiếm không phân biệt dấu tiếng Việt
+     */
+    private static final class FoldingAnalyzer extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            StandardTokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new LowerCaseFilter(tokenizer);
+            stream = new ASCIIFoldingFilter(stream);
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+        }
+    }
+}
@@ -29,6 +29,7 @@ public class MessageService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final UserMessagingService userMessagingService;
 
     /**
      * Constructor để dependency injection
@@ -40,15 +41,17 @@ public class MessageService {
      * @param groupMemberRepository Repository xử lý thao tác với database của
      *                              GroupMember
      * @param messagingTemplate     Template để gửi tin nhắn WebSocket
+     * @param userMessagingService  Service gửi tin nhắn WebSocket tới từng user
      */
     public MessageService(MessageRepository messageRepository, UserRepository userRepository,
             GroupRepository groupRepository, GroupMemberRepository groupMemberRepository,
-            SimpMessagingTemplate messagingTemplate) {
+            SimpMessagingTemplate messagingTemplate, UserMessagingService userMessagingService) {
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
         this.groupRepository = groupRepository;
         this.groupMemberRepository = groupMemberRepository;
         this.messagingTemplate = messagingTemplate;
+        this.userMessagingService = userMessagingService;
     }
 
     /**
@@ -196,8 +199,8 @@ public class MessageService {
                     "/topic/group/" + message.getGroup().getGroupId() + "/update",
                     updatedMessageDto);
         } else if (message.getReceiver() != null) {
-            messagingTemplate.convertAndSendToUser(
-                    message.getReceiver().getPhone(),
+            userMessagingService.sendToUser(
+                    message.getReceiver().getUserId(),
                     "/queue/messages/update",
                     updatedMessageDto);
         }
@@ -230,8 +233,8 @@ public class MessageService {
                     "/topic/group/" + message.getGroup().getGroupId() + "/delete",
                     messageId);
         } else if (message.getReceiver() != null) {
-            messagingTemplate.convertAndSendToUser(
-                    message.getReceiver().getPhone(),
+            userMessagingService.sendToUser(
+                    message.getReceiver().getUserId(),
                     "/queue/messages/delete",
                     messageId);
         }
@@ -0,0 +1,210 @@
+package com.chatapp.service;
+
+import com.chatapp.enums.UserStatus;
+import com.chatapp.model.Friend;
+import com.chatapp.model.User;
+import com.chatapp.repository.FriendRepository;
+import com.chatapp.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quản lý trạng thái online của user trong bộ nhớ.
+ * Mỗi user có thể kết nối từ nhiều thiết bị; trạng thái chỉ đổi khi thiết bị đầu tiên
+ * kết nối hoặc thiết bị cuối cùng ngắt kết nối, và chỉ được gửi tới bạn bè của user.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    public static final String PRESENCE_DESTINATION = "/queue/presence";
+
+    private final UserRepository userRepository;
+    private final FriendRepository friendRepository;
+    private final UserSessionRegistry sessionRegistry;
+    private final UserMessagingService userMessagingService;
+
+    // Các user đã được thông báo online tới bạn bè
+    private final Set<Long> announcedOnline = ConcurrentHashMap.newKeySet();
+    // userId -> tác vụ báo offline đang chờ (chống nhấp nháy khi kết nối lại nhanh)
+    private final Map<Long, ScheduledFuture<?>> pendingOffline = new ConcurrentHashMap<>();
+    // userId -> trạng thái chưa được ghi xuống database
+    private final Map<Long, UserStatus> pendingWrites = new ConcurrentHashMap<>();
+
+    // Mọi thay đổi trạng thái chạy tuần tự trên một luồng để giữ đúng thứ tự connect/disconnect
+    private final ScheduledExecutorService presenceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "presence-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    public PresenceService(UserRepository userRepository, FriendRepository friendRepository,
+            UserSessionRegistry sessionRegistry, UserMessagingService userMessagingService) {
+        this.userRepository = userRepository;
+        this.friendRepository = friendRepository;
+        this.sessionRegistry = sessionRegistry;
+        this.userMessagingService = userMessagingService;
+    }
+
+    /**
+     * Gọi khi user có thêm một phiên STOMP; chỉ thông báo online ở thiết bị đầu tiên
+     */
+    public void onUserConnected(Long userId) {
+        submit(() -> {
+            ScheduledFuture<?> offlineTask = pendingOffline.remove(userId);
+            if (offlineTask != null) {
+                // Kết nối lại trong thời gian chờ, bạn bè chưa từng thấy user offline
+                offlineTask.cancel(false);
+            }
+            if (announcedOnline.add(userId)) {
+                changeStatus(userId, UserStatus.ONLINE);
+            }
+        });
+    }
+
+    /**
+     * Gọi khi một phiên của user ngắt kết nối; chỉ báo offline khi không còn thiết bị nào
+     * sau thời gian chờ
+     */
+    public void onUserDisconnected(Long userId) {
+        submit(() -> {
+            if (sessionRegistry.isOnline(userId) || pendingOffline.containsKey(userId)) {
+                return;
+            }
+            ScheduledFuture<?> offlineTask = presenceExecutor.schedule(() -> {
+                pendingOffline.remove(userId);
+                if (!sessionRegistry.isOnline(userId) && announcedOnline.remove(userId)) {
+                    changeStatus(userId, UserStatus.OFFLINE);
+                }
+            }, offlineGraceMs, TimeUnit.MILLISECONDS);
+            pendingOffline.put(userId, offlineTask);
+        });
+    }
+
+    /**
+     * Kiểm tra user có đang online trên ít nhất một thiết bị
+     */
+    public boolean isOnline(Long userId) {
+        return announcedOnline.contains(userId);
+    }
+
+    /**
+     * Số thiết bị đang kết nối của user
+     */
+    public int getOnlineDeviceCount(Long userId) {
+        return sessionRegistry.getDeviceCount(userId);
+    }
+
+    /**
+     * Ghi trạng thái và thời điểm truy cập cuối xuống database theo lô
+     */
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:15000}")
+    @Transactional
+    public void flushPendingWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        List<Long> online = new ArrayList<>();
+        List<Long> offline = new ArrayList<>();
+        for (Map.Entry<Long, UserStatus> entry : pendingWrites.entrySet()) {
+            if (pendingWrites.remove(entry.getKey(), entry.getValue())) {
+                (entry.getValue() == UserStatus.ONLINE ? online : offline).add(entry.getKey());
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (!online.isEmpty()) {
+            userRepository.updatePresence(online, UserStatus.ONLINE, now);
+        }
+        if (!offline.isEmpty()) {
+            userRepository.updatePresence(offline, UserStatus.OFFLINE, now);
+        }
+        logger.debug("Đã lưu trạng thái của {} user online và {} user offline", online.size(), offline.size());
+    }
+
+    /**
+     * Node tắt thì mọi phiên trên node đều sẽ đóng: báo offline ngay cho các user đang online
+     * (không chờ offline-grace-ms) và ghi lô cuối xuống database trước khi dừng executor.
+     * Chạy khi context bắt đầu đóng, lúc broker còn hoạt động nên bạn bè vẫn nhận được thông báo.
+     */
+    @EventListener(ContextClosedEvent.class)
+    @Transactional
+    public void flushOnShutdown() {
+        // Bỏ các thay đổi còn xếp hàng và các tác vụ báo offline đang chờ, chúng được xử lý ngay dưới đây
+        presenceExecutor.shutdownNow();
+        try {
+            if (!presenceExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("presence-worker chưa dừng sau 5 giây, vẫn ghi trạng thái cuối");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pendingOffline.clear();
+
+        for (Long userId : List.copyOf(announcedOnline)) {
+            if (announcedOnline.remove(userId)) {
+                changeStatus(userId, UserStatus.OFFLINE);
+            }
+        }
+        flushPendingWrites();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        presenceExecutor.shutdownNow();
+    }
+
+    private void submit(Runnable task) {
+        try {
+            presenceExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Đang tắt, flushOnShutdown đã báo offline cho mọi user
+            logger.debug("Bỏ qua thay đổi trạng thái khi đang tắt");
+        }
+    }
+
+    private void changeStatus(Long userId, UserStatus status) {
+        pendingWrites.put(userId, status);
+
+        try {
+            Map<String, Object> payload = Map.of(
+                    "type", "PRESENCE",
+                    "userId", userId,
+                    "status", status.name(),
+                    "lastSeen", LocalDateTime.now().toString());
+
+            for (Friend friendship : friendRepository.findAcceptedFriendshipsByUserId(userId)) {
+                User friend = friendship.getUser1().getUserId().equals(userId)
+                        ? friendship.getUser2()
+                        : friendship.getUser1();
+                userMessagingService.sendToUser(friend.getUserId(), PRESENCE_DESTINATION, payload);
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi gửi trạng thái {} của user {}: {}", status, userId, e.getMessage());
+        }
+    }
+}
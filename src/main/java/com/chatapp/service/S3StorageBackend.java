@@ -0,0 +1,251 @@
+package com.chatapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lưu trữ trên S3.
+ * Upload đọc trực tiếp từ InputStream, không nạp toàn bộ file vào heap.
+ * File nhỏ dùng một lệnh PutObject; file lớn hơn ngưỡng dùng multipart upload,
+ * mỗi part đọc vào một buffer lấy từ pool kích thước cố định nên bộ nhớ dùng cho upload luôn bị chặn trên.
+ * Khi bật storage.s3.async.enabled, putAsync dùng S3AsyncClient trên event loop riêng;
+ * nếu không thì chạy bản đồng bộ trên storageIoExecutor.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3StorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    // S3 yêu cầu mỗi part (trừ part cuối) tối thiểu 5MB
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    // null khi không bật client bất đồng bộ
+    private final S3AsyncClient s3AsyncClient;
+    private final ThreadPoolTaskExecutor storageIoExecutor;
+    private final int partSize;
+    private final long multipartThreshold;
+    private final BlockingQueue<byte[]> bufferPool;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    public S3StorageBackend(S3Client s3Client,
+            ObjectProvider<S3AsyncClient> s3AsyncClient,
+            @Qualifier("storageIoExecutor") ThreadPoolTaskExecutor storageIoExecutor,
+            @Value("${storage.upload.part-size:5242880}") int partSize,
+            @Value("${storage.upload.multipart-threshold:8388608}") long multipartThreshold,
+            @Value("${storage.upload.buffer-pool-size:8}") int bufferPoolSize) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient.getIfAvailable();
+        this.storageIoExecutor = storageIoExecutor;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        this.multipartThreshold = Math.max(multipartThreshold, this.partSize);
+        // Buffer được cấp phát dần khi cần, pool chỉ giới hạn số buffer tồn tại cùng lúc
+        this.bufferPool = new ArrayBlockingQueue<>(bufferPoolSize);
+        for (int i = 0; i < bufferPoolSize; i++) {
+            bufferPool.add(new byte[0]);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream inputStream, long contentLength, String contentType)
+            throws IOException {
+        if (contentLength <= multipartThreshold) {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .cacheControl(IMMUTABLE_CACHE_CONTROL)
+                    .contentLength(contentLength)
+                    .build();
+
+            s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(inputStream, contentLength));
+            return;
+        }
+
+        uploadMultipart(key, inputStream, contentType);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, InputStream inputStream, long contentLength,
+            String contentType) {
+        if (s3AsyncClient == null) {
+            try {
+                return CompletableFuture.runAsync(() -> {
+                    try {
+                        put(key, inputStream, contentLength, contentType);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, storageIoExecutor);
+            } catch (TaskRejectedException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .cacheControl(IMMUTABLE_CACHE_CONTROL)
+                .contentLength(contentLength)
+                .build();
+
+        // Stream được đọc trên storageIoExecutor, chờ mạng không giữ luồng nào.
+        // SDK hoàn tất future trên executor riêng của nó nên bên gọi có thể nối thêm
+        // việc chặn (ví dụ ghi DB) mà không chiếm event loop.
+        return s3AsyncClient.putObject(putObjectRequest,
+                AsyncRequestBody.fromInputStream(inputStream, contentLength,
+                        storageIoExecutor.getThreadPoolExecutor()))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public InputStream open(String key) {
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public boolean exists(String key) {
+        try {
+            s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public String toUrl(String key) {
+        return String.format("https://%s.s3.amazonaws.com/%s", bucketName, key);
+    }
+
+    private void uploadMultipart(String key, InputStream inputStream, String contentType) throws IOException {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .cacheControl(IMMUTABLE_CACHE_CONTROL)
+                .build())
+                .uploadId();
+
+        byte[] buffer = borrowBuffer();
+        try {
+            List<CompletedPart> completedParts = new ArrayList<>();
+            int partNumber = 1;
+            int read;
+            while ((read = inputStream.readNBytes(buffer, 0, partSize)) > 0) {
+                int length = read;
+                UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) length)
+                        .build(),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length),
+                                length, contentType));
+
+                completedParts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build());
+                partNumber++;
+            }
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+
+        } catch (IOException | RuntimeException e) {
+            abort(key, uploadId);
+            throw e;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            logger.warn("Không thể hủy multipart upload {} của {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private byte[] borrowBuffer() throws IOException {
+        try {
+            byte[] buffer = bufferPool.take();
+            return buffer.length == partSize ? buffer : new byte[partSize];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bị gián đoạn khi chờ buffer upload", e);
+        }
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        bufferPool.offer(buffer);
+    }
+}
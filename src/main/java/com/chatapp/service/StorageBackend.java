@@ -0,0 +1,51 @@
+package com.chatapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Nơi lưu trữ file của ứng dụng.
+ * Chọn bằng thuộc tính storage.backend: "s3" (mặc định) hoặc "local" cho triển khai không có S3.
+ * Key là tên phẳng, không chứa dấu "/"; URL công khai luôn kết thúc bằng key.
+ */
+public interface StorageBackend {
+
+    /**
+     * Key không bao giờ được dùng lại cho nội dung khác (hash nội dung hoặc UUID)
+     * nên client và CDN có thể cache vĩnh viễn
+     */
+    String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * Ghi nội dung từ stream với độ dài đã biết, ghi đè nếu key đã tồn tại
+     */
+    void put(String key, InputStream inputStream, long contentLength, String contentType) throws IOException;
+
+    /**
+     * Ghi bất đồng bộ, không giữ luồng của request trong lúc chờ.
+     * Bên gọi chịu trách nhiệm đóng stream sau khi future hoàn tất.
+     */
+    CompletableFuture<Void> putAsync(String key, InputStream inputStream, long contentLength, String contentType);
+
+    /**
+     * Mở stream đọc nội dung của key
+     */
+    InputStream open(String key) throws IOException;
+
+    boolean exists(String key);
+
+    void delete(String key);
+
+    /**
+     * URL mà client dùng để tải file
+     */
+    String toUrl(String key);
+
+    /**
+     * Lấy lại key từ URL đã lưu
+     */
+    default String toKey(String url) {
+        return url.substring(url.lastIndexOf("/") + 1);
+    }
+}
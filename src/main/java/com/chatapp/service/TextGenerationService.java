@@ -1,8 +1,7 @@
 package com.chatapp.service;
 
+import com.chatapp.exception.AiOverloadedException;
 import com.google.common.collect.ImmutableList;
-import com.google.genai.Client;
-import com.google.genai.ResponseStream;
 import com.google.genai.types.*;
 import jakarta.annotation.Nullable;
 import org.slf4j.Logger;
@@ -15,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Service chịu trách nhiệm tạo văn bản sử dụng mô hình Gemini AI của Google.
@@ -29,19 +29,23 @@ public class TextGenerationService {
     private static final Logger logger = LoggerFactory.getLogger(TextGenerationService.class);
 
     private final String textGenerationModel = "gemini-2.0-flash";
-    private final Client genaiClient;
+    private final GenAiGateway genAiGateway;
+    private final TextResponseCache responseCache;
 
     /**
      * Khởi tạo TextGenerationService với các dependency cần thiết.
      *
-     * @param genaiClient Google GenAI client để giao tiếp với API
+     * @param genAiGateway  Gateway tới Google GenAI client để giao tiếp với API
+     * @param responseCache Cache phản hồi cho các prompt giống nhau
      */
-    public TextGenerationService(Client genaiClient) {
-        this.genaiClient = genaiClient;
+    public TextGenerationService(GenAiGateway genAiGateway, TextResponseCache responseCache) {
+        this.genAiGateway = genAiGateway;
+        this.responseCache = responseCache;
     }
 
     /**
      * Tạo nội dung văn bản dựa trên prompt với cấu hình tùy chọn.
+     * Kết quả được cache theo prompt đã chuẩn hóa và cấu hình.
      *
      * @param prompt Prompt văn bản để tạo
      * @param config Cấu hình tùy chọn cho việc tạo (có thể null)
@@ -49,15 +53,17 @@ public class TextGenerationService {
      */
     public String generateText(String prompt, @Nullable GenerateContentConfig config) {
         try {
-            GenerateContentResponse response = genaiClient.models.generateContent(
+            String cacheKey = TextResponseCache.buildKey(textGenerationModel, prompt, config);
+            String generatedText = responseCache.get(cacheKey, () -> genAiGateway.generateContent(
                     textGenerationModel,
                     prompt,
-                    config);
+                    config).text());
 
-            String generatedText = response.text();
             logger.info("Tạo văn bản thành công với {} ký tự", generatedText.length());
             return generatedText;
 
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Lỗi khi tạo văn bản: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể tạo văn bản: " + e.getMessage(), e);
@@ -96,7 +102,7 @@ public class TextGenerationService {
 
             Content content = Content.builder().parts(parts).build();
 
-            GenerateContentResponse response = genaiClient.models.generateContent(
+            GenerateContentResponse response = genAiGateway.generateContent(
                     textGenerationModel,
                     content,
                     config);
@@ -105,6 +111,8 @@ public class TextGenerationService {
             logger.info("Tạo văn bản đa phương tiện thành công với {} ký tự", generatedText.length());
             return generatedText;
 
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Lỗi khi tạo văn bản đa phương tiện: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể tạo văn bản đa phương tiện: " + e.getMessage(), e);
@@ -119,13 +127,17 @@ public class TextGenerationService {
      * @return CompletableFuture chứa văn bản được tạo
      */
     public CompletableFuture<String> generateTextAsync(String prompt, @Nullable GenerateContentConfig config) {
-        return genaiClient.async.models.generateContent(textGenerationModel, prompt, config)
+        return genAiGateway.generateContentAsync(textGenerationModel, prompt, config)
                 .thenApply(response -> {
                     String generatedText = response.text();
                     logger.info("Tạo văn bản bất đồng bộ thành công với {} ký tự", generatedText.length());
                     return generatedText;
                 })
                 .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof AiOverloadedException overloaded) {
+                        throw overloaded;
+                    }
                     logger.error("Lỗi trong việc tạo văn bản bất đồng bộ: {}", throwable.getMessage(), throwable);
                     throw new RuntimeException("Không thể tạo văn bản bất đồng bộ: " + throwable.getMessage(),
                             throwable);
@@ -137,18 +149,39 @@ public class TextGenerationService {
      *
      * @param prompt Prompt văn bản để tạo
      * @param config Cấu hình tùy chọn cho việc tạo
-     * @return ResponseStream để streaming các đoạn văn bản
+     * @return GenAiStream để streaming các đoạn văn bản
      */
-    public ResponseStream<GenerateContentResponse> generateTextStream(String prompt,
+    public GenAiStream generateTextStream(String prompt,
             @Nullable GenerateContentConfig config) {
         try {
-            return genaiClient.models.generateContentStream(textGenerationModel, prompt, config);
+            return genAiGateway.generateContentStream(textGenerationModel, prompt, config);
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Lỗi khi tạo luồng văn bản: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể tạo luồng văn bản: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Tạo nội dung văn bản streaming từ hội thoại nhiều lượt.
+     *
+     * @param contents Các lượt hội thoại (role "user"/"model") theo thứ tự thời gian
+     * @param config   Cấu hình tùy chọn cho việc tạo
+     * @return GenAiStream để streaming các đoạn văn bản
+     */
+    public GenAiStream generateTextStream(List<Content> contents,
+            @Nullable GenerateContentConfig config) {
+        try {
+            return genAiGateway.generateContentStream(textGenerationModel, contents, config);
+        } catch (AiOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Lỗi khi tạo luồng văn bản từ hội thoại: {}", e.getMessage(), e);
+            throw new RuntimeException("Không thể tạo luồng văn bản: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Tạo văn bản với cấu hình nâng cao bao gồm hướng dẫn hệ thống,
      * cài đặt an toàn và schema phản hồi.
@@ -166,34 +199,53 @@ public class TextGenerationService {
             @Nullable Double temperature,
             @Nullable List<SafetySetting> safetySettings) {
         try {
-            GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder()
-                    .candidateCount(1);
+            GenerateContentConfig config = buildAdvancedConfig(systemInstruction, maxTokens, temperature,
+                    safetySettings);
 
-            if (maxTokens != null) {
-                configBuilder.maxOutputTokens(maxTokens);
-            }
+            return generateText(prompt, config);
 
-            if (temperature != null) {
-                configBuilder.temperature(temperature.floatValue());
-            }
+        } catch (AiOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Lỗi khi tạo văn bản với cấu hình nâng cao: {}", e.getMessage(), e);
+            throw new RuntimeException("Không thể tạo văn bản với cấu hình nâng cao: " + e.getMessage(), e);
+        }
+    }
 
-            if (systemInstruction != null) {
-                Content sysInstruction = Content.fromParts(Part.fromText(systemInstruction));
-                configBuilder.systemInstruction(sysInstruction);
-            }
+    /**
+     * Tạo cấu hình nâng cao, dùng chung cho cả lời gọi thường và streaming.
+     *
+     * @param systemInstruction Hướng dẫn hệ thống tùy chọn để định hướng mô hình
+     * @param maxTokens         Số token đầu ra tối đa
+     * @param temperature       Nhiệt độ cho độ ngẫu nhiên (0.0-2.0)
+     * @param safetySettings    Cài đặt an toàn tùy chọn
+     * @return Instance của GenerateContentConfig
+     */
+    public GenerateContentConfig buildAdvancedConfig(@Nullable String systemInstruction,
+            @Nullable Integer maxTokens,
+            @Nullable Double temperature,
+            @Nullable List<SafetySetting> safetySettings) {
+        GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder()
+                .candidateCount(1);
 
-            if (safetySettings != null && !safetySettings.isEmpty()) {
-                configBuilder.safetySettings(safetySettings);
-            }
+        if (maxTokens != null) {
+            configBuilder.maxOutputTokens(maxTokens);
+        }
 
-            GenerateContentConfig config = configBuilder.build();
+        if (temperature != null) {
+            configBuilder.temperature(temperature.floatValue());
+        }
 
-            return generateText(prompt, config);
+        if (systemInstruction != null) {
+            Content sysInstruction = Content.fromParts(Part.fromText(systemInstruction));
+            configBuilder.systemInstruction(sysInstruction);
+        }
 
-        } catch (Exception e) {
-            logger.error("Lỗi khi tạo văn bản với cấu hình nâng cao: {}", e.getMessage(), e);
-            throw new RuntimeException("Không thể tạo văn bản với cấu hình nâng cao: " + e.getMessage(), e);
+        if (safetySettings != null && !safetySettings.isEmpty()) {
+            configBuilder.safetySettings(safetySettings);
         }
+
+        return configBuilder.build();
     }
 
     /**
@@ -213,6 +265,8 @@ public class TextGenerationService {
 
             return generateText(prompt, config);
 
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Lỗi khi tạo phản hồi có cấu trúc: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể tạo phản hồi có cấu trúc: " + e.getMessage(), e);
@@ -0,0 +1,176 @@
+package com.chatapp.service;
+
+import com.google.genai.types.GenerateContentConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache phản hồi văn bản của Gemini theo prompt đã chuẩn hóa và cấu hình.
+ * Giới hạn số mục (LRU) và thời gian sống; các yêu cầu giống hệt nhau đang chạy cùng lúc
+ * chỉ tạo một lời gọi upstream, các yêu cầu còn lại chờ kết quả đó.
+ */
+@Service
+public class TextResponseCache {
+
+    private record CachedText(String text, long expiresAt) {
+    }
+
+    private final Map<String, CachedText> entries;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+
+    @Value("${ai.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.cache.ttl-ms:600000}")
+    private long ttlMs;
+
+    public TextResponseCache(@Value("${ai.cache.max-entries:1000}") int maxEntries, MeterRegistry meterRegistry) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedText> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.hitCounter = Counter.builder("chatapp.ai.cache")
+                .description("Số lần tra cache phản hồi AI")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("chatapp.ai.cache")
+                .description("Số lần tra cache phản hồi AI")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("chatapp.ai.cache")
+                .description("Số lần tra cache phản hồi AI")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lấy phản hồi từ cache, hoặc gọi loader nếu chưa có.
+     * Nếu đã có yêu cầu cùng key đang chạy thì chờ kết quả của yêu cầu đó.
+     */
+    public String get(String key, Supplier<String> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String cached = lookup(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalescedCounter.increment();
+            return await(existing);
+        }
+
+        try {
+            // Yêu cầu khác có thể vừa hoàn tất giữa lần tra cache và lúc đăng ký
+            cached = lookup(key);
+            if (cached != null) {
+                hitCounter.increment();
+                call.complete(cached);
+                return cached;
+            }
+
+            missCounter.increment();
+            String text = loader.get();
+            if (text != null) {
+                store(key, text);
+            }
+            call.complete(text);
+            return text;
+        } catch (Throwable e) {
+            // Cả Error (OOM, lỗi khởi tạo SDK...) cũng phải báo cho các yêu cầu đang chờ, nếu không chúng chờ mãi
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Tạo key cache: SHA-256 của model, prompt đã chuẩn hóa và cấu hình dạng JSON
+     */
+    public static String buildKey(String model, String prompt, @Nullable GenerateContentConfig config) {
+        String normalizedPrompt = Normalizer.normalize(prompt, Normalizer.Form.NFC)
+                .trim()
+                .replaceAll("\\s+", " ");
+        String source = model + "\n" + normalizedPrompt + "\n" + (config != null ? config.toJson() : "");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+
+    /**
+     * Dọn các mục đã hết hạn
+     */
+    @Scheduled(fixedDelayString = "${ai.cache.ttl-ms:600000}")
+    public void removeExpiredEntries() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        }
+    }
+
+    private String lookup(String key) {
+        synchronized (entries) {
+            CachedText entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.text();
+        }
+    }
+
+    private void store(String key, String text) {
+        synchronized (entries) {
+            entries.put(key, new CachedText(text, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    private static String await(CompletableFuture<String> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.chatapp.service;
+
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream phản hồi Gemini tới client qua Server-Sent Events.
+ * Mỗi đoạn được gửi ngay khi nhận được; luồng worker chỉ đọc đoạn tiếp theo sau khi
+ * đoạn trước đã ghi xong xuống kết nối nên client chậm sẽ tự làm chậm upstream.
+ */
+@Service
+public class TextStreamingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextStreamingService.class);
+
+    /**
+     * Trạng thái của một stream đang chạy
+     */
+    private static final class StreamSession {
+        final SseEmitter emitter;
+        volatile GenAiStream upstream;
+        volatile boolean cancelled;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        StreamSession(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Dừng stream và đóng kết nối tới Gemini
+         */
+        void cancel() {
+            cancelled = true;
+            GenAiStream stream = upstream;
+            if (stream != null) {
+                // GenAiStream tự bỏ qua lỗi khi đóng và trả suất gọi của gateway
+                stream.close();
+            }
+        }
+    }
+
+    private final TextGenerationService textGenerationService;
+    private final ThreadPoolTaskExecutor aiStreamExecutor;
+
+    private final ScheduledExecutorService watchdogExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ai-stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${ai.stream.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    @Value("${ai.stream.max-duration-ms:300000}")
+    private long maxDurationMs;
+
+    public TextStreamingService(TextGenerationService textGenerationService,
+            @Qualifier("aiStreamExecutor") ThreadPoolTaskExecutor aiStreamExecutor) {
+        this.textGenerationService = textGenerationService;
+        this.aiStreamExecutor = aiStreamExecutor;
+    }
+
+    /**
+     * Bắt đầu stream văn bản cho prompt.
+     * Client ngắt kết nối, hết thời gian chờ hoặc lỗi đều hủy luồng Gemini phía sau.
+     *
+     * @param prompt Prompt văn bản để tạo
+     * @param config Cấu hình tùy chọn cho việc tạo
+     * @return SseEmitter phát các sự kiện "chunk", "done" hoặc "error"
+     */
+    public SseEmitter stream(String prompt, GenerateContentConfig config) {
+        SseEmitter emitter = new SseEmitter(maxDurationMs);
+        StreamSession session = new StreamSession(emitter);
+
+        emitter.onCompletion(session::cancel);
+        emitter.onTimeout(() -> {
+            session.cancel();
+            emitter.complete();
+        });
+        emitter.onError(error -> session.cancel());
+
+        try {
+            // SecurityContext không đi theo sang luồng worker nên giữ caller để tính hạn mức gọi AI
+            String caller = GenAiGateway.currentCaller();
+            aiStreamExecutor.execute(() -> GenAiGateway.runAs(caller, () -> run(session, prompt, config)));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Từ chối stream văn bản do quá tải");
+            throw new RuntimeException("Không thể tạo luồng văn bản: hệ thống đang quá tải", e);
+        }
+        return emitter;
+    }
+
+    private void run(StreamSession session, String prompt, GenerateContentConfig config) {
+        SseEmitter emitter = session.emitter;
+        long checkInterval = Math.max(idleTimeoutMs / 2, 1000);
+        ScheduledFuture<?> watchdog = watchdogExecutor.scheduleWithFixedDelay(
+                () -> checkIdle(session), checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+
+        int index = 0;
+        try (GenAiStream responseStream = textGenerationService
+                .generateTextStream(prompt, config)) {
+            session.upstream = responseStream;
+            if (session.cancelled) {
+                return;
+            }
+
+            for (GenerateContentResponse chunk : responseStream) {
+                if (session.cancelled) {
+                    return;
+                }
+                String text = chunk.text();
+                if (text == null || text.isEmpty()) {
+                    continue;
+                }
+                session.touch();
+                emitter.send(SseEmitter.event()
+                        .name("chunk")
+                        .id(String.valueOf(index))
+                        .data(Map.of("index", index, "text", text)));
+                index++;
+            }
+
+            if (!session.cancelled) {
+                emitter.send(SseEmitter.event()
+                        .name("done")
+                        .data(Map.of("success", true, "chunks", index)));
+                emitter.complete();
+            }
+
+        } catch (IOException e) {
+            // Client đã ngắt kết nối
+            logger.debug("Client ngắt kết nối khi đang stream: {}", e.getMessage());
+            session.cancel();
+        } catch (Exception e) {
+            if (!session.cancelled) {
+                logger.error("Lỗi khi stream văn bản: {}", e.getMessage(), e);
+                sendErrorAndComplete(emitter, "Lỗi khi tạo luồng văn bản: " + e.getMessage());
+            }
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * Đóng stream nếu không nhận được đoạn mới nào trong khoảng idle timeout
+     */
+    private void checkIdle(StreamSession session) {
+        if (session.cancelled || System.currentTimeMillis() - session.lastActivity < idleTimeoutMs) {
+            return;
+        }
+        logger.warn("Stream văn bản không có dữ liệu mới sau {} ms, hủy luồng", idleTimeoutMs);
+        session.cancel();
+        sendErrorAndComplete(session.emitter, "Quá thời gian chờ phản hồi từ AI");
+    }
+
+    private void sendErrorAndComplete(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("error")
+                    .data(Map.of("error", message)));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdogExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,136 @@
+package com.chatapp.service;
+
+import com.chatapp.service.ConversationMembershipCache.Member;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Xử lý trạng thái "đang soạn tin" của người dùng.
+ * Sự kiện chỉ tồn tại trong bộ nhớ, không bao giờ được ghi xuống database hay xuất hiện trong lịch sử.
+ */
+@Service
+public class TypingIndicatorService {
+
+    public static final String TYPING_DESTINATION = "/queue/typing";
+
+    private static final class TypingState {
+        final Long conversationId;
+        final Member member;
+        final String text;
+        volatile long lastActivity;
+        volatile long lastBroadcast;
+
+        TypingState(Long conversationId, Member member, String text, long now) {
+            this.conversationId = conversationId;
+            this.member = member;
+            this.text = text;
+            this.lastActivity = now;
+        }
+    }
+
+    private final ConversationMembershipCache membershipCache;
+    private final UserMessagingService userMessagingService;
+
+    // "conversationId:userId" -> trạng thái đang soạn tin
+    private final Map<String, TypingState> activeTypers = new ConcurrentHashMap<>();
+
+    @Value("${typing.throttle-ms:2000}")
+    private long throttleMs;
+
+    @Value("${typing.expire-ms:6000}")
+    private long expireMs;
+
+    public TypingIndicatorService(ConversationMembershipCache membershipCache,
+            UserMessagingService userMessagingService) {
+        this.membershipCache = membershipCache;
+        this.userMessagingService = userMessagingService;
+    }
+
+    /**
+     * Nhận sự kiện typing từ client. Người gửi không thuộc cuộc trò chuyện sẽ bị bỏ qua.
+     */
+    public void handleTyping(Long conversationId, String phone, boolean typing) {
+        membershipCache.findMemberByPhone(conversationId, phone)
+                .ifPresent(member -> updateTyping(conversationId, member, typing, null));
+    }
+
+    /**
+     * Hiển thị trạng thái đang soạn tin cho một thành viên do hệ thống điều khiển (ví dụ AI bot)
+     */
+    public void publishTyping(Long conversationId, Long userId, boolean typing, String text) {
+        membershipCache.getMembers(conversationId).stream()
+                .filter(member -> member.userId().equals(userId))
+                .findFirst()
+                .ifPresent(member -> updateTyping(conversationId, member, typing, text));
+    }
+
+    /**
+     * Tự động tắt trạng thái typing của những người đã ngừng gửi tín hiệu
+     */
+    @Scheduled(fixedDelayString = "${typing.sweep-interval-ms:1000}")
+    public void expireStaleTypers() {
+        long now = System.currentTimeMillis();
+        Iterator<TypingState> iterator = activeTypers.values().iterator();
+        while (iterator.hasNext()) {
+            TypingState state = iterator.next();
+            if (now - state.lastActivity >= expireMs) {
+                iterator.remove();
+                broadcast(state, false);
+            }
+        }
+    }
+
+    private void updateTyping(Long conversationId, Member member, boolean typing, String text) {
+        String key = conversationId + ":" + member.userId();
+        long now = System.currentTimeMillis();
+
+        if (!typing) {
+            TypingState removed = activeTypers.remove(key);
+            if (removed != null) {
+                broadcast(removed, false);
+            }
+            return;
+        }
+
+        TypingState state = activeTypers.compute(key, (k, existing) -> {
+            if (existing == null || (text != null && !text.equals(existing.text))) {
+                return new TypingState(conversationId, member, text, now);
+            }
+            existing.lastActivity = now;
+            return existing;
+        });
+
+        // Chỉ phát lại khi vừa bắt đầu gõ hoặc đã qua khoảng throttle, tránh spam người nhận
+        synchronized (state) {
+            if (state.lastBroadcast != 0 && now - state.lastBroadcast < throttleMs) {
+                return;
+            }
+            state.lastBroadcast = now;
+        }
+        broadcast(state, true);
+    }
+
+    private void broadcast(TypingState state, boolean typing) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "TYPING");
+        payload.put("conversationId", state.conversationId);
+        payload.put("userId", state.member.userId());
+        payload.put("displayName", state.member.displayName());
+        payload.put("typing", typing);
+        if (state.text != null) {
+            payload.put("text", state.text);
+        }
+
+        for (Member recipient : membershipCache.getMembers(state.conversationId)) {
+            if (!recipient.userId().equals(state.member.userId())) {
+                userMessagingService.sendToUser(recipient.userId(), TYPING_DESTINATION, payload);
+            }
+        }
+    }
+}
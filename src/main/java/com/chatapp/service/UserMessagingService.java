@@ -0,0 +1,46 @@
+package com.chatapp.service;
+
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Gửi tin tới user theo userId.
+ * Client đăng ký "/user/queue/..." và tin được gửi thẳng tới từng phiên của user
+ * thông qua UserSessionRegistry, không cần dò tìm theo principal.
+ */
+@Service
+public class UserMessagingService {
+
+    private final UserSessionRegistry sessionRegistry;
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    public UserMessagingService(UserSessionRegistry sessionRegistry, SimpMessageSendingOperations messagingTemplate) {
+        this.sessionRegistry = sessionRegistry;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Gửi payload tới tất cả thiết bị đang kết nối của user
+     *
+     * @param userId      ID người nhận
+     * @param destination đích dạng "/queue/...", client đăng ký "/user" + destination
+     * @param payload     nội dung gửi đi
+     */
+    public void sendToUser(Long userId, String destination, Object payload) {
+        for (String sessionId : sessionRegistry.getSessionIds(userId)) {
+            // Cùng quy ước với DefaultUserDestinationResolver: "/queue/x" -> "/queue/x-user{sessionId}"
+            messagingTemplate.convertAndSend(destination + "-user" + sessionId, payload);
+        }
+    }
+
+    /**
+     * Gửi cùng một payload tới nhiều user
+     */
+    public void sendToUsers(Collection<Long> userIds, String destination, Object payload) {
+        for (Long userId : userIds) {
+            sendToUser(userId, destination, payload);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.chatapp.service;
+
+import com.chatapp.model.User;
+import com.chatapp.repository.FriendRepository;
+import com.chatapp.repository.UserRepository;
+import com.chatapp.repository.UserRepository.UserSearchRow;
+import com.chatapp.util.VietnameseTextUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục tiền tố trong bộ nhớ cho tìm kiếm người dùng khi gõ (typeahead).
+ * Mỗi từ của tên hiển thị (đã bỏ dấu) và số điện thoại là một khóa "từ\0userId" trong ConcurrentSkipListMap,
+ * tìm theo tiền tố chỉ là một lần duyệt subMap nên không phải quét bảng users bằng LIKE '%...%'.
+ */
+@Service
+public class UserSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchIndex.class);
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // Truy vấn ngắn hơn (sau khi bỏ dấu) bị bỏ qua vì một chữ cái đã khớp gần như cả danh bạ
+    public static final int MIN_QUERY_LENGTH = 2;
+
+    private static final Pattern PHONE_QUERY = Pattern.compile("\\+?[0-9 .-]+");
+    private static final Pattern NON_DIGIT = Pattern.compile("[^0-9]");
+
+    /**
+     * Thông tin người dùng lưu trong chỉ mục
+     */
+    public record Entry(Long userId, String displayName, String phone, String avatarUrl, String foldedName) {
+    }
+
+    private record CachedFriendIds(Set<Long> friendIds, long loadedAt) {
+    }
+
+    private final UserRepository userRepository;
+    private final FriendRepository friendRepository;
+
+    private final ConcurrentSkipListMap<String, Long> keys = new ConcurrentSkipListMap<>();
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    // User bị xóa trong lúc đang nạp chỉ mục, để lần nạp không thêm lại dữ liệu cũ
+    private final Set<Long> removedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private final Map<Long, CachedFriendIds> friendCache = new ConcurrentHashMap<>();
+
+    // Tăng mỗi lần xóa cache bạn bè để kết quả nạp song song với lần xóa không được ghi lại vào cache
+    private final AtomicLong friendGeneration = new AtomicLong();
+
+    private volatile boolean ready;
+
+    @Value("${user-search.friend-cache-ttl-ms:300000}")
+    private long friendCacheTtlMs;
+
+    public UserSearchIndex(UserRepository userRepository, FriendRepository friendRepository) {
+        this.userRepository = userRepository;
+        this.friendRepository = friendRepository;
+    }
+
+    /**
+     * Chỉ mục đã nạp xong. Trước đó bên gọi nên dùng truy vấn database.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Nạp toàn bộ người dùng vào chỉ mục trên luồng nền
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread thread = new Thread(this::load, "user-search-index-load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load() {
+        try {
+            List<UserSearchRow> rows = userRepository.findAllForSearch();
+            for (UserSearchRow row : rows) {
+                if (!removedWhileLoading.contains(row.getUserId())) {
+                    // Không ghi đè mục đã được cập nhật trong lúc nạp vì mục đó mới hơn
+                    put(row.getUserId(), row.getDisplayName(), row.getPhone(), row.getAvatarUrl(), false);
+                }
+            }
+            ready = true;
+            removedWhileLoading.clear();
+            logger.info("Chỉ mục tìm kiếm người dùng sẵn sàng, đã nạp {} người dùng", rows.size());
+        } catch (Exception e) {
+            logger.error("Không thể nạp chỉ mục tìm kiếm người dùng, tiếp tục dùng truy vấn database", e);
+        }
+    }
+
+    /**
+     * Thêm hoặc cập nhật người dùng trong chỉ mục
+     */
+    public void upsert(User user) {
+        if (user.getUserId() != null) {
+            put(user.getUserId(), user.getDisplayName(), user.getPhone(), user.getAvatarUrl(), true);
+        }
+    }
+
+    /**
+     * Gỡ người dùng khỏi chỉ mục
+     */
+    public void remove(Long userId) {
+        if (!ready) {
+            removedWhileLoading.add(userId);
+        }
+        entries.computeIfPresent(userId, (id, current) -> {
+            keysOf(current).forEach(keys::remove);
+            return null;
+        });
+    }
+
+    private void put(Long userId, String displayName, String phone, String avatarUrl, boolean replace) {
+        // compute khóa theo từng user nên hai lần cập nhật cùng lúc không để lại khóa thừa
+        entries.compute(userId, (id, current) -> {
+            // Bỏ qua cả khi không đổi gì, ví dụ lần lưu chỉ cập nhật trạng thái online
+            if (current != null && (!replace || (Objects.equals(current.displayName(), displayName)
+                    && Objects.equals(current.phone(), phone) && Objects.equals(current.avatarUrl(), avatarUrl)))) {
+                return current;
+            }
+            Entry entry = new Entry(userId, displayName, phone, avatarUrl, VietnameseTextUtils.fold(displayName));
+            Set<String> newKeys = keysOf(entry);
+            if (current != null) {
+                for (String key : keysOf(current)) {
+                    if (!newKeys.contains(key)) {
+                        keys.remove(key);
+                    }
+                }
+            }
+            newKeys.forEach(key -> keys.put(key, userId));
+            return entry;
+        });
+    }
+
+    private static Set<String> keysOf(Entry entry) {
+        Set<String> result = new HashSet<>();
+        for (String token : entry.foldedName().split(" ")) {
+            if (!token.isEmpty()) {
+                result.add(token + KEY_SEPARATOR + entry.userId());
+            }
+        }
+        String digits = digitsOf(entry.phone());
+        if (!digits.isEmpty()) {
+            result.add(digits + KEY_SEPARATOR + entry.userId());
+        }
+        return result;
+    }
+
+    /**
+     * Tìm người dùng theo tiền tố tên (không phân biệt dấu) hoặc số điện thoại
+     * (tiền tố với bạn bè, đúng số với người lạ). Mỗi từ của truy vấn phải là đầu của một từ trong tên.
+     * Bạn bè của người tìm được xếp trước, sau đó tới tên trùng khớp, tên bắt đầu bằng truy vấn,
+     * rồi theo thứ tự chữ cái.
+     *
+     * @param requesterId Người đang tìm, không có trong kết quả
+     * @param friendsOnly true để chỉ tìm trong danh sách bạn bè
+     */
+    public List<Entry> search(Long requesterId, String query, boolean friendsOnly, int limit) {
+        String folded = VietnameseTextUtils.fold(query);
+        if (folded.length() < MIN_QUERY_LENGTH || limit <= 0) {
+            return List.of();
+        }
+
+        String phoneDigits = PHONE_QUERY.matcher(folded).matches() ? digitsOf(folded) : null;
+        if (phoneDigits != null && phoneDigits.length() < MIN_QUERY_LENGTH) {
+            return List.of();
+        }
+        String[] tokens = folded.split(" ");
+        Set<Long> friendIds = getFriendIds(requesterId);
+
+        // Bạn bè thường ít nên kiểm tra trực tiếp (kể cả tìm theo tiền tố số điện thoại)
+        Set<Long> candidates = new LinkedHashSet<>(friendIds);
+        if (!friendsOnly) {
+            // Người lạ chỉ tìm được bằng đúng số nên duyệt khóa "số\0" thay vì tiền tố
+            candidates.addAll(phoneDigits != null
+                    ? prefixScan(phoneDigits + KEY_SEPARATOR)
+                    : intersectPrefixScans(tokens));
+        }
+
+        List<Entry> matches = new ArrayList<>();
+        for (Long id : candidates) {
+            Entry entry = entries.get(id);
+            if (entry != null && !id.equals(requesterId)
+                    && matches(entry, tokens, phoneDigits, friendIds.contains(id))) {
+                matches.add(entry);
+            }
+        }
+
+        Comparator<Entry> ranking = Comparator
+                .comparing((Entry entry) -> !friendIds.contains(entry.userId()))
+                .thenComparingInt(entry -> nameRank(entry.foldedName(), folded))
+                .thenComparing(Entry::foldedName)
+                .thenComparing(Entry::userId);
+        return matches.stream()
+                .sorted(ranking)
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Giao các tập id khớp tiền tố của từng từ trong truy vấn, bắt đầu từ tập nhỏ nhất.
+     * Không giới hạn số id mỗi lần duyệt để truy vấn nhiều từ không bỏ sót người dùng khớp;
+     * chỉ cắt theo limit sau khi đã lọc và xếp hạng.
+     */
+    private Set<Long> intersectPrefixScans(String[] tokens) {
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String token : new LinkedHashSet<>(Arrays.asList(tokens))) {
+            if (!token.isEmpty()) {
+                postings.add(prefixScan(token));
+            }
+        }
+        if (postings.isEmpty()) {
+            return Set.of();
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> result = postings.get(0);
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    private Set<Long> prefixScan(String prefix) {
+        return new HashSet<>(keys.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+    }
+
+    private static boolean matches(Entry entry, String[] tokens, String phoneDigits, boolean friend) {
+        if (phoneDigits != null) {
+            // Bạn bè tìm theo tiền tố số điện thoại, người lạ chỉ tìm được bằng đúng số để không dò được danh bạ
+            String phone = digitsOf(entry.phone());
+            return friend ? phone.startsWith(phoneDigits) : phone.equals(phoneDigits);
+        }
+        String[] nameTokens = entry.foldedName().split(" ");
+        for (String token : tokens) {
+            boolean found = false;
+            for (String nameToken : nameTokens) {
+                if (nameToken.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int nameRank(String foldedName, String foldedQuery) {
+        if (foldedName.equals(foldedQuery)) {
+            return 0;
+        }
+        return foldedName.startsWith(foldedQuery) ? 1 : 2;
+    }
+
+    /**
+     * Truy vấn là đúng số điện thoại đã cho (so theo chữ số)
+     */
+    public static boolean isExactPhoneMatch(String query, String phone) {
+        if (query == null || !PHONE_QUERY.matcher(query.trim()).matches()) {
+            return false;
+        }
+        String digits = digitsOf(query);
+        return !digits.isEmpty() && digits.equals(digitsOf(phone));
+    }
+
+    private static String digitsOf(String text) {
+        return text == null ? "" : NON_DIGIT.matcher(text).replaceAll("");
+    }
+
+    /**
+     * Tập id bạn bè (đã chấp nhận) của user
+     */
+    public Set<Long> getFriendIds(Long userId) {
+        long now = System.currentTimeMillis();
+        CachedFriendIds cached = friendCache.get(userId);
+        if (cached != null && now - cached.loadedAt() < friendCacheTtlMs) {
+            return cached.friendIds();
+        }
+
+        long generation = friendGeneration.get();
+        Set<Long> friendIds = Set.copyOf(friendRepository.findAcceptedFriendIds(userId));
+        friendCache.compute(userId, (key, current) -> friendGeneration.get() == generation
+                ? new CachedFriendIds(friendIds, now)
+                : current);
+        return friendIds;
+    }
+
+    /**
+     * Xóa cache bạn bè của user, gọi sau khi quan hệ bạn bè thay đổi
+     */
+    public void evictFriends(Long userId) {
+        friendGeneration.incrementAndGet();
+        friendCache.remove(userId);
+    }
+
+    /**
+     * Dọn các mục cache bạn bè đã hết hạn
+     */
+    @Scheduled(fixedDelayString = "${user-search.friend-cache-ttl-ms:300000}")
+    public void removeExpiredFriendEntries() {
+        long now = System.currentTimeMillis();
+        friendCache.entrySet().removeIf(entry -> now - entry.getValue().loadedAt() >= friendCacheTtlMs);
+    }
+}
@@ -3,9 +3,12 @@ package com.chatapp.service;
 import com.chatapp.dto.request.UserDto;
 import com.chatapp.enums.Gender;
 import com.chatapp.enums.UserStatus;
+import com.chatapp.exception.BadRequestException;
 import com.chatapp.exception.ResourceNotFoundException;
 import com.chatapp.model.User;
 import com.chatapp.repository.UserRepository;
+import com.chatapp.util.AvatarUrls;
+import com.chatapp.util.VietnameseTextUtils;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import com.chatapp.dto.request.RegisterRequest;
@@ -17,6 +20,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Service class để xử lý các thao tác liên quan đến người dùng
@@ -26,16 +30,20 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSearchIndex userSearchIndex;
 
     /**
      * Constructor để dependency injection
      * 
      * @param userRepository  Repository xử lý thao tác với database của User
      * @param passwordEncoder Bean mã hóa mật khẩu
+     * @param userSearchIndex Chỉ mục tìm kiếm người dùng trong bộ nhớ
      */
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+            UserSearchIndex userSearchIndex) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userSearchIndex = userSearchIndex;
     }
 
     /**
@@ -98,6 +106,56 @@ public class UserService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Tìm người dùng theo tên (không phân biệt dấu) hoặc số điện thoại khi gõ.
+     * Bạn bè của người tìm được xếp trước. Trong lúc chỉ mục chưa nạp xong thì tìm bằng database.
+     * 
+     * @param requesterPhone Số điện thoại của người đang tìm
+     * @param query          Chuỗi tìm kiếm, ít nhất UserSearchIndex.MIN_QUERY_LENGTH ký tự sau khi bỏ dấu
+     * @param limit          Số kết quả tối đa
+     * @return List<UserDto> Danh sách người dùng phù hợp
+     * @throws BadRequestException Nếu chuỗi tìm kiếm quá ngắn
+     */
+    public List<UserDto> searchUsers(String requesterPhone, String query, int limit) {
+        if (query == null || VietnameseTextUtils.fold(query).length() < UserSearchIndex.MIN_QUERY_LENGTH) {
+            throw new BadRequestException(
+                    "Từ khóa tìm kiếm phải có ít nhất " + UserSearchIndex.MIN_QUERY_LENGTH + " ký tự");
+        }
+        User requester = userRepository.findByPhone(requesterPhone)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "Không tìm thấy người dùng với số điện thoại: " + requesterPhone));
+        Set<Long> friendIds = userSearchIndex.getFriendIds(requester.getUserId());
+
+        if (!userSearchIndex.isReady()) {
+            return userRepository.findByDisplayNameContainingIgnoreCase(query.trim()).stream()
+                    .filter(user -> !user.getUserId().equals(requester.getUserId()))
+                    .limit(limit)
+                    .map(user -> mapToSearchDto(user.getUserId(), user.getDisplayName(), user.getPhone(),
+                            user.getAvatarUrl(), friendIds.contains(user.getUserId()), query))
+                    .collect(Collectors.toList());
+        }
+
+        return userSearchIndex.search(requester.getUserId(), query, false, limit).stream()
+                .map(entry -> mapToSearchDto(entry.userId(), entry.displayName(), entry.phone(), entry.avatarUrl(),
+                        friendIds.contains(entry.userId()), query))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Số điện thoại chỉ được trả về cho bạn bè hoặc khi người tìm đã nhập đúng số đó
+     */
+    private UserDto mapToSearchDto(Long userId, String displayName, String phone, String avatarUrl, boolean friend,
+            String query) {
+        UserDto dto = new UserDto();
+        dto.setUserId(userId);
+        dto.setDisplayName(displayName);
+        if (friend || UserSearchIndex.isExactPhoneMatch(query, phone)) {
+            dto.setPhone(phone);
+        }
+        dto.setAvatarUrl(AvatarUrls.variant(avatarUrl, AvatarUrls.LIST_SIZE));
+        return dto;
+    }
+
     /**
      * Cập nhật thông tin người dùng
      * 
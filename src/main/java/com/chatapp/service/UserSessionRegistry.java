@@ -0,0 +1,116 @@
+package com.chatapp.service;
+
+import com.chatapp.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lưu các phiên STOMP đang hoạt động theo userId để gửi tin trực tiếp tới từng thiết bị của user
+ */
+@Service
+public class UserSessionRegistry {
+
+    private final UserRepository userRepository;
+
+    // sessionId -> userId
+    private final Map<String, Long> sessionOwners = new ConcurrentHashMap<>();
+    // userId -> các session đang kết nối
+    private final Map<Long, Set<String>> userSessions = new ConcurrentHashMap<>();
+    // phone (principal) -> userId, tránh truy vấn lại khi user kết nối lại
+    private final Map<String, Long> userIdsByPhone = new ConcurrentHashMap<>();
+
+    public UserSessionRegistry(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+
+        Gauge.builder("chatapp.websocket.online.users", userSessions, Map::size)
+                .description("Số user đang có ít nhất một phiên WebSocket")
+                .register(meterRegistry);
+        Gauge.builder("chatapp.websocket.online.sessions", sessionOwners, Map::size)
+                .description("Số phiên WebSocket đang hoạt động")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Đăng ký một phiên mới của user
+     *
+     * @return userId của phiên, hoặc null nếu không tìm thấy user
+     */
+    public Long register(String sessionId, String phone) {
+        Long userId = resolveUserId(phone);
+        if (userId == null) {
+            return null;
+        }
+        sessionOwners.put(sessionId, userId);
+        // Thêm trong compute để unregister của phiên cũ (kết nối lại nhanh) không gỡ mất tập vừa được thêm vào
+        userSessions.compute(userId, (id, sessions) -> {
+            Set<String> updated = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            updated.add(sessionId);
+            return updated;
+        });
+        return userId;
+    }
+
+    /**
+     * Gỡ phiên đã ngắt kết nối
+     *
+     * @return userId của phiên, hoặc null nếu phiên chưa từng được đăng ký
+     */
+    public Long unregister(String sessionId) {
+        Long userId = sessionOwners.remove(sessionId);
+        if (userId != null) {
+            // Gỡ và xóa tập rỗng trong cùng một thao tác nguyên tử theo userId
+            userSessions.computeIfPresent(userId, (id, sessions) -> {
+                sessions.remove(sessionId);
+                return sessions.isEmpty() ? null : sessions;
+            });
+        }
+        return userId;
+    }
+
+    /**
+     * Lấy các phiên đang hoạt động của user
+     */
+    public Set<String> getSessionIds(Long userId) {
+        Set<String> sessions = userSessions.get(userId);
+        return sessions != null ? Collections.unmodifiableSet(sessions) : Collections.emptySet();
+    }
+
+    public Long getUserId(String sessionId) {
+        return sessionOwners.get(sessionId);
+    }
+
+    public boolean isOnline(Long userId) {
+        return userSessions.containsKey(userId);
+    }
+
+    public int getDeviceCount(Long userId) {
+        return getSessionIds(userId).size();
+    }
+
+    public int getOnlineUserCount() {
+        return userSessions.size();
+    }
+
+    public int getSessionCount() {
+        return sessionOwners.size();
+    }
+
+    private Long resolveUserId(String phone) {
+        Long cached = userIdsByPhone.get(phone);
+        if (cached != null) {
+            return cached;
+        }
+        return userRepository.findByPhone(phone)
+                .map(user -> {
+                    userIdsByPhone.put(phone, user.getUserId());
+                    return user.getUserId();
+                })
+                .orElse(null);
+    }
+}
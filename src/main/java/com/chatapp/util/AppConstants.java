@@ -17,6 +17,9 @@ public class AppConstants {
             "application/msword", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
     };
 
+    // Nội dung thay thế khi tin nhắn bị thu hồi
+    public static final String RECALLED_MESSAGE_CONTENT = "Tin nhắn đã thu hồi";
+
     // Pagination Constants
     public static final String DEFAULT_PAGE_NUMBER = "0";
     public static final String DEFAULT_PAGE_SIZE = "20";
@@ -0,0 +1,42 @@
+package com.chatapp.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Quy ước key của avatar: avatar_{phiên bản}_{kích thước}.jpg.
+ * Mỗi lần tải lên tạo phiên bản mới nên URL không đổi nội dung và được cache vĩnh viễn.
+ * URL lưu trong DB là bản lớn nhất, các bản nhỏ hơn suy ra bằng cách thay kích thước.
+ */
+public final class AvatarUrls {
+
+    public static final int[] SIZES = { 64, 128, 256, 512 };
+    public static final int LARGEST_SIZE = 512;
+
+    // Kích thước cho danh sách (inbox, bạn bè, thành viên nhóm), đủ nét trên màn hình 2x
+    public static final int LIST_SIZE = 128;
+
+    private static final Pattern VARIANT_PATTERN = Pattern.compile("(avatar_[0-9a-f-]+_)(\\d+)(\\.jpg)$");
+
+    private AvatarUrls() {
+    }
+
+    public static String key(String version, int size) {
+        return "avatar_" + version + "_" + size + ".jpg";
+    }
+
+    /**
+     * URL của bản avatar có kích thước size.
+     * Avatar cũ tải lên trước khi có các bản thu nhỏ được trả về nguyên vẹn.
+     */
+    public static String variant(String avatarUrl, int size) {
+        if (avatarUrl == null) {
+            return null;
+        }
+        Matcher matcher = VARIANT_PATTERN.matcher(avatarUrl);
+        if (!matcher.find()) {
+            return avatarUrl;
+        }
+        return avatarUrl.substring(0, matcher.start()) + matcher.group(1) + size + matcher.group(3);
+    }
+}
@@ -0,0 +1,113 @@
+package com.chatapp.util;
+
+/**
+ * Mã hóa ảnh thành chuỗi BlurHash (https://blurha.sh) để client vẽ placeholder mờ trước khi tải ảnh.
+ * Nên truyền vào ảnh đã thu nhỏ (vài chục pixel) vì chi phí tỉ lệ với số pixel.
+ */
+public final class BlurHash {
+
+    private static final String BASE83_CHARS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {
+    }
+
+    /**
+     * @param pixels     Mảng pixel ARGB theo hàng
+     * @param width      Chiều rộng ảnh
+     * @param height     Chiều cao ảnh
+     * @param componentX Số thành phần theo chiều ngang (1-9)
+     * @param componentY Số thành phần theo chiều dọc (1-9)
+     */
+    public static String encode(int[] pixels, int width, int height, int componentX, int componentY) {
+        if (componentX < 1 || componentX > 9 || componentY < 1 || componentY > 9) {
+            throw new IllegalArgumentException("Số thành phần phải nằm trong khoảng 1-9");
+        }
+
+        double[][] factors = new double[componentX * componentY][];
+        for (int j = 0; j < componentY; j++) {
+            for (int i = 0; i < componentX; i++) {
+                factors[j * componentX + i] = multiplyBasis(pixels, width, height, i, j);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentX - 1) + (componentY - 1) * 9, 1);
+
+        double maxValue;
+        if (factors.length > 1) {
+            double actualMax = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMax = Math.max(actualMax, Math.abs(value));
+                }
+            }
+            int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(actualMax * 166 - 0.5)));
+            maxValue = (quantisedMax + 1) / 166.0;
+            encode83(hash, quantisedMax, 1);
+        } else {
+            maxValue = 1;
+            encode83(hash, 0, 1);
+        }
+
+        double[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            int quantR = quantiseAc(ac[0], maxValue);
+            int quantG = quantiseAc(ac[1], maxValue);
+            int quantB = quantiseAc(ac[2], maxValue);
+            encode83(hash, quantR * 19 * 19 + quantG * 19 + quantB, 2);
+        }
+        return hash.toString();
+    }
+
+    private static double[] multiplyBasis(int[] pixels, int width, int height, int i, int j) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        double normalisation = (i == 0 && j == 0) ? 1 : 2;
+
+        for (int y = 0; y < height; y++) {
+            double basisY = Math.cos(Math.PI * j * y / height);
+            for (int x = 0; x < width; x++) {
+                double basis = normalisation * Math.cos(Math.PI * i * x / width) * basisY;
+                int pixel = pixels[y * width + x];
+                r += basis * srgbToLinear((pixel >> 16) & 0xFF);
+                g += basis * srgbToLinear((pixel >> 8) & 0xFF);
+                b += basis * srgbToLinear(pixel & 0xFF);
+            }
+        }
+
+        double scale = 1.0 / (width * height);
+        return new double[] { r * scale, g * scale, b * scale };
+    }
+
+    private static int quantiseAc(double value, double maxValue) {
+        return (int) Math.max(0, Math.min(18, Math.floor(signPow(value / maxValue, 0.5) * 9 + 9.5)));
+    }
+
+    private static double srgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static double signPow(double value, double exp) {
+        return Math.copySign(Math.pow(Math.abs(value), exp), value);
+    }
+
+    private static void encode83(StringBuilder builder, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (int) (value / Math.pow(83, length - i)) % 83;
+            builder.append(BASE83_CHARS.charAt(digit));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.chatapp.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Các thao tác ảnh dùng chung cho thumbnail attachment và avatar
+ */
+public final class ImageUtils {
+
+    /**
+     * Ảnh đã giải mã kèm kích thước gốc (trước khi subsampling)
+     */
+    public record DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight) {
+    }
+
+    /**
+     * Ảnh gốc có số pixel vượt giới hạn, bị từ chối trước khi giải mã
+     */
+    public static class ImageTooLargeException extends IOException {
+        public ImageTooLargeException(int width, int height, long maxPixels) {
+            super("Ảnh " + width + "x" + height + " vượt quá " + maxPixels + " pixel");
+        }
+    }
+
+    private ImageUtils() {
+    }
+
+    /**
+     * Đọc ảnh để thu nhỏ sao cho cạnh dài không vượt maxSide.
+     * Kích thước được đọc từ header và kiểm tra với maxPixels trước khi giải mã; ảnh lớn được giải mã
+     * cách dòng/cột (source subsampling) nên bộ nhớ giải mã tỉ lệ với maxSide thay vì kích thước ảnh gốc.
+     *
+     * @return ảnh đã giải mã (cạnh dài vẫn không nhỏ hơn maxSide), null nếu không nhận dạng được định dạng
+     * @throws ImageTooLargeException nếu ảnh gốc có nhiều hơn maxPixels pixel
+     */
+    public static DecodedImage readScaledToFit(InputStream inputStream, long maxPixels, int maxSide)
+            throws IOException {
+        return read(inputStream, maxPixels,
+                (param, width, height) -> subsample(param, Math.max(width, height) / maxSide));
+    }
+
+    /**
+     * Đọc phần vuông ở giữa ảnh, thu nhỏ sao cho cạnh vẫn không nhỏ hơn minSide.
+     * Chỉ vùng vuông được giải mã (source region) và giải mã cách dòng/cột nên bộ nhớ tỉ lệ với minSide
+     * kể cả khi ảnh gốc rất lớn hoặc rất dài.
+     *
+     * @return ảnh vuông đã giải mã, null nếu không nhận dạng được định dạng
+     * @throws ImageTooLargeException nếu ảnh gốc có nhiều hơn maxPixels pixel
+     */
+    public static DecodedImage readCenterSquare(InputStream inputStream, long maxPixels, int minSide)
+            throws IOException {
+        return read(inputStream, maxPixels, (param, width, height) -> {
+            int side = Math.min(width, height);
+            param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+            subsample(param, side / minSide);
+        });
+    }
+
+    /**
+     * Cấu hình ImageReadParam theo kích thước gốc đọc từ header
+     */
+    @FunctionalInterface
+    private interface ReadParamSetup {
+        void apply(ImageReadParam param, int width, int height);
+    }
+
+    private static void subsample(ImageReadParam param, int factor) {
+        if (factor > 1) {
+            param.setSourceSubsampling(factor, factor, 0, 0);
+        }
+    }
+
+    private static DecodedImage read(InputStream inputStream, long maxPixels, ReadParamSetup setup)
+            throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageInputStream != null
+                    ? ImageIO.getImageReaders(imageInputStream)
+                    : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new ImageTooLargeException(width, height, maxPixels);
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                setup.apply(param, width, height);
+                return new DecodedImage(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Thu nhỏ ảnh để cạnh dài nhất bằng maxSize, giảm một nửa mỗi bước để giữ chất lượng
+     */
+    public static BufferedImage resize(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // Nền trắng cho ảnh có kênh alpha vì JPEG không hỗ trợ trong suốt
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    public static byte[] toJpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "jpg", outputStream)) {
+            throw new IOException("Không có bộ ghi JPEG");
+        }
+        return outputStream.toByteArray();
+    }
+}
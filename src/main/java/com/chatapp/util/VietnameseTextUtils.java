@@ -0,0 +1,33 @@
+package com.chatapp.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa chuỗi tiếng Việt cho tìm kiếm không phân biệt dấu
+ */
+public final class VietnameseTextUtils {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private VietnameseTextUtils() {
+    }
+
+    /**
+     * Bỏ dấu, chuyển về chữ thường và gộp khoảng trắng, ví dụ "Nguyễn  Văn Đạt" thành "nguyen van dat"
+     *
+     * @return chuỗi đã chuẩn hóa, chuỗi rỗng nếu text là null
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        // đ/Đ không phải chữ có dấu kết hợp nên NFD không tách được, phải thay riêng
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'd');
+        return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+}
@@ -179,7 +179,7 @@ function subscribeToConversation(conversationId) {
 function subscribeFriendRequests() {
   if (stompClient && stompClient.connected && currentUser) {
     stompClient.subscribe(
-      `/queue/user/${currentUser.userId}/friend-requests`,
+      "/user/queue/friend-requests",
       function (message) {
         const friendRequest = JSON.parse(message.body);
         console.log("Nhận lời mời kết bạn mới:", friendRequest);
@@ -197,7 +197,7 @@ function subscribeFriendRequests() {
 function subscribeFriendUpdates() {
   if (stompClient && stompClient.connected && currentUser) {
     stompClient.subscribe(
-      `/queue/user/${currentUser.userId}/friend-updates`,
+      "/user/queue/friend-updates",
       function (message) {
         const friendUpdate = JSON.parse(message.body);
         console.log("Nhận cập nhật bạn bè:", friendUpdate);
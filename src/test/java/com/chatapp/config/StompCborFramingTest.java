@@ -0,0 +1,144 @@
+package com.chatapp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Kiểm tra frame STOMP thực tế do StompSubProtocolHandler gửi ra cho phiên CBOR và phiên JSON
+ */
+class StompCborFramingTest {
+
+    private static final String JSON = "{\"id\":42,\"content\":\"Xin chào, hẹn gặp lúc 8 giờ nhé 👋\","
+            + "\"attachments\":[{\"url\":\"https://cdn.example.com/a.png\",\"size\":1048576}],\"read\":false}";
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+
+    private StompContentNegotiationInterceptor interceptor;
+    private StompSubProtocolHandler handler;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new StompContentNegotiationInterceptor();
+        handler = new StompSubProtocolHandler();
+        handler.setEncoder(new CborStompEncoder());
+        session = mock(WebSocketSession.class);
+    }
+
+    @Test
+    void cborSessionReceivesExactBinaryFrame() throws Exception {
+        connect("s1", true);
+
+        WebSocketMessage<?> sent = sendToClient("s1");
+
+        assertThat(sent).isInstanceOf(BinaryMessage.class);
+        byte[] frame = toBytes(((BinaryMessage) sent).getPayload());
+        int bodyStart = indexOf(frame, "\n\n".getBytes(StandardCharsets.US_ASCII)) + 2;
+        String head = new String(frame, 0, bodyStart, StandardCharsets.US_ASCII);
+        byte[] body = Arrays.copyOfRange(frame, bodyStart, frame.length - 1);
+        byte[] expected = StompContentNegotiationInterceptor.toCbor(JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(head).startsWith("MESSAGE\n")
+                .contains("\ncontent-type:application/cbor\n")
+                .contains("\ncontent-length:" + expected.length + "\n")
+                .doesNotContain("octet-stream")
+                .doesNotContain(StompContentNegotiationInterceptor.CBOR_PAYLOAD_HEADER);
+        assertThat(frame[frame.length - 1]).isZero();
+        assertThat(body).isEqualTo(expected);
+        // Byte CBOR không phải UTF-8 hợp lệ, nên chỉ còn nguyên vẹn khi frame không đi qua String
+        assertThatThrownBy(() -> StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(body)))
+                .isInstanceOf(CharacterCodingException.class);
+        assertThat(cborMapper.readTree(body)).isEqualTo(jsonMapper.readTree(JSON));
+    }
+
+    @Test
+    void jsonSessionStillReceivesTextFrame() throws Exception {
+        connect("s2", false);
+
+        WebSocketMessage<?> sent = sendToClient("s2");
+
+        assertThat(sent).isInstanceOf(TextMessage.class);
+        String frame = ((TextMessage) sent).getPayload();
+        assertThat(frame).startsWith("MESSAGE\n")
+                .contains("\ncontent-type:application/json\n")
+                .endsWith("\n\n" + JSON + "\u0000");
+    }
+
+    private void connect(String sessionId, boolean cbor) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(StompContentNegotiationInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, true);
+        accessor.setSessionAttributes(attributes);
+        accessor.setContentType(cbor ? StompContentNegotiationInterceptor.CBOR : MimeTypeUtils.APPLICATION_JSON);
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private WebSocketMessage<?> sendToClient(String sessionId) throws Exception {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        Message<?> message = MessageBuilder.createMessage(JSON.getBytes(StandardCharsets.UTF_8),
+                accessor.getMessageHeaders());
+
+        handler.handleMessageToClient(session, interceptor.outbound().preSend(message, null));
+
+        ArgumentCaptor<WebSocketMessage<?>> captor = (ArgumentCaptor) ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session).sendMessage(captor.capture());
+        return captor.getValue();
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
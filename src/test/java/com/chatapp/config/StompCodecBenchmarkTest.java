@@ -0,0 +1,114 @@
+package com.chatapp.config;
+
+import com.chatapp.dto.request.MessageDto;
+import com.chatapp.dto.response.AttachmentDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Đo kích thước frame và thời gian mã hóa/giải mã của payload JSON và CBOR trên các MessageDto tiêu biểu.
+ * Không chạy trong mvn test mặc định; chạy riêng bằng mvn test -Pperf, kết quả ghi ra log.
+ * Frame thực tế gửi cho client được kiểm tra trong StompCborFramingTest.
+ */
+@Tag("perf")
+class StompCodecBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompCodecBenchmarkTest.class);
+
+    private static final int WARMUP = 20_000;
+    private static final int RUNS = 50_000;
+
+    // Cùng cấu hình ngày giờ với ObjectMapper của Spring Boot (ISO-8601, không dùng timestamp)
+    private final ObjectMapper jsonMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ObjectMapper cborMapper = new CBORMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void compareJsonAndCborOnRepresentativeMessages() throws Exception {
+        for (Map.Entry<String, MessageDto> sample : samples().entrySet()) {
+            MessageDto message = sample.getValue();
+            byte[] json = jsonMapper.writeValueAsBytes(message);
+            byte[] cbor = StompContentNegotiationInterceptor.toCbor(json);
+
+            // Client CBOR phải đọc lại được đúng tin nhắn
+            assertThat(cborMapper.readValue(cbor, MessageDto.class)).isEqualTo(message);
+            assertThat(cbor.length).isLessThanOrEqualTo(json.length);
+
+            long encodeNanos = time(() -> jsonMapper.writeValueAsBytes(message));
+            long transcodeNanos = time(() -> StompContentNegotiationInterceptor.toCbor(json));
+            long decodeNanos = time(() -> cborMapper.readValue(cbor, MessageDto.class));
+            logger.info("{}: json {} B, cbor {} B ({}%), json encode {} ns, json→cbor {} ns, cbor decode {} ns",
+                    sample.getKey(), json.length, cbor.length, String.format("%.1f", 100.0 * cbor.length / json.length),
+                    encodeNanos, transcodeNanos, decodeNanos);
+        }
+    }
+
+    private static Map<String, MessageDto> samples() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 20, 9, 30, 15);
+        Map<String, MessageDto> samples = new LinkedHashMap<>();
+
+        samples.put("text-ngắn", message(1001L, "Tối nay đi ăn không?", "TEXT", createdAt, Set.of()));
+        samples.put("text-dài", message(1002L, "Mình gửi lại nội dung cuộc họp sáng nay: "
+                + "Nhóm thống nhất hoàn thành phần thanh toán trước thứ Sáu, kiểm thử trên Android và iOS, "
+                + "sau đó cập nhật tài liệu API và thông báo cho bộ phận hỗ trợ khách hàng trước khi phát hành.",
+                "TEXT", createdAt, Set.of()));
+
+        Set<AttachmentDto> files = new LinkedHashSet<>();
+        for (long i = 1; i <= 4; i++) {
+            String base = "https://cdn.chatapp.vn/attachments/2024/05/20/" + (9000 + i);
+            files.add(new AttachmentDto(9000 + i, "IMG_20240520_" + i + ".jpg", "image/jpeg", base + ".jpg",
+                    2_457_600, "2024-05-20T09:30:15", "2024-05-20T09:30:17", "READY",
+                    base + "_256.jpg", base + "_720.jpg", base + "_1080.jpg", null,
+                    "LEHV6nWB2yk8pyo0adR*.7kCMdnj", "#7a6b5c", 4032, 3024));
+        }
+        samples.put("4-ảnh", message(1003L, null, "IMAGE", createdAt, files));
+        return samples;
+    }
+
+    private static MessageDto message(Long id, String content, String type, LocalDateTime createdAt,
+            Set<AttachmentDto> files) {
+        MessageDto message = new MessageDto();
+        message.setId(id);
+        message.setConversationId(42L);
+        message.setSenderId(7L);
+        message.setSenderName("Nguyễn Văn An");
+        message.setContent(content);
+        message.setType(type);
+        message.setCreatedAt(createdAt);
+        message.setFiles(new LinkedHashSet<>(files));
+        return message;
+    }
+
+    private static long time(ThrowingSupplier action) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            action.get();
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            action.get();
+        }
+        return (System.nanoTime() - startedAt) / RUNS;
+    }
+
+    @FunctionalInterface
+    private interface ThrowingSupplier {
+        Object get() throws Exception;
+    }
+}
@@ -0,0 +1,47 @@
+package com.chatapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalStorageBackendTest extends StorageBackendContractTest {
+
+    @TempDir
+    Path baseDir;
+
+    private LocalStorageBackend backend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backend = new LocalStorageBackend(baseDir.toString(), "/api/files/", storageIoExecutor);
+    }
+
+    @Override
+    protected StorageBackend backend() {
+        return backend;
+    }
+
+    @Test
+    void rejectsKeysOutsideBaseDir() {
+        assertThatThrownBy(() -> backend.resolve("../secret")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> backend.resolve(".meta")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> backend.resolve("a/b")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void remembersContentTypeAndRejectsShortContent() throws Exception {
+        backend.put("anh.png", new ByteArrayInputStream(new byte[] { 1 }), 1, "image/png");
+
+        assertThat(backend.contentType("anh.png")).isEqualTo("image/png");
+        assertThat(backend.toUrl("anh.png")).isEqualTo("/api/files/anh.png");
+        assertThatThrownBy(() -> backend.put("thieu.bin", new ByteArrayInputStream(new byte[2]), 3, null))
+                .hasMessageContaining("không khớp");
+        assertThat(backend.exists("thieu.bin")).isFalse();
+    }
+}
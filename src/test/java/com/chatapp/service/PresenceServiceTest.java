@@ -0,0 +1,80 @@
+package com.chatapp.service;
+
+import com.chatapp.enums.UserStatus;
+import com.chatapp.model.Friend;
+import com.chatapp.model.User;
+import com.chatapp.repository.FriendRepository;
+import com.chatapp.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceServiceTest {
+
+    private UserRepository userRepository;
+    private UserMessagingService userMessagingService;
+    private PresenceService presenceService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        FriendRepository friendRepository = mock(FriendRepository.class);
+        userMessagingService = mock(UserMessagingService.class);
+        presenceService = new PresenceService(userRepository, friendRepository, mock(UserSessionRegistry.class),
+                userMessagingService);
+        ReflectionTestUtils.setField(presenceService, "offlineGraceMs", 60_000L);
+
+        when(friendRepository.findAcceptedFriendshipsByUserId(1L))
+                .thenReturn(List.of(new Friend(10L, user(1L), user(2L), null, null, null)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        presenceService.shutdown();
+    }
+
+    @Test
+    void shutdownMarksOnlineUsersOfflineWithoutWaitingForGracePeriod() {
+        presenceService.onUserConnected(1L);
+        verify(userMessagingService, timeout(5_000)).sendToUser(eq(2L), eq(PresenceService.PRESENCE_DESTINATION),
+                argThat(payload -> "ONLINE".equals(((Map<?, ?>) payload).get("status"))));
+        // Phiên đóng, tác vụ báo offline còn đang chờ hết thời gian grace
+        presenceService.onUserDisconnected(1L);
+
+        presenceService.flushOnShutdown();
+
+        verify(userMessagingService).sendToUser(eq(2L), eq(PresenceService.PRESENCE_DESTINATION),
+                argThat(payload -> "OFFLINE".equals(((Map<?, ?>) payload).get("status"))));
+        verify(userRepository).updatePresence(eq(List.of(1L)), eq(UserStatus.OFFLINE), any());
+        verify(userRepository, never()).updatePresence(any(), eq(UserStatus.ONLINE), any());
+    }
+
+    @Test
+    void eventsAfterShutdownAreIgnored() {
+        presenceService.flushOnShutdown();
+
+        presenceService.onUserConnected(1L);
+        presenceService.onUserDisconnected(1L);
+
+        verify(userMessagingService, never()).sendToUser(any(), any(), any());
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setUserId(id);
+        return user;
+    }
+}
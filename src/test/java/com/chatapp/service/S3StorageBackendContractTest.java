@@ -0,0 +1,33 @@
+package com.chatapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Chạy bộ test chung của StorageBackend trên S3StorageBackend với S3 giả trong bộ nhớ, không cần mạng
+ */
+class S3StorageBackendContractTest extends StorageBackendContractTest {
+
+    static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Không có S3AsyncClient: putAsync chạy bản đồng bộ trên storageIoExecutor
+        ObjectProvider<S3AsyncClient> noAsyncClient = mock(ObjectProvider.class);
+        backend = new S3StorageBackend(new InMemoryS3Client(), noAsyncClient, storageIoExecutor,
+                PART_SIZE, PART_SIZE, 2);
+        ReflectionTestUtils.setField(backend, "bucketName", "chatapp-test");
+    }
+
+    @Override
+    protected StorageBackend backend() {
+        return backend;
+    }
+}
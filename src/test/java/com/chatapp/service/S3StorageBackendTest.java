@@ -0,0 +1,232 @@
+package com.chatapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Upload file lớn hơn nhiều lần kích thước part qua S3Client giả:
+ * bộ nhớ đệm phải luôn bị chặn bởi kích thước part và số buffer trong pool
+ */
+class S3StorageBackendTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final int POOL_SIZE = 2;
+    // 12 part đầy và một part cuối lẻ
+    private static final long PAYLOAD_SIZE = 12L * PART_SIZE + 12_345;
+
+    /**
+     * S3 giả chỉ giữ checksum của part, ghi lại lượng dữ liệu đã đọc trước so với phần đã upload
+     */
+    static class RecordingS3Client extends InMemoryS3Client {
+        final List<Integer> partSizes = Collections.synchronizedList(new ArrayList<>());
+        final CRC32 checksum = new CRC32();
+        final AtomicLong maxReadAhead = new AtomicLong();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger aborted = new AtomicInteger();
+        volatile PatternInputStream source;
+        long uploaded;
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                byte[] part = readAll(body);
+                partSizes.add(part.length);
+                if (source != null) {
+                    // Phần đã đọc khỏi stream nhưng chưa upload xong phải nằm gọn trong part hiện tại
+                    maxReadAhead.accumulateAndGet(source.position - uploaded, Math::max);
+                    uploaded += part.length;
+                    checksum.update(part);
+                } else {
+                    Thread.sleep(20);
+                }
+                return UploadPartResponse.builder().eTag("\"" + request.partNumber() + "\"").build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed.incrementAndGet();
+            uploads.remove(request.uploadId());
+            return CompleteMultipartUploadResponse.builder().key(request.key()).build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted.incrementAndGet();
+            return super.abortMultipartUpload(request);
+        }
+    }
+
+    /**
+     * Stream sinh nội dung theo công thức, không giữ dữ liệu trong bộ nhớ
+     */
+    static class PatternInputStream extends InputStream {
+        final long size;
+        final long failAt;
+        long position;
+
+        PatternInputStream(long size, long failAt) {
+            this.size = size;
+            this.failAt = failAt;
+        }
+
+        static byte valueAt(long position) {
+            return (byte) (position * 31 + (position >>> 13));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= failAt) {
+                throw new IOException("Kết nối client bị đóng");
+            }
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(length, Math.min(size, failAt) - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = valueAt(position + i);
+            }
+            position += count;
+            return count;
+        }
+    }
+
+    private final ThreadPoolTaskExecutor storageIoExecutor = new ThreadPoolTaskExecutor();
+    private RecordingS3Client s3Client;
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        storageIoExecutor.initialize();
+        s3Client = new RecordingS3Client();
+        backend = new S3StorageBackend(s3Client, mock(ObjectProvider.class), storageIoExecutor,
+                PART_SIZE, PART_SIZE, POOL_SIZE);
+        ReflectionTestUtils.setField(backend, "bucketName", "chatapp-test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        storageIoExecutor.shutdown();
+    }
+
+    @Test
+    void largeUploadIsStreamedInPartSizedChunks() throws Exception {
+        PatternInputStream source = new PatternInputStream(PAYLOAD_SIZE, Long.MAX_VALUE);
+        s3Client.source = source;
+
+        backend.put("video.mp4", source, PAYLOAD_SIZE, "video/mp4");
+
+        assertThat(s3Client.completed).hasValue(1);
+        assertThat(s3Client.partSizes).hasSize(13);
+        assertThat(s3Client.partSizes.subList(0, 12)).containsOnly(PART_SIZE);
+        assertThat(s3Client.partSizes.get(12)).isEqualTo(12_345);
+        assertThat(s3Client.maxReadAhead.get()).isLessThanOrEqualTo(PART_SIZE);
+        assertThat(s3Client.checksum.getValue()).isEqualTo(expectedChecksum(PAYLOAD_SIZE));
+        assertPoolRestored();
+    }
+
+    @Test
+    void concurrentUploadsShareTheBoundedBufferPool() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> uploads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String key = "file-" + i;
+                uploads.add(callers.submit(() -> {
+                    backend.put(key, new PatternInputStream(3L * PART_SIZE, Long.MAX_VALUE), 3L * PART_SIZE,
+                            "application/octet-stream");
+                    return null;
+                }));
+            }
+            for (Future<?> upload : uploads) {
+                upload.get(60, SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Mỗi upload giữ một buffer trong suốt quá trình nên không bao giờ quá POOL_SIZE part cùng lúc
+        assertThat(s3Client.completed).hasValue(4);
+        assertThat(s3Client.maxInFlight.get()).isLessThanOrEqualTo(POOL_SIZE);
+        assertPoolRestored();
+    }
+
+    @Test
+    void failedStreamAbortsUploadAndReturnsBuffer() {
+        PatternInputStream source = new PatternInputStream(PAYLOAD_SIZE, 2L * PART_SIZE + 100);
+        s3Client.source = source;
+
+        assertThatThrownBy(() -> backend.put("hong.bin", source, PAYLOAD_SIZE, "application/octet-stream"))
+                .isInstanceOf(IOException.class);
+
+        assertThat(s3Client.aborted).hasValue(1);
+        assertThat(s3Client.completed).hasValue(0);
+        assertThat(s3Client.uploads).isEmpty();
+        assertPoolRestored();
+    }
+
+    private void assertPoolRestored() {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<byte[]> pool = (BlockingQueue<byte[]>) ReflectionTestUtils.getField(backend, "bufferPool");
+        assertThat(pool).hasSize(POOL_SIZE);
+        assertThat(pool).allSatisfy(buffer -> assertThat(buffer.length).isIn(0, PART_SIZE));
+    }
+
+    private static long expectedChecksum(long size) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[64 * 1024];
+        for (long position = 0; position < size; position += chunk.length) {
+            int count = (int) Math.min(chunk.length, size - position);
+            for (int i = 0; i < count; i++) {
+                chunk[i] = PatternInputStream.valueAt(position + i);
+            }
+            crc.update(chunk, 0, count);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,103 @@
+package com.chatapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hành vi chung mà mọi StorageBackend phải thỏa, mỗi backend chạy lại bộ test này qua một lớp con
+ */
+abstract class StorageBackendContractTest {
+
+    protected final ThreadPoolTaskExecutor storageIoExecutor = createExecutor();
+
+    /**
+     * Backend cần kiểm tra, tạo mới cho từng test
+     */
+    protected abstract StorageBackend backend();
+
+    @AfterEach
+    void shutdownExecutor() {
+        storageIoExecutor.shutdown();
+    }
+
+    @Test
+    void storedContentCanBeReadBack() throws Exception {
+        byte[] content = "Xin chào".getBytes(StandardCharsets.UTF_8);
+
+        backend().put("a1b2c3.txt", new ByteArrayInputStream(content), content.length, "text/plain");
+
+        assertThat(backend().exists("a1b2c3.txt")).isTrue();
+        assertThat(read("a1b2c3.txt")).isEqualTo(content);
+    }
+
+    @Test
+    void putOverwritesExistingKey() throws Exception {
+        put("ghi-de.bin", new byte[] { 1, 2, 3 });
+        put("ghi-de.bin", new byte[] { 4, 5 });
+
+        assertThat(read("ghi-de.bin")).containsExactly(4, 5);
+    }
+
+    @Test
+    void largeContentIsStoredIntact() throws Exception {
+        byte[] content = new byte[11 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(content);
+
+        put("lon.bin", content);
+
+        assertThat(read("lon.bin")).isEqualTo(content);
+    }
+
+    @Test
+    void putAsyncStoresContent() throws Exception {
+        byte[] content = "bất đồng bộ".getBytes(StandardCharsets.UTF_8);
+
+        backend().putAsync("async.txt", new ByteArrayInputStream(content), content.length, "text/plain")
+                .get(10, SECONDS);
+
+        assertThat(read("async.txt")).isEqualTo(content);
+    }
+
+    @Test
+    void deleteRemovesKeyAndMissingKeyIsIgnored() throws Exception {
+        put("xoa.bin", new byte[] { 9 });
+
+        backend().delete("xoa.bin");
+        backend().delete("khong-ton-tai.bin");
+
+        assertThat(backend().exists("xoa.bin")).isFalse();
+        assertThat(backend().exists("khong-ton-tai.bin")).isFalse();
+    }
+
+    @Test
+    void urlMapsBackToKey() {
+        assertThat(backend().toKey(backend().toUrl("5f2a9c.jpg"))).isEqualTo("5f2a9c.jpg");
+    }
+
+    protected void put(String key, byte[] content) throws Exception {
+        backend().put(key, new ByteArrayInputStream(content), content.length, "application/octet-stream");
+    }
+
+    protected byte[] read(String key) throws Exception {
+        try (InputStream in = backend().open(key)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static ThreadPoolTaskExecutor createExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setThreadNamePrefix("storage-io-test-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,179 @@
+package com.chatapp.service;
+
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Kiểm tra cache phản hồi văn bản qua TextGenerationService với gateway giả thay cho Client của GenAI
+ */
+class TextResponseCacheTest {
+
+    private static final String PROMPT = "Xin chào";
+    private static final String ANSWER = "Chào bạn";
+
+    /**
+     * Gateway giả: đếm số lời gọi upstream, có thể chặn lời gọi tới khi được mở hoặc ném lỗi
+     */
+    static class FakeGenAiGateway extends GenAiGateway {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch release = new CountDownLatch(0);
+        volatile Supplier<String> answer = () -> ANSWER;
+
+        FakeGenAiGateway(MeterRegistry meterRegistry) {
+            super(null, new ThreadPoolTaskExecutor(), meterRegistry, 8, 2, 32, 100, 3, 15000);
+        }
+
+        @Override
+        public GenerateContentResponse generateContent(String model, String prompt, GenerateContentConfig config) {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String text = answer.get();
+            GenerateContentResponse response = mock(GenerateContentResponse.class);
+            when(response.text()).thenReturn(text);
+            return response;
+        }
+    }
+
+    private SimpleMeterRegistry meterRegistry;
+    private TextResponseCache cache;
+    private FakeGenAiGateway gateway;
+    private TextGenerationService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new TextResponseCache(100, meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        gateway = new FakeGenAiGateway(meterRegistry);
+        service = new TextGenerationService(gateway, cache);
+    }
+
+    @Test
+    void identicalConcurrentRequestsShareOneUpstreamCall() throws Exception {
+        gateway.release = new CountDownLatch(1);
+        int callers = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> service.generateText(PROMPT, null)));
+            }
+
+            assertThat(gateway.started.await(5, SECONDS)).isTrue();
+            // Các yêu cầu còn lại phải chờ lời gọi đang chạy thay vì tự gọi upstream
+            awaitCount("coalesced", callers - 1);
+            gateway.release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, SECONDS)).isEqualTo(ANSWER);
+            }
+            assertThat(gateway.calls).hasValue(1);
+            assertThat(count("miss")).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void repeatedPromptIsServedFromCacheWithinTtl() {
+        assertThat(service.generateText(PROMPT, null)).isEqualTo(ANSWER);
+        // Khác khoảng trắng nhưng giống nhau sau khi chuẩn hóa
+        assertThat(service.generateText("  Xin   chào ", null)).isEqualTo(ANSWER);
+
+        assertThat(gateway.calls).hasValue(1);
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void expiredEntryIsLoadedAgain() throws Exception {
+        ReflectionTestUtils.setField(cache, "ttlMs", 50L);
+
+        service.generateText(PROMPT, null);
+        Thread.sleep(100);
+        service.generateText(PROMPT, null);
+
+        assertThat(gateway.calls).hasValue(2);
+        assertThat(count("hit")).isZero();
+    }
+
+    @Test
+    void removeExpiredEntriesKeepsFreshEntries() throws Exception {
+        ReflectionTestUtils.setField(cache, "ttlMs", 50L);
+        service.generateText(PROMPT, null);
+        Thread.sleep(100);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        service.generateText("Tạm biệt", null);
+
+        cache.removeExpiredEntries();
+        service.generateText("Tạm biệt", null);
+
+        assertThat(gateway.calls).hasValue(2);
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void errorFromUpstreamReleasesWaitingRequests() throws Exception {
+        gateway.release = new CountDownLatch(1);
+        gateway.answer = () -> {
+            throw new ExceptionInInitializerError("SDK chưa khởi tạo");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> service.generateText(PROMPT, null));
+            assertThat(gateway.started.await(5, SECONDS)).isTrue();
+            Future<String> waiter = executor.submit(() -> service.generateText(PROMPT, null));
+            awaitCount("coalesced", 1);
+            gateway.release.countDown();
+
+            assertThatThrownBy(() -> first.get(5, SECONDS)).hasCauseInstanceOf(ExceptionInInitializerError.class);
+            assertThatThrownBy(() -> waiter.get(5, SECONDS)).hasCauseInstanceOf(ExceptionInInitializerError.class);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Lỗi không được cache và lời gọi lỗi không còn nằm lại trong danh sách đang chạy
+        gateway.answer = () -> ANSWER;
+        assertThat(service.generateText(PROMPT, null)).isEqualTo(ANSWER);
+        assertThat(gateway.calls).hasValue(2);
+    }
+
+    private void awaitCount(String result, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (count(result) < expected) {
+            assertThat(System.nanoTime()).as("chờ %s đạt %s", result, expected).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("chatapp.ai.cache").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,249 @@
+package com.chatapp.service;
+
+import com.chatapp.model.User;
+import com.chatapp.repository.FriendRepository;
+import com.chatapp.repository.UserRepository;
+import com.chatapp.service.UserSearchIndex.Entry;
+import com.chatapp.util.VietnameseTextUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserSearchIndexTest {
+
+    private static final Long REQUESTER = 1L;
+
+    private static final List<String> QUERIES = List.of("ng", "nguyen", "nguyen van", "tran th", "le minh anh",
+            "ho", "pham ngoc", "thao", "vu duc long");
+
+    private FriendRepository friendRepository;
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        friendRepository = mock(FriendRepository.class);
+        index = new UserSearchIndex(mock(UserRepository.class), friendRepository);
+        ReflectionTestUtils.setField(index, "friendCacheTtlMs", 60_000L);
+        add(REQUESTER, "Người Tìm", "0900000001");
+    }
+
+    @Test
+    void matchesWordPrefixesIgnoringAccents() {
+        add(2L, "Nguyễn Văn Đạt", "0900000002");
+        add(3L, "Trần Thị Ánh", "0900000003");
+
+        assertThat(ids("nguy")).containsExactly(2L);
+        assertThat(ids("DAT")).containsExactly(2L);
+        assertThat(ids("ánh")).containsExactly(3L);
+        // Chỉ khớp đầu từ, không khớp giữa từ
+        assertThat(ids("guyen")).isEmpty();
+    }
+
+    @Test
+    void everyQueryWordMustMatch() {
+        add(2L, "Nguyễn Văn Đạt", "0900000002");
+        add(3L, "Nguyễn Thị Ánh", "0900000003");
+
+        assertThat(ids("nguyen d")).containsExactly(2L);
+        assertThat(ids("ng th")).containsExactly(3L);
+        assertThat(ids("nguyen binh")).isEmpty();
+    }
+
+    @Test
+    void queriesShorterThanMinimumReturnNothing() {
+        add(2L, "An", "0900000002");
+
+        assertThat(ids("a")).isEmpty();
+        assertThat(ids("  ")).isEmpty();
+        assertThat(ids("á")).isEmpty();
+        assertThat(ids("an")).containsExactly(2L);
+    }
+
+    @Test
+    void ranksFriendsThenExactThenPrefixThenAlphabetical() {
+        add(2L, "Nguyễn Văn An", "0900000002");
+        add(3L, "An", "0900000003");
+        add(4L, "Trần An", "0900000004");
+        add(5L, "An Bình", "0900000005");
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(List.of(4L));
+
+        assertThat(ids("an")).containsExactly(4L, 3L, 5L, 2L);
+    }
+
+    @Test
+    void excludesRequesterAndRespectsLimit() {
+        add(2L, "Người Bạn", "0900000002");
+        add(3L, "Người Lạ", "0900000003");
+
+        assertThat(ids("nguoi")).containsExactly(2L, 3L);
+        assertThat(index.search(REQUESTER, "nguoi", false, 1)).hasSize(1);
+    }
+
+    @Test
+    void friendsOnlySearchSkipsStrangers() {
+        add(2L, "Lê Minh", "0900000002");
+        add(3L, "Lê Mai", "0900000003");
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(List.of(3L));
+
+        assertThat(index.search(REQUESTER, "le", true, 10)).extracting(Entry::userId).containsExactly(3L);
+    }
+
+    @Test
+    void phonePrefixFindsFriendsButStrangersNeedTheExactNumber() {
+        add(2L, "Bạn Bè", "0912345678");
+        add(3L, "Người Lạ", "0912345679");
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(List.of(2L));
+
+        assertThat(ids("0912")).containsExactly(2L);
+        assertThat(ids("091 234 5679")).containsExactly(3L);
+        assertThat(UserSearchIndex.isExactPhoneMatch("091.234.5679", "0912345679")).isTrue();
+        assertThat(UserSearchIndex.isExactPhoneMatch("0912", "0912345679")).isFalse();
+        assertThat(UserSearchIndex.isExactPhoneMatch("an", "0912345679")).isFalse();
+    }
+
+    @Test
+    void renameReplacesOldWordsAndRemoveDropsUser() {
+        add(2L, "Hoàng Long", "0900000002");
+        add(2L, "Phúc Long", "0900000002");
+
+        assertThat(ids("hoang")).isEmpty();
+        assertThat(ids("phuc")).containsExactly(2L);
+
+        index.remove(2L);
+        assertThat(ids("long")).isEmpty();
+    }
+
+    @Test
+    void friendCacheIsReloadedAfterEviction() {
+        add(2L, "Đỗ Hùng", "0900000002");
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(List.of());
+        assertThat(index.getFriendIds(REQUESTER)).isEmpty();
+
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(List.of(2L));
+        index.evictFriends(REQUESTER);
+
+        assertThat(index.getFriendIds(REQUESTER)).containsExactly(2L);
+    }
+
+    @Test
+    void multiWordQueryFindsMatchesBeyondThousandsSharingOneWord() {
+        for (long id = 2; id <= 1_501; id++) {
+            add(id, "Nguyễn Văn Hùng", String.format("09%08d", id));
+        }
+        add(9_999L, "Nguyễn Thị Lan", "0900009999");
+
+        assertThat(ids("nguyen lan")).containsExactly(9_999L);
+        assertThat(ids("lan nguyen")).containsExactly(9_999L);
+        assertThat(index.search(REQUESTER, "nguyen", false, 5_000)).hasSize(1_501);
+        assertThat(index.search(REQUESTER, "nguyen van", false, 5_000)).hasSize(1_500);
+    }
+
+    @Test
+    void searchMatchesBruteForceOnLargeDirectory() {
+        Map<Long, String> names = addDirectory();
+
+        for (String query : QUERIES) {
+            List<Long> expected = bruteForce(names, query);
+            List<Long> actual = index.search(REQUESTER, query, false, Integer.MAX_VALUE).stream()
+                    .map(Entry::userId)
+                    .toList();
+
+            assertThat(actual).as(query).containsExactlyInAnyOrderElementsOf(expected);
+        }
+        // Cùng một tên nên bạn bè đứng đầu, sau đó người lạ theo id
+        List<Long> matching = bruteForce(names, "vu duc long");
+        List<Long> expectedTop = Stream.concat(
+                        matching.stream().filter(id -> id % 500 == 0).sorted(),
+                        matching.stream().filter(id -> id % 500 != 0).sorted())
+                .limit(20)
+                .toList();
+        assertThat(ids("vu duc long")).containsExactlyElementsOf(expectedTop);
+        assertThat(ids("0900012345")).containsExactly(12_345L);
+    }
+
+    /**
+     * Mục tiêu của typeahead: p99 dưới 5 ms trên danh bạ 100.000 người dùng với tên phổ biến.
+     * Chỉ chạy với mvn test -Pperf.
+     */
+    @Test
+    @Tag("perf")
+    void searchStaysUnderLatencyTargetOnLargeDirectory() {
+        addDirectory();
+
+        for (int i = 0; i < 2_000; i++) {
+            index.search(REQUESTER, QUERIES.get(i % QUERIES.size()), false, 20);
+        }
+
+        int runs = 2_000;
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long startedAt = System.nanoTime();
+            index.search(REQUESTER, QUERIES.get(i % QUERIES.size()), false, 20);
+            nanos[i] = System.nanoTime() - startedAt;
+        }
+        Arrays.sort(nanos);
+        long p99Micros = nanos[runs * 99 / 100] / 1_000;
+
+        assertThat(p99Micros).as("p99 %d µs", p99Micros).isLessThan(5_000);
+    }
+
+    /**
+     * Danh bạ 100.000 người dùng với tên phổ biến, cứ 500 người có một người là bạn của REQUESTER
+     *
+     * @return Tên đã bỏ dấu theo id
+     */
+    private Map<Long, String> addDirectory() {
+        String[] families = { "Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Huỳnh", "Phan", "Vũ", "Võ", "Đặng" };
+        String[] middles = { "Văn", "Thị", "Minh", "Ngọc", "Thanh", "Hữu", "Đức", "Quốc" };
+        String[] givens = { "An", "Anh", "Bình", "Dũng", "Hà", "Hải", "Hùng", "Lan", "Linh", "Long", "Mai",
+                "Nam", "Ngân", "Phúc", "Quân", "Sơn", "Thảo", "Trang", "Tuấn", "Yến" };
+        Random random = new Random(42);
+        Map<Long, String> names = new HashMap<>();
+        List<Long> friendIds = new ArrayList<>();
+        for (long id = 2; id <= 100_001; id++) {
+            String name = families[random.nextInt(families.length)] + " " + middles[random.nextInt(middles.length)]
+                    + " " + givens[random.nextInt(givens.length)];
+            add(id, name, String.format("09%08d", id));
+            names.put(id, VietnameseTextUtils.fold(name));
+            if (id % 500 == 0) {
+                friendIds.add(id);
+            }
+        }
+        when(friendRepository.findAcceptedFriendIds(REQUESTER)).thenReturn(friendIds);
+        return names;
+    }
+
+    private static List<Long> bruteForce(Map<Long, String> names, String query) {
+        String[] tokens = VietnameseTextUtils.fold(query).split(" ");
+        return names.entrySet().stream()
+                .filter(entry -> Arrays.stream(tokens).allMatch(token -> Arrays.stream(entry.getValue().split(" "))
+                        .anyMatch(nameToken -> nameToken.startsWith(token))))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private void add(Long id, String displayName, String phone) {
+        User user = new User();
+        user.setUserId(id);
+        user.setDisplayName(displayName);
+        user.setPhone(phone);
+        index.upsert(user);
+    }
+
+    private List<Long> ids(String query) {
+        return index.search(REQUESTER, query, false, 20).stream().map(Entry::userId).toList();
+    }
+}
@@ -0,0 +1,90 @@
+package com.chatapp.service;
+
+import com.chatapp.dto.request.UserDto;
+import com.chatapp.exception.BadRequestException;
+import com.chatapp.model.User;
+import com.chatapp.repository.FriendRepository;
+import com.chatapp.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceSearchTest {
+
+    private static final String REQUESTER_PHONE = "0900000001";
+
+    private UserRepository userRepository;
+    private UserSearchIndex index;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        FriendRepository friendRepository = mock(FriendRepository.class);
+        index = new UserSearchIndex(userRepository, friendRepository);
+        ReflectionTestUtils.setField(index, "friendCacheTtlMs", 60_000L);
+        userService = new UserService(userRepository, mock(PasswordEncoder.class), index);
+
+        User requester = user(1L, "Người Tìm", REQUESTER_PHONE);
+        when(userRepository.findByPhone(REQUESTER_PHONE)).thenReturn(Optional.of(requester));
+        when(friendRepository.findAcceptedFriendIds(1L)).thenReturn(List.of(2L));
+        index.upsert(requester);
+        index.upsert(user(2L, "Minh Bạn", "0912345678"));
+        index.upsert(user(3L, "Minh Lạ", "0912345679"));
+    }
+
+    @Test
+    void blankOrTooShortQueryIsRejectedOnBothPaths() {
+        assertThatThrownBy(() -> userService.searchUsers(REQUESTER_PHONE, "   ", 10))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> userService.searchUsers(REQUESTER_PHONE, "m", 10))
+                .isInstanceOf(BadRequestException.class);
+
+        ReflectionTestUtils.setField(index, "ready", true);
+        assertThatThrownBy(() -> userService.searchUsers(REQUESTER_PHONE, "", 10))
+                .isInstanceOf(BadRequestException.class);
+        verify(userRepository, never()).findByDisplayNameContainingIgnoreCase(anyString());
+    }
+
+    @Test
+    void phoneIsReturnedOnlyForFriendsOrExactPhoneMatch() {
+        ReflectionTestUtils.setField(index, "ready", true);
+
+        List<UserDto> byName = userService.searchUsers(REQUESTER_PHONE, "minh", 10);
+        assertThat(byName).extracting(UserDto::getUserId).containsExactly(2L, 3L);
+        assertThat(byName).extracting(UserDto::getPhone).containsExactly("0912345678", null);
+
+        List<UserDto> byPhone = userService.searchUsers(REQUESTER_PHONE, "0912345679", 10);
+        assertThat(byPhone).extracting(UserDto::getPhone).containsExactly("0912345679");
+    }
+
+    @Test
+    void databaseFallbackAlsoHidesStrangerPhones() {
+        when(userRepository.findByDisplayNameContainingIgnoreCase("Minh"))
+                .thenReturn(List.of(user(2L, "Minh Bạn", "0912345678"), user(3L, "Minh Lạ", "0912345679")));
+
+        List<UserDto> result = userService.searchUsers(REQUESTER_PHONE, " Minh ", 10);
+
+        assertThat(result).extracting(UserDto::getPhone).containsExactly("0912345678", null);
+    }
+
+    private static User user(Long id, String displayName, String phone) {
+        User user = new User();
+        user.setUserId(id);
+        user.setDisplayName(displayName);
+        user.setPhone(phone);
+        return user;
+    }
+}
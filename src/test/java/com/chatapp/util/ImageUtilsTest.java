@@ -0,0 +1,71 @@
+package com.chatapp.util;
+
+import com.chatapp.util.ImageUtils.DecodedImage;
+import com.chatapp.util.ImageUtils.ImageTooLargeException;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ImageUtilsTest {
+
+    @Test
+    void centerSquareIsSubsampledButNotBelowMinSide() throws Exception {
+        // Nửa trái đỏ, giữa xanh lá, nửa phải xanh dương: phần vuông ở giữa chỉ có màu xanh lá
+        BufferedImage source = new BufferedImage(6000, 2000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = source.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 2000, 2000);
+        graphics.setColor(Color.GREEN);
+        graphics.fillRect(2000, 0, 2000, 2000);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(4000, 0, 2000, 2000);
+        graphics.dispose();
+
+        DecodedImage decoded = ImageUtils.readCenterSquare(png(source), Long.MAX_VALUE, 512);
+
+        assertThat(decoded.sourceWidth()).isEqualTo(6000);
+        assertThat(decoded.sourceHeight()).isEqualTo(2000);
+        assertThat(decoded.image().getWidth()).isEqualTo(decoded.image().getHeight()).isBetween(512, 1023);
+        assertThat(new Color(decoded.image().getRGB(0, 0))).isEqualTo(Color.GREEN);
+        assertThat(new Color(decoded.image().getRGB(decoded.image().getWidth() - 1, 0))).isEqualTo(Color.GREEN);
+    }
+
+    @Test
+    void scaledToFitKeepsLongSideAtLeastMaxSide() throws Exception {
+        DecodedImage decoded = ImageUtils.readScaledToFit(png(new BufferedImage(4000, 1000,
+                BufferedImage.TYPE_INT_RGB)), Long.MAX_VALUE, 1080);
+
+        assertThat(decoded.image().getWidth()).isBetween(1080, 2159);
+        assertThat(decoded.image().getHeight()).isCloseTo(decoded.image().getWidth() / 4, within(1));
+    }
+
+    @Test
+    void imagesAboveThePixelLimitAreRejectedBeforeDecoding() throws Exception {
+        ByteArrayInputStream image = png(new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB));
+
+        assertThatThrownBy(() -> ImageUtils.readCenterSquare(image, 999_999, 512))
+                .isInstanceOf(ImageTooLargeException.class);
+    }
+
+    @Test
+    void unknownFormatReturnsNull() throws Exception {
+        assertThat(ImageUtils.readCenterSquare(new ByteArrayInputStream("không phải ảnh".getBytes()),
+                Long.MAX_VALUE, 512)).isNull();
+    }
+
+    private static ByteArrayInputStream png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+}
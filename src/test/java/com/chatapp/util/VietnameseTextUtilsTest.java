@@ -0,0 +1,31 @@
+package com.chatapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VietnameseTextUtilsTest {
+
+    @Test
+    void foldRemovesAccentsAndCollapsesWhitespace() {
+        assertThat(VietnameseTextUtils.fold("Nguyễn  Văn Đạt")).isEqualTo("nguyen van dat");
+        assertThat(VietnameseTextUtils.fold("  ĐỖ THỊ\tÁnh ")).isEqualTo("do thi anh");
+        assertThat(VietnameseTextUtils.fold("Phạm Ngọc Hưởng")).isEqualTo("pham ngoc huong");
+    }
+
+    @Test
+    void foldOfPrecomposedAndDecomposedFormsIsEqual() {
+        String precomposed = "Trần Thị Thủy";
+        String decomposed = Normalizer.normalize(precomposed, Normalizer.Form.NFD);
+
+        assertThat(VietnameseTextUtils.fold(decomposed)).isEqualTo(VietnameseTextUtils.fold(precomposed));
+    }
+
+    @Test
+    void foldOfNullOrBlankIsEmpty() {
+        assertThat(VietnameseTextUtils.fold(null)).isEmpty();
+        assertThat(VietnameseTextUtils.fold("   ")).isEmpty();
+    }
+}